@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.data;
+
+/**
+ * Inputs shared by benchmarks.
+ */
+public class BenchmarkCorpus {
+
+  /**
+   * Size of benchmark input.
+   */
+  public enum Size {
+    /** query-like input */
+    SHORT,
+    /** title-like input */
+    MEDIUM,
+    /** document body, a few KB */
+    LONG
+  }
+
+  private static final String SHORT = "東京 ﾗｰﾒﾝ おすすめ";
+
+  private static final String MEDIUM = "【送料無料】iPhone 15 Pro Max 256GB 対応 手帳型ケース ＰＵレザー ｶｰﾄﾞ収納 ㈱サンプル";
+
+  private static final String[] SENTENCES = {
+      "お寿司が食べたい。",
+      "MICROSOFTのWord（ﾜｰﾄﾞ）が今だけ＄８０で販売されています。",
+      "東京タワーと東京スカイツリーはどちらも観光客に人気のスポットです。",
+      "㍻最後の年に１㌶の土地を30㌧のトラックで整地した。",
+      "Café au lait と crème brûlée を注文しました！",
+      "ｷﾞﾛｯﾎﾟﾝでﾙｰﾋﾞｰを飲みながら、SHI-SU-について語り合った。",
+      "本日は晴天なり、明日は雨が降るでしょう。\n",
+  };
+
+  private static final String LONG = repeat(4096);
+
+  /**
+   * Return benchmark input of given size.
+   *
+   * @param size size of input
+   * @return input text
+   */
+  public static String get(Size size) {
+    switch (size) {
+      case SHORT:
+        return SHORT;
+      case MEDIUM:
+        return MEDIUM;
+      default:
+        return LONG;
+    }
+  }
+
+  private static String repeat(int minLength) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; builder.length() < minLength; ++i) {
+      builder.append(SENTENCES[i % SENTENCES.length]);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.process.GramSplitter;
+
+import jp.co.yahoo.vespa.language.lib.data.BenchmarkCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link GramSplitter} with {@link KuromojiCharacterClasses}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GramSplitterBenchmark {
+
+  @Param({"1", "2"})
+  public int gramSize;
+
+  @Param({"SHORT", "MEDIUM", "LONG"})
+  public BenchmarkCorpus.Size size;
+
+  private GramSplitter gramSplitter;
+  private String input;
+
+  @Setup
+  public void setup() {
+    gramSplitter = new GramSplitter(new KuromojiCharacterClasses());
+    input = BenchmarkCorpus.get(size);
+  }
+
+  @Benchmark
+  public void split(Blackhole blackhole) {
+    GramSplitter.GramSplitterIterator iterator = gramSplitter.split(input, gramSize);
+    while (iterator.hasNext()) {
+      blackhole.consume(iterator.next());
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import jp.co.yahoo.vespa.language.lib.data.BenchmarkCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link KuromojiCharacterClasses#isLetter(int)} over every code point of the input.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KuromojiCharacterClassesBenchmark {
+
+  @Param({"SHORT", "MEDIUM", "LONG"})
+  public BenchmarkCorpus.Size size;
+
+  private KuromojiCharacterClasses characterClasses;
+  private int[] codePoints;
+
+  @Setup
+  public void setup() {
+    characterClasses = new KuromojiCharacterClasses();
+    codePoints = BenchmarkCorpus.get(size).codePoints().toArray();
+  }
+
+  @Benchmark
+  public int isLetter() {
+    int letters = 0;
+    for (int c : codePoints) {
+      if (characterClasses.isLetter(c)) {
+        ++letters;
+      }
+    }
+    return letters;
+  }
+}
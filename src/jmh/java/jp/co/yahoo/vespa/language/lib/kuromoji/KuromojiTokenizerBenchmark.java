@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+import jp.co.yahoo.vespa.language.lib.data.BenchmarkCorpus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link KuromojiTokenizer#tokenize}.
+ *
+ * <p>Run with "-prof gc" to see allocation per call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KuromojiTokenizerBenchmark {
+
+  @Param({"normal", "search", "extended"})
+  public String mode;
+
+  @Param({"true", "false"})
+  public boolean ignoreCase;
+
+  @Param({"true", "false"})
+  public boolean removeAccents;
+
+  @Param({"SHORT", "MEDIUM", "LONG"})
+  public BenchmarkCorpus.Size size;
+
+  private KuromojiTokenizer tokenizer;
+  private String input;
+
+  @Setup
+  public void setup() throws IOException {
+    SimpleLinguistics simpleLinguistics = new SimpleLinguistics();
+    KuromojiConfig config = new KuromojiConfig(new KuromojiConfig.Builder().mode(mode).ignore_case(ignoreCase));
+    KuromojiContext context = new KuromojiContext(config, new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+    tokenizer = new KuromojiTokenizer(context, simpleLinguistics.getNormalizer(), simpleLinguistics.getTransformer(),
+                                      simpleLinguistics.getTokenizer());
+    input = BenchmarkCorpus.get(size);
+  }
+
+  @Benchmark
+  public void tokenize(Blackhole blackhole) {
+    for (Token token : tokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, removeAccents)) {
+      blackhole.consume(token);
+    }
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+import jp.co.yahoo.vespa.language.lib.data.BenchmarkCorpus;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link KuromojiTokenizer#tokenize} by concurrent threads, reported as tokens per second.
+ *
+ * <p>{@link #main(String[])} runs this benchmark with 1, 2, 4, ... threads up to the number of processors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KuromojiTokenizerScalingBenchmark {
+
+  @Param({"shared", "thread", "pool"})
+  public String instance;
+
+  @Param({"MEDIUM"})
+  public BenchmarkCorpus.Size size;
+
+  private KuromojiTokenizer tokenizer;
+  private String input;
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class Counter {
+    public long tokens;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      tokens = 0;
+    }
+  }
+
+  @Setup
+  public void setup() throws IOException {
+    SimpleLinguistics simpleLinguistics = new SimpleLinguistics();
+    KuromojiConfig config = new KuromojiConfig(new KuromojiConfig.Builder()
+                                                   .instance(new KuromojiConfig.Instance.Builder().mode(instance)));
+    KuromojiContext context = new KuromojiContext(config, new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+    tokenizer = new KuromojiTokenizer(context, simpleLinguistics.getNormalizer(), simpleLinguistics.getTransformer(),
+                                      simpleLinguistics.getTokenizer());
+    input = BenchmarkCorpus.get(size);
+  }
+
+  @Benchmark
+  public void tokenize(Counter counter, Blackhole blackhole) {
+    for (Token token : tokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true)) {
+      blackhole.consume(token);
+      ++counter.tokens;
+    }
+  }
+
+  /**
+   * Run with increasing number of threads. Arguments are same as JMH's.
+   */
+  public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    int processors = Runtime.getRuntime().availableProcessors();
+    for (int threads = 1; ; threads = Math.min(threads * 2, processors)) {
+      new Runner(new OptionsBuilder().parent(options)
+                                     .include(KuromojiTokenizerScalingBenchmark.class.getSimpleName())
+                                     .threads(threads)
+                                     .build()).run();
+      if (threads == processors) {
+        break;
+      }
+    }
+  }
+}
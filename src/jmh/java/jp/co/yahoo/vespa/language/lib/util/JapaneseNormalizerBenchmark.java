@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.util;
+
+import jp.co.yahoo.vespa.language.lib.data.BenchmarkCorpus;
+import jp.co.yahoo.vespa.language.lib.exception.NormalizationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link JapaneseNormalizer#normalizeByNFKC(String, boolean)}.
+ *
+ * <p>Run with "-prof gc" to see allocation per call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JapaneseNormalizerBenchmark {
+
+  @Param({"true", "false"})
+  public boolean ignoreCase;
+
+  @Param({"SHORT", "MEDIUM", "LONG"})
+  public BenchmarkCorpus.Size size;
+
+  private String input;
+
+  @Setup
+  public void setup() {
+    input = BenchmarkCorpus.get(size);
+  }
+
+  @Benchmark
+  public JapaneseNormalizer.Result normalizeByNFKC() throws NormalizationException {
+    return JapaneseNormalizer.normalizeByNFKC(input, ignoreCase);
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.dict;
+
+import com.atilika.kuromoji.dict.UserDictionary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kuromoji user dictionary on buffers compiled by {@link UserDictionaryCompiler}.
+ *
+ * <p>A compiled file is memory mapped read only, so nothing is parsed on loading. Keys are sorted, and matching
+ * narrows the range of keys by each character as a trie does.
+ *
+ * <p>Several compiled buffers can be combined. Their word ids follow one another, and a key of a later buffer takes
+ * precedence over the same key of earlier buffers, as if their entries were written in one CSV.
+ */
+public class CompiledUserDictionary extends UserDictionary {
+
+  // same as com.atilika.kuromoji.dict.UserDictionary and com.atilika.kuromoji.ipadic.Tokenizer.Builder
+  private static final int WORD_ID_OFFSET = 100000000;
+  private static final int TOTAL_FEATURES = 9;
+  private static final int READING_FEATURE = 7;
+  private static final int PART_OF_SPEECH_FEATURE = 0;
+  private static final String DEFAULT_FEATURE = "*";
+
+  private final Segment[] segments;
+
+  private CompiledUserDictionary(List<ByteBuffer> buffers) throws IOException {
+    super(new ByteArrayInputStream(new byte[0]), TOTAL_FEATURES, READING_FEATURE, PART_OF_SPEECH_FEATURE);
+    segments = new Segment[buffers.size()];
+    int wordIdBase = WORD_ID_OFFSET;
+    for (int i = 0; i < segments.length; ++i) {
+      segments[i] = new Segment(buffers.get(i), wordIdBase);
+      wordIdBase += segments[i].words;
+    }
+  }
+
+  /**
+   * Create user dictionary on compiled buffers.
+   *
+   * @param buffers compiled buffers, later one takes precedence
+   * @return user dictionary
+   * @throws IOException buffer is not a compiled user dictionary
+   */
+  public static CompiledUserDictionary of(List<ByteBuffer> buffers) throws IOException {
+    return new CompiledUserDictionary(buffers);
+  }
+
+  /**
+   * Memory map a compiled file read only.
+   *
+   * @param path compiled user dictionary
+   * @return mapped buffer
+   * @throws IOException failed to map or given file is not a compiled user dictionary
+   */
+  public static ByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (!isCompiled(buffer)) {
+        throw new IOException("not a compiled user dictionary: " + path);
+      }
+      return buffer;
+    }
+  }
+
+  /**
+   * Whether given file is a compiled user dictionary.
+   *
+   * @param path file to check
+   * @return true if compiled user dictionary
+   */
+  public static boolean isCompiled(Path path) {
+    try (InputStream input = java.nio.file.Files.newInputStream(path)) {
+      byte[] header = new byte[4];
+      return input.read(header) == 4 && isCompiled(ByteBuffer.wrap(header));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static boolean isCompiled(ByteBuffer buffer) {
+    return buffer.limit() >= 4 && buffer.getInt(0) == UserDictionaryCompiler.MAGIC;
+  }
+
+  /**
+   * Return the word id of the first word, which is the same as Kuromoji's user dictionary.
+   *
+   * @return first word id
+   */
+  public int getFirstWordId() {
+    return WORD_ID_OFFSET;
+  }
+
+  /**
+   * Return the number of words, whose ids follow the first word id.
+   *
+   * @return number of words
+   */
+  public int getWordCount() {
+    int words = 0;
+    for (Segment segment : segments) {
+      words += segment.words;
+    }
+    return words;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<UserDictionaryMatch> findUserDictionaryMatches(String text) {
+    List<UserDictionaryMatch> matches = new ArrayList<>();
+    int[] ranges = new int[segments.length * 2];
+    int[] next = new int[segments.length * 2];
+    for (int start = 0, len = text.length(); start < len; ++start) {
+      // same as com.atilika.kuromoji.dict.UserDictionary: longest prefix of any key, which must be a key itself
+      for (int i = 0; i < segments.length; ++i) {
+        ranges[i * 2] = 0;
+        ranges[i * 2 + 1] = segments[i].entries;
+      }
+      int matchLength = 0;
+      while (start + matchLength < len) {
+        char c = text.charAt(start + matchLength);
+        boolean found = false;
+        for (int i = 0; i < segments.length; ++i) {
+          segments[i].narrow(ranges[i * 2], ranges[i * 2 + 1], matchLength, c, next, i * 2);
+          found |= next[i * 2] < next[i * 2 + 1];
+        }
+        if (!found) {
+          break;
+        }
+        System.arraycopy(next, 0, ranges, 0, ranges.length);
+        ++matchLength;
+      }
+      if (matchLength == 0) {
+        continue;
+      }
+
+      for (int i = segments.length - 1; i >= 0; --i) {
+        int lo = ranges[i * 2];
+        if (lo < ranges[i * 2 + 1] && segments[i].keyLength(lo) == matchLength) {
+          segments[i].addMatches(lo, start, matches);
+          break;
+        }
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getFeature(int wordId, int... fields) {
+    if (fields.length == 0 || fields.length == TOTAL_FEATURES) {
+      return getAllFeatures(wordId);
+    }
+    Segment segment = segmentOf(wordId);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < fields.length; ++i) {
+      if (i > 0) {
+        builder.append(',');
+      }
+      if (fields[i] == READING_FEATURE) {
+        builder.append(segment.reading(wordId - segment.wordIdBase));
+      } else if (fields[i] == PART_OF_SPEECH_FEATURE) {
+        builder.append(segment.partOfSpeech(wordId - segment.wordIdBase));
+      } else {
+        builder.append(DEFAULT_FEATURE);
+      }
+    }
+    return builder.toString();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String[] getAllFeaturesArray(int wordId) {
+    String[] features = new String[TOTAL_FEATURES];
+    for (int i = 0; i < TOTAL_FEATURES; ++i) {
+      features[i] = getFeature(wordId, i);
+    }
+    return features;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public String getAllFeatures(int wordId) {
+    return String.join(",", getAllFeaturesArray(wordId));
+  }
+
+  /**
+   * Compiled dictionary can not be modified. {@link UserDictionary#read(InputStream)} adds entries by this, so reading
+   * any entry fails too, while the empty input given to the superclass constructor adds nothing.
+   */
+  @Override
+  public void addEntry(String entry) {
+    throw new UnsupportedOperationException("compiled user dictionary is read only");
+  }
+
+  private Segment segmentOf(int wordId) {
+    for (int i = segments.length - 1; i >= 0; --i) {
+      if (wordId >= segments[i].wordIdBase) {
+        return segments[i];
+      }
+    }
+    throw new IllegalArgumentException("unknown word id: " + wordId);
+  }
+
+  /**
+   * View of a compiled buffer, read by absolute positions only so that it can be shared by threads.
+   */
+  private static class Segment {
+    private final ByteBuffer buffer;
+    private final int wordIdBase;
+
+    private final int entries;
+    private final int words;
+
+    private final int keyOffsets;
+    private final int wordIds;
+    private final int lengthOffsets;
+    private final int lengths;
+    private final int readingOffsets;
+    private final int partOfSpeechIds;
+    private final int partOfSpeechOffsets;
+    private final int keyChars;
+    private final int stringChars;
+
+    Segment(ByteBuffer buffer, int wordIdBase) throws IOException {
+      if (!isCompiled(buffer)) {
+        throw new IOException("not a compiled user dictionary");
+      }
+      this.buffer = buffer;
+      this.wordIdBase = wordIdBase;
+
+      entries = buffer.getInt(4);
+      int segments = buffer.getInt(8);
+      words = buffer.getInt(12);
+      int partOfSpeeches = buffer.getInt(16);
+      int keyCharCount = buffer.getInt(20);
+      int stringCharCount = buffer.getInt(24);
+
+      keyOffsets = UserDictionaryCompiler.HEADER_INTS * 4;
+      wordIds = keyOffsets + (entries + 1) * 4;
+      lengthOffsets = wordIds + entries * 4;
+      lengths = lengthOffsets + (entries + 1) * 4;
+      readingOffsets = lengths + segments * 4;
+      partOfSpeechIds = readingOffsets + (words + 1) * 4;
+      partOfSpeechOffsets = partOfSpeechIds + words * 4;
+      keyChars = partOfSpeechOffsets + (partOfSpeeches + 1) * 4;
+      stringChars = keyChars + keyCharCount * 2;
+      if (buffer.limit() < stringChars + stringCharCount * 2) {
+        throw new IOException("truncated compiled user dictionary");
+      }
+    }
+
+    int keyLength(int entry) {
+      return buffer.getInt(keyOffsets + (entry + 1) * 4) - buffer.getInt(keyOffsets + entry * 4);
+    }
+
+    /**
+     * Return c at given position of a key, or -1 if the key is not longer than position.
+     */
+    private int charAt(int entry, int position) {
+      int offset = buffer.getInt(keyOffsets + entry * 4);
+      int end = buffer.getInt(keyOffsets + (entry + 1) * 4);
+      return offset + position < end ? buffer.getChar(keyChars + (offset + position) * 2) : -1;
+    }
+
+    /**
+     * Narrow keys in [lo, hi) sharing a prefix of given length to ones followed by c, and set the range to out.
+     */
+    void narrow(int lo, int hi, int position, char c, int[] out, int index) {
+      int from = lo;
+      int to = hi;
+      while (from < to) {
+        int mid = (from + to) >>> 1;
+        if (charAt(mid, position) < c) {
+          from = mid + 1;
+        } else {
+          to = mid;
+        }
+      }
+      int begin = from;
+      to = hi;
+      while (from < to) {
+        int mid = (from + to) >>> 1;
+        if (charAt(mid, position) <= c) {
+          from = mid + 1;
+        } else {
+          to = mid;
+        }
+      }
+      out[index] = begin;
+      out[index + 1] = from;
+    }
+
+    void addMatches(int entry, int start, List<UserDictionaryMatch> matches) {
+      int wordId = wordIdBase + buffer.getInt(wordIds + entry * 4);
+      int from = buffer.getInt(lengthOffsets + entry * 4);
+      int to = buffer.getInt(lengthOffsets + (entry + 1) * 4);
+      int offset = 0;
+      for (int i = from; i < to; ++i) {
+        int length = buffer.getInt(lengths + i * 4);
+        matches.add(new UserDictionaryMatch(wordId++, start + offset, length));
+        offset += length;
+      }
+    }
+
+    String reading(int word) {
+      return string(buffer.getInt(readingOffsets + word * 4), buffer.getInt(readingOffsets + (word + 1) * 4));
+    }
+
+    String partOfSpeech(int word) {
+      int id = buffer.getInt(partOfSpeechIds + word * 4);
+      return string(buffer.getInt(partOfSpeechOffsets + id * 4), buffer.getInt(partOfSpeechOffsets + (id + 1) * 4));
+    }
+
+    private String string(int from, int to) {
+      char[] chars = new char[to - from];
+      for (int i = 0; i < chars.length; ++i) {
+        chars[i] = buffer.getChar(stringChars + (from + i) * 2);
+      }
+      return new String(chars);
+    }
+  }
+
+}
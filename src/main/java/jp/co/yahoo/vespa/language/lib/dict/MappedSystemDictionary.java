@@ -0,0 +1,450 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.dict;
+
+import com.atilika.kuromoji.dict.ConnectionCosts;
+import com.atilika.kuromoji.dict.TokenInfoDictionary;
+import com.atilika.kuromoji.trie.DoubleArrayTrie;
+import com.atilika.kuromoji.util.DictionaryEntryLineParser;
+import com.atilika.kuromoji.util.ResourceResolver;
+import com.atilika.kuromoji.util.SimpleResourceResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileOwnerAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * System dictionary of IPADIC on memory mapped files instead of the Java heap.
+ *
+ * <p>Binary files of kuromoji-ipadic are extracted once into a local directory and mapped read only, so the double
+ * array trie, connection costs and token info dictionary live off-heap in the page cache, which is shared by every
+ * mapping of the same files in this and other JVMs. Character definitions and unknown dictionary are small and not
+ * mapped.
+ *
+ * <p>The layout of each file is the one written by Kuromoji's compilers, and lookups give the same results as the
+ * dictionaries loaded by {@link com.atilika.kuromoji.ipadic.Tokenizer.Builder}.
+ */
+public final class MappedSystemDictionary {
+
+  private static final Logger logger = Logger.getLogger(MappedSystemDictionary.class.getName());
+
+  private static final String[] FILES = {
+      DoubleArrayTrie.DOUBLE_ARRAY_TRIE_FILENAME,
+      ConnectionCosts.CONNECTION_COSTS_FILENAME,
+      TokenInfoDictionary.TOKEN_INFO_DICTIONARY_FILENAME,
+      TokenInfoDictionary.FEATURE_MAP_FILENAME,
+      TokenInfoDictionary.POS_MAP_FILENAME,
+      TokenInfoDictionary.TARGETMAP_FILENAME
+  };
+
+  private final DoubleArrayTrie doubleArrayTrie;
+  private final ConnectionCosts connectionCosts;
+  private final int connectionCostSize;
+  private final ShortBuffer connectionCostMatrix;
+  private final TokenInfoDictionary tokenInfoDictionary;
+
+  private MappedSystemDictionary(Path directory) throws IOException {
+    doubleArrayTrie = new MappedDoubleArrayTrie(map(directory.resolve(DoubleArrayTrie.DOUBLE_ARRAY_TRIE_FILENAME)));
+    // same layout as com.atilika.kuromoji.compile.ConnectionCostsCompiler: size, bytes, shorts
+    ByteBuffer costs = map(directory.resolve(ConnectionCosts.CONNECTION_COSTS_FILENAME));
+    connectionCostSize = costs.getInt(0);
+    connectionCostMatrix = slice(costs, 8, costs.getInt(4)).asShortBuffer();
+    connectionCosts = new ConnectionCosts(connectionCostSize, connectionCostMatrix);
+    tokenInfoDictionary = new MappedTokenInfoDictionary(
+        map(directory.resolve(TokenInfoDictionary.TOKEN_INFO_DICTIONARY_FILENAME)),
+        map(directory.resolve(TokenInfoDictionary.POS_MAP_FILENAME)),
+        map(directory.resolve(TokenInfoDictionary.FEATURE_MAP_FILENAME)),
+        map(directory.resolve(TokenInfoDictionary.TARGETMAP_FILENAME)));
+  }
+
+  /**
+   * Map the system dictionary in given directory, extracting it from kuromoji-ipadic if not yet.
+   *
+   * @param directory directory of extracted files
+   * @return mapped system dictionary
+   * @throws IOException failed to extract or map files
+   */
+  public static MappedSystemDictionary open(Path directory) throws IOException {
+    extract(directory);
+    return new MappedSystemDictionary(directory);
+  }
+
+  /**
+   * Extract binary files of kuromoji-ipadic into given directory. Files which already exist are kept if they have
+   * the same SHA-256 digest as the resources of kuromoji-ipadic, and replaced otherwise.
+   *
+   * <p>Each file is written into a temporary file and renamed, so concurrent processes never see a partial file. The
+   * directory is created readable only by its owner, and must be owned by the user running this JVM, so that no other
+   * user can replace the files which are mapped.
+   *
+   * @param directory directory of extracted files
+   * @throws IOException failed to extract, or the directory is owned by another user
+   */
+  public static void extract(Path directory) throws IOException {
+    ResourceResolver resolver = new SimpleResourceResolver(com.atilika.kuromoji.ipadic.Tokenizer.class);
+    createDirectory(directory);
+    for (String name : FILES) {
+      Path target = directory.resolve(name);
+      byte[] expected;
+      try (InputStream input = resolver.resolve(name)) {
+        expected = digest(input);
+      }
+      if (Files.isRegularFile(target, LinkOption.NOFOLLOW_LINKS)) {
+        try (InputStream input = Files.newInputStream(target)) {
+          if (Arrays.equals(expected, digest(input))) {
+            continue;
+          }
+        }
+        logger.log(Level.WARNING, "replace extracted file which differs from kuromoji-ipadic: " + target);
+      }
+      Path temp = Files.createTempFile(directory, name, ".tmp");
+      try (InputStream input = resolver.resolve(name)) {
+        Files.copy(input, temp, StandardCopyOption.REPLACE_EXISTING);
+        try (InputStream copied = Files.newInputStream(temp)) {
+          if (!Arrays.equals(expected, digest(copied))) {
+            throw new IOException("failed to extract " + name + " into " + directory);
+          }
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+  }
+
+  private static void createDirectory(Path directory) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+        Files.createDirectories(directory,
+                                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+      } else {
+        Files.createDirectories(directory);
+      }
+    }
+    if (Files.getFileAttributeView(directory, FileOwnerAttributeView.class) == null) {
+      return;
+    }
+    // owner of a file created by this JVM, which needs no lookup of user names
+    Path probe = Files.createTempFile(directory, "owner", ".tmp");
+    try {
+      UserPrincipal user = Files.getOwner(probe);
+      if (!user.equals(Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS))) {
+        throw new IOException("directory of system dictionary is not owned by " + user.getName() + ": " + directory);
+      }
+    } finally {
+      Files.deleteIfExists(probe);
+    }
+  }
+
+  private static byte[] digest(InputStream input) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    byte[] buffer = new byte[65536];
+    for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+      digest.update(buffer, 0, read);
+    }
+    return digest.digest();
+  }
+
+  private static ByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer slice = buffer.duplicate();
+    slice.position(offset).limit(offset + length);
+    return slice.slice();
+  }
+
+  /**
+   * Return the double array trie of surfaces.
+   *
+   * @return mapped trie
+   */
+  public DoubleArrayTrie getDoubleArrayTrie() {
+    return doubleArrayTrie;
+  }
+
+  /**
+   * Return the connection costs.
+   *
+   * @return mapped connection costs
+   */
+  public ConnectionCosts getConnectionCosts() {
+    return connectionCosts;
+  }
+
+  /**
+   * Return the token info dictionary.
+   *
+   * @return mapped token info dictionary
+   */
+  public TokenInfoDictionary getTokenInfoDictionary() {
+    return tokenInfoDictionary;
+  }
+
+  /**
+   * Return the number of left and right ids of the connection costs.
+   *
+   * @return size of each dimension of the matrix
+   */
+  public int getConnectionCostSize() {
+    return connectionCostSize;
+  }
+
+  /**
+   * Return the mapped matrix of connection costs, whose cost from right id r to left id l is at l + r * size.
+   *
+   * @return read only matrix
+   */
+  public ShortBuffer getConnectionCostMatrix() {
+    return connectionCostMatrix.asReadOnlyBuffer();
+  }
+
+  /**
+   * Same as {@link DoubleArrayTrie#lookup(String, int, int)} on mapped base, check and tail arrays.
+   */
+  private static class MappedDoubleArrayTrie extends DoubleArrayTrie {
+
+    // same as com.atilika.kuromoji.trie.DoubleArrayTrie
+    private static final int TAIL_OFFSET = 100000000;
+
+    private final boolean compact;
+    private final IntBuffer baseBuffer;
+    private final IntBuffer checkBuffer;
+    private final CharBuffer tailBuffer;
+
+    // same layout as DoubleArrayTrie#write(OutputStream): compact, sizes, base, check, tail
+    MappedDoubleArrayTrie(ByteBuffer buffer) {
+      compact = buffer.get(0) != 0;
+      int baseCheckSize = buffer.getInt(1);
+      int tailSize = buffer.getInt(5);
+      int offset = 9;
+      baseBuffer = slice(buffer, offset, baseCheckSize * 4).asIntBuffer();
+      offset += baseCheckSize * 4;
+      checkBuffer = slice(buffer, offset, baseCheckSize * 4).asIntBuffer();
+      offset += baseCheckSize * 4;
+      tailBuffer = slice(buffer, offset, tailSize * 2).asCharBuffer();
+    }
+
+    @Override
+    public IntBuffer getBaseBuffer() {
+      return baseBuffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public IntBuffer getCheckBuffer() {
+      return checkBuffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public CharBuffer getTailBuffer() {
+      return tailBuffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public int lookup(String key, int index, int j) {
+      int base = 1;
+      if (index != 0) {
+        base = baseBuffer.get(index);
+      }
+      for (int i = j, len = key.length(); i < len; ++i) {
+        int previous = index;
+        index = compact ? base + key.charAt(i) : index + base + key.charAt(i);
+        if (index >= baseBuffer.limit()) {
+          return -1;
+        }
+        base = baseBuffer.get(index);
+        if (base == 0 || checkBuffer.get(index) != previous) {
+          return -1;
+        }
+        if (base >= TAIL_OFFSET) {
+          return matchTail(base, index, key, i + 1);
+        }
+      }
+      int endIndex = compact ? base + 1 : index + base + 1;
+      return checkBuffer.get(endIndex) == index ? index : 0;
+    }
+
+    private int matchTail(int base, int index, String key, int from) {
+      int position = base - TAIL_OFFSET;
+      int length = key.length() - from;
+      for (int i = 0; i < length; ++i) {
+        if (key.charAt(from + i) != tailBuffer.get(position + i)) {
+          return -1;
+        }
+      }
+      return tailBuffer.get(position + length) == DoubleArrayTrie.TERMINATING_CHARACTER ? index : 0;
+    }
+  }
+
+  /**
+   * Same as {@link TokenInfoDictionary} on mapped token info, feature maps and word id map.
+   */
+  private static class MappedTokenInfoDictionary extends TokenInfoDictionary {
+
+    // same as com.atilika.kuromoji.buffer.TokenInfoBuffer
+    private static final int TOKEN_INFO_HEADER = 20;
+    private static final int TOKEN_INFO_OFFSET = 3;
+    private static final int LEFT_ID = 0;
+    private static final int RIGHT_ID = 1;
+    private static final int WORD_COST = 2;
+
+    private static final int[] EMPTY = new int[0];
+
+    private final ByteBuffer tokenInfos;
+    private final int tokenInfoCount;
+    private final int posInfoCount;
+    private final int featureCount;
+    private final int entrySize;
+
+    private final ByteBuffer posValues;
+    private final ByteBuffer stringValues;
+
+    private final IntBuffer indices;
+    private final IntBuffer wordIds;
+
+    // each file is written by com.atilika.kuromoji.io.ByteBufferIO or IntegerArrayIO, which prefix the size
+    MappedTokenInfoDictionary(ByteBuffer tokenInfos, ByteBuffer posValues, ByteBuffer stringValues,
+                              ByteBuffer wordIdMap) {
+      this.tokenInfos = slice(tokenInfos, 4, tokenInfos.getInt(0));
+      this.tokenInfoCount = this.tokenInfos.getInt(8);
+      this.posInfoCount = this.tokenInfos.getInt(12);
+      this.featureCount = this.tokenInfos.getInt(16);
+      this.entrySize = tokenInfoCount * 2 + posInfoCount + featureCount * 4;
+
+      this.posValues = slice(posValues, 4, posValues.getInt(0));
+      this.stringValues = slice(stringValues, 4, stringValues.getInt(0));
+
+      int indexCount = wordIdMap.getInt(0);
+      this.indices = slice(wordIdMap, 4, indexCount * 4).asIntBuffer();
+      int wordIdOffset = 4 + indexCount * 4;
+      this.wordIds = slice(wordIdMap, wordIdOffset + 4, wordIdMap.getInt(wordIdOffset) * 4).asIntBuffer();
+    }
+
+    private int position(int wordId) {
+      return wordId * entrySize + TOKEN_INFO_HEADER;
+    }
+
+    private int tokenInfo(int wordId, int i) {
+      return tokenInfos.getShort(position(wordId) + i * 2);
+    }
+
+    private int partOfSpeechFeature(int wordId, int i) {
+      return 0xff & tokenInfos.get(position(wordId) + tokenInfoCount * 2 + i);
+    }
+
+    private int feature(int wordId, int i) {
+      return tokenInfos.getInt(position(wordId) + tokenInfoCount * 2 + posInfoCount + (i - posInfoCount) * 4);
+    }
+
+    // same as com.atilika.kuromoji.buffer.StringValueMapBuffer: offsets, then UTF-8 with short length
+    private static String string(ByteBuffer values, int id) {
+      int address = values.getInt(id * 4 + 4);
+      byte[] bytes = new byte[values.getShort(address)];
+      for (int i = 0; i < bytes.length; ++i) {
+        bytes[i] = values.get(address + 2 + i);
+      }
+      return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int[] lookupWordIds(int sourceId) {
+      int index = indices.get(sourceId);
+      if (index == -1) {
+        return EMPTY;
+      }
+      int[] result = new int[wordIds.get(index)];
+      for (int i = 0; i < result.length; ++i) {
+        result[i] = wordIds.get(index + 1 + i);
+      }
+      return result;
+    }
+
+    @Override
+    public int getLeftId(int wordId) {
+      return tokenInfo(wordId, LEFT_ID);
+    }
+
+    @Override
+    public int getRightId(int wordId) {
+      return tokenInfo(wordId, RIGHT_ID);
+    }
+
+    @Override
+    public int getWordCost(int wordId) {
+      return tokenInfo(wordId, WORD_COST);
+    }
+
+    @Override
+    public String[] getAllFeaturesArray(int wordId) {
+      boolean partOfSpeechAsShorts = posInfoCount == 0;
+      int posLength = partOfSpeechAsShorts ? tokenInfoCount - TOKEN_INFO_OFFSET : posInfoCount;
+      String[] result = new String[posLength + featureCount];
+      for (int i = 0; i < posLength; ++i) {
+        int id = partOfSpeechAsShorts ? tokenInfo(wordId, i + TOKEN_INFO_OFFSET) : partOfSpeechFeature(wordId, i);
+        result[i] = string(posValues, id);
+      }
+      for (int i = 0; i < featureCount; ++i) {
+        result[i + posLength] = string(stringValues, feature(wordId, i + posInfoCount));
+      }
+      return result;
+    }
+
+    @Override
+    public String getAllFeatures(int wordId) {
+      String[] features = getAllFeaturesArray(wordId);
+      for (int i = 0; i < features.length; ++i) {
+        features[i] = DictionaryEntryLineParser.escape(features[i]);
+      }
+      return String.join(",", features);
+    }
+
+    @Override
+    public String getFeature(int wordId, int... fields) {
+      if (fields.length == 0) {
+        return getAllFeatures(wordId);
+      }
+      if (fields.length == 1) {
+        int field = fields[0];
+        return field < posInfoCount
+               ? string(posValues, partOfSpeechFeature(wordId, field))
+               : string(stringValues, feature(wordId, field));
+      }
+      String[] allFeatures = getAllFeaturesArray(wordId);
+      String[] features = new String[fields.length];
+      for (int i = 0; i < fields.length; ++i) {
+        features[i] = DictionaryEntryLineParser.escape(allFeatures[fields[i]]);
+      }
+      return String.join(",", features);
+    }
+  }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.dict;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick matcher of special tokens.
+ *
+ * <p>All occurrences of all tokens are found in one scan of the text, so the cost of matching does not depend on the
+ * number of tokens. Overlapping occurrences are resolved leftmost first, and the longest token at the same position.
+ *
+ * <p>Transitions of all states are flattened into sorted arrays, so a matcher is compact and immutable after built.
+ */
+public final class SpecialTokenMatcher {
+
+  private static final SpecialTokenMatcher EMPTY = new SpecialTokenMatcher(Collections.emptyMap());
+
+  // transitions of state s are childChars[childOffsets[s]..childOffsets[s + 1]), sorted
+  private final int[] childOffsets;
+  private final char[] childChars;
+  private final int[] childStates;
+
+  private final int[] failures;
+  // index of the token which ends at the state, or -1
+  private final int[] outputs;
+  // next state on the failure chain which has an output, or -1
+  private final int[] outputLinks;
+
+  private final String[] tokens;
+  private final String[] replacements;
+
+  private SpecialTokenMatcher(Map<String, String> tokenMap) {
+    tokens = new String[tokenMap.size()];
+    replacements = new String[tokenMap.size()];
+
+    // build trie
+    List<TreeMap<Character, Integer>> children = new ArrayList<>();
+    List<Integer> outputList = new ArrayList<>();
+    children.add(new TreeMap<>());
+    outputList.add(-1);
+    int index = 0;
+    for (Map.Entry<String, String> entry : tokenMap.entrySet()) {
+      String token = entry.getKey();
+      int state = 0;
+      for (int i = 0, len = token.length(); i < len; ++i) {
+        Integer next = children.get(state).get(token.charAt(i));
+        if (next == null) {
+          next = children.size();
+          children.get(state).put(token.charAt(i), next);
+          children.add(new TreeMap<>());
+          outputList.add(-1);
+        }
+        state = next;
+      }
+      tokens[index] = token;
+      replacements[index] = entry.getValue();
+      outputList.set(state, index++);
+    }
+
+    // flatten transitions
+    int states = children.size();
+    childOffsets = new int[states + 1];
+    for (int s = 0; s < states; ++s) {
+      childOffsets[s + 1] = childOffsets[s] + children.get(s).size();
+    }
+    childChars = new char[childOffsets[states]];
+    childStates = new int[childOffsets[states]];
+    for (int s = 0; s < states; ++s) {
+      int i = childOffsets[s];
+      for (Map.Entry<Character, Integer> child : children.get(s).entrySet()) {
+        childChars[i] = child.getKey();
+        childStates[i++] = child.getValue();
+      }
+    }
+    outputs = new int[states];
+    for (int s = 0; s < states; ++s) {
+      outputs[s] = outputList.get(s);
+    }
+
+    // failure and output links in breadth first order
+    failures = new int[states];
+    outputLinks = new int[states];
+    outputLinks[0] = -1;
+    Deque<Integer> queue = new ArrayDeque<>();
+    for (int i = childOffsets[0]; i < childOffsets[1]; ++i) {
+      failures[childStates[i]] = 0;
+      outputLinks[childStates[i]] = -1;
+      queue.add(childStates[i]);
+    }
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      for (int i = childOffsets[state]; i < childOffsets[state + 1]; ++i) {
+        int child = childStates[i];
+        int failure = next(failures[state], childChars[i]);
+        failures[child] = failure;
+        outputLinks[child] = outputs[failure] >= 0 ? failure : outputLinks[failure];
+        queue.add(child);
+      }
+    }
+  }
+
+  /**
+   * Create a matcher of given tokens.
+   *
+   * @param tokens map from special token to its replacement, which is empty if not replaced
+   * @return matcher
+   */
+  public static SpecialTokenMatcher of(Map<String, String> tokens) {
+    Map<String, String> nonEmpty = new LinkedHashMap<>(tokens);
+    nonEmpty.remove("");
+    return nonEmpty.isEmpty() ? EMPTY : new SpecialTokenMatcher(nonEmpty);
+  }
+
+  /**
+   * Return the number of special tokens.
+   *
+   * @return number of special tokens
+   */
+  public int size() {
+    return tokens.length;
+  }
+
+  private int child(int state, char c) {
+    int index = Arrays.binarySearch(childChars, childOffsets[state], childOffsets[state + 1], c);
+    return index >= 0 ? childStates[index] : -1;
+  }
+
+  private int next(int state, char c) {
+    while (true) {
+      int child = child(state, c);
+      if (child >= 0) {
+        return child;
+      }
+      if (state == 0) {
+        return 0;
+      }
+      state = failures[state];
+    }
+  }
+
+  /**
+   * Return the replacement of given special token.
+   *
+   * @param token special token
+   * @return replacement, which is empty if not replaced, or null if given token is not a special token
+   */
+  public String getReplacement(String token) {
+    int state = 0;
+    for (int i = 0, len = token.length(); i < len && state >= 0; ++i) {
+      state = child(state, token.charAt(i));
+    }
+    return state >= 0 && outputs[state] >= 0 ? replacements[outputs[state]] : null;
+  }
+
+  /**
+   * Find special tokens in given range of text, leftmost and longest first, without overlaps.
+   *
+   * @param text  text to search
+   * @param begin beginning of the range
+   * @param end   end of the range
+   * @return matches sorted by offset
+   */
+  public List<Match> match(CharSequence text, int begin, int end) {
+    if (tokens.length == 0 || begin >= end) {
+      return Collections.emptyList();
+    }
+
+    // longest token beginning at each position
+    int[] longest = null;
+    int state = 0;
+    for (int i = begin; i < end; ++i) {
+      state = next(state, text.charAt(i));
+      for (int s = outputs[state] >= 0 ? state : outputLinks[state]; s >= 0; s = outputLinks[s]) {
+        int token = outputs[s];
+        int start = i + 1 - tokens[token].length();
+        if (longest == null) {
+          longest = new int[end - begin];
+          Arrays.fill(longest, -1);
+        }
+        int current = longest[start - begin];
+        if (current < 0 || tokens[current].length() < tokens[token].length()) {
+          longest[start - begin] = token;
+        }
+      }
+    }
+    if (longest == null) {
+      return Collections.emptyList();
+    }
+
+    List<Match> matches = new ArrayList<>();
+    for (int i = begin; i < end; ) {
+      int token = longest[i - begin];
+      if (token < 0) {
+        ++i;
+        continue;
+      }
+      matches.add(new Match(i, i + tokens[token].length(), tokens[token], replacements[token]));
+      i += tokens[token].length();
+    }
+    return matches;
+  }
+
+  /**
+   * Occurrence of a special token.
+   */
+  public static final class Match {
+    private final int start;
+    private final int end;
+    private final String token;
+    private final String replacement;
+
+    Match(int start, int end, String token, String replacement) {
+      this.start = start;
+      this.end = end;
+      this.token = token;
+      this.replacement = replacement;
+    }
+
+    /**
+     * Return the offset of the token.
+     *
+     * @return start offset, inclusive
+     */
+    public int getStart() {
+      return start;
+    }
+
+    /**
+     * Return the end of the token.
+     *
+     * @return end offset, exclusive
+     */
+    public int getEnd() {
+      return end;
+    }
+
+    /**
+     * Return the special token.
+     *
+     * @return special token
+     */
+    public String getToken() {
+      return token;
+    }
+
+    /**
+     * Return the replacement of the token.
+     *
+     * @return replacement, or empty if not replaced
+     */
+    public String getReplacement() {
+      return replacement;
+    }
+
+    @Override
+    public String toString() {
+      return "Match{" + start + ".." + end + ", " + token + "}";
+    }
+  }
+
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.dict;
+
+import com.atilika.kuromoji.util.DictionaryEntryLineParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compiler of Kuromoji user dictionary in CSV format into the binary format of {@link CompiledUserDictionary}.
+ *
+ * <p>Entries are parsed in the same way as {@link com.atilika.kuromoji.dict.UserDictionary}, including word ids,
+ * so a compiled dictionary gives the same tokens as the CSV.
+ *
+ * <p>The binary format is big endian and consists of a header of 8 ints followed by these sections.
+ * <pre>
+ * int[entries + 1]  offsets of keys in key chars (keys are sorted)
+ * int[entries]      first word id of each key
+ * int[entries + 1]  offsets of segment lengths of each key
+ * int[segments]     segment lengths
+ * int[words + 1]    offsets of readings in string chars
+ * int[words]        part of speech id of each word
+ * int[pos + 1]      offsets of part of speeches in string chars
+ * char[]            key chars
+ * char[]            string chars
+ * </pre>
+ *
+ * <p>Usage: {@code UserDictionaryCompiler [-s special_tokens.txt] [-l] user_dict.csv user_dict.bin}
+ * where -s adds each line of the file as a special token and -l lower cases special tokens.
+ */
+public final class UserDictionaryCompiler {
+
+  static final int MAGIC = 0x4b554431; // "KUD1"
+  static final int HEADER_INTS = 8;
+
+  private final Map<String, int[]> entries = new LinkedHashMap<>();
+  private final List<String> readings = new ArrayList<>();
+  private final List<Integer> partOfSpeechIds = new ArrayList<>();
+  private final Map<String, Integer> partOfSpeeches = new LinkedHashMap<>();
+
+  /**
+   * Read entries in CSV format.
+   *
+   * @param reader user dictionary
+   * @return this
+   * @throws IOException failed to read
+   */
+  public UserDictionaryCompiler read(Reader reader) throws IOException {
+    BufferedReader bufferedReader = new BufferedReader(reader);
+    String line;
+    while ((line = bufferedReader.readLine()) != null) {
+      // same as com.atilika.kuromoji.dict.UserDictionary
+      line = line.replaceAll("#.*$", "").trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+      addEntry(line);
+    }
+    return this;
+  }
+
+  /**
+   * Add an entry in CSV format (surface,segmentation,readings,part of speech).
+   *
+   * @param entry entry of user dictionary
+   * @return this
+   */
+  public UserDictionaryCompiler addEntry(String entry) {
+    String[] values = DictionaryEntryLineParser.parseLine(entry);
+    if (values.length < 4) {
+      throw new IllegalArgumentException("User dictionary entry not properly formatted: " + entry);
+    }
+    String surface = values[0];
+    String[] segmentation;
+    String[] segmentReadings;
+    if (!surface.equals(values[1])) {
+      segmentation = values[1].split("\\s+");
+      segmentReadings = values[2].split("\\s+");
+    } else {
+      segmentation = new String[]{values[1]};
+      segmentReadings = new String[]{values[2]};
+    }
+    if (segmentation.length != segmentReadings.length) {
+      throw new IllegalArgumentException("User dictionary entry not properly formatted: " + entry);
+    }
+
+    Integer partOfSpeechId = partOfSpeeches.computeIfAbsent(values[3], k -> partOfSpeeches.size());
+    int[] wordIdAndLengths = new int[segmentation.length + 1];
+    wordIdAndLengths[0] = readings.size();
+    for (int i = 0; i < segmentation.length; ++i) {
+      wordIdAndLengths[i + 1] = segmentation[i].length();
+      readings.add(segmentReadings[i]);
+      partOfSpeechIds.add(partOfSpeechId);
+    }
+    // later entry overwrites earlier one, same as PatriciaTrie
+    entries.put(surface, wordIdAndLengths);
+    return this;
+  }
+
+  /**
+   * Add a special token, which is a word of "SpecialToken" part of speech.
+   *
+   * @param token special token
+   * @return this
+   */
+  public UserDictionaryCompiler addSpecialToken(String token) {
+    // XXX: do we need to provide correct reading?
+    return addEntry(String.join(",", token, token, token, "SpecialToken"));
+  }
+
+  /**
+   * Compile added entries.
+   *
+   * @return compiled dictionary, positioned at 0
+   */
+  public ByteBuffer compile() {
+    List<String> keys = new ArrayList<>(entries.keySet());
+    keys.sort(null);
+    List<String> partOfSpeechList = new ArrayList<>(partOfSpeeches.keySet());
+
+    int keyChars = 0;
+    int segments = 0;
+    for (String key : keys) {
+      keyChars += key.length();
+      segments += entries.get(key).length - 1;
+    }
+    int stringChars = 0;
+    for (String reading : readings) {
+      stringChars += reading.length();
+    }
+    for (String partOfSpeech : partOfSpeechList) {
+      stringChars += partOfSpeech.length();
+    }
+
+    int ints = HEADER_INTS + (keys.size() + 1) + keys.size() + (keys.size() + 1) + segments
+               + (readings.size() + 1) + readings.size() + (partOfSpeechList.size() + 1);
+    ByteBuffer buffer = ByteBuffer.allocate(ints * 4 + (keyChars + stringChars) * 2);
+
+    buffer.putInt(MAGIC);
+    buffer.putInt(keys.size());
+    buffer.putInt(segments);
+    buffer.putInt(readings.size());
+    buffer.putInt(partOfSpeechList.size());
+    buffer.putInt(keyChars);
+    buffer.putInt(stringChars);
+    buffer.putInt(0); // reserved
+
+    int offset = 0;
+    for (String key : keys) {
+      buffer.putInt(offset);
+      offset += key.length();
+    }
+    buffer.putInt(offset);
+    for (String key : keys) {
+      buffer.putInt(entries.get(key)[0]);
+    }
+    offset = 0;
+    for (String key : keys) {
+      buffer.putInt(offset);
+      offset += entries.get(key).length - 1;
+    }
+    buffer.putInt(offset);
+    for (String key : keys) {
+      int[] wordIdAndLengths = entries.get(key);
+      for (int i = 1; i < wordIdAndLengths.length; ++i) {
+        buffer.putInt(wordIdAndLengths[i]);
+      }
+    }
+    offset = 0;
+    for (String reading : readings) {
+      buffer.putInt(offset);
+      offset += reading.length();
+    }
+    buffer.putInt(offset);
+    for (int partOfSpeechId : partOfSpeechIds) {
+      buffer.putInt(partOfSpeechId);
+    }
+    for (String partOfSpeech : partOfSpeechList) {
+      buffer.putInt(offset);
+      offset += partOfSpeech.length();
+    }
+    buffer.putInt(offset);
+
+    for (String key : keys) {
+      putChars(buffer, key);
+    }
+    for (String reading : readings) {
+      putChars(buffer, reading);
+    }
+    for (String partOfSpeech : partOfSpeechList) {
+      putChars(buffer, partOfSpeech);
+    }
+
+    buffer.flip();
+    return buffer;
+  }
+
+  private static void putChars(ByteBuffer buffer, String s) {
+    for (int i = 0, len = s.length(); i < len; ++i) {
+      buffer.putChar(s.charAt(i));
+    }
+  }
+
+  /**
+   * Compile added entries into given file.
+   *
+   * @param path output file
+   * @throws IOException failed to write
+   */
+  public void write(Path path) throws IOException {
+    ByteBuffer buffer = compile();
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                StandardOpenOption.TRUNCATE_EXISTING)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+  }
+
+  /**
+   * Compile user dictionary from command line.
+   */
+  public static void main(String[] args) throws IOException {
+    Path specialTokens = null;
+    boolean lowerCase = false;
+    List<String> files = new ArrayList<>();
+    for (int i = 0; i < args.length; ++i) {
+      if (args[i].equals("-s") && i + 1 < args.length) {
+        specialTokens = Paths.get(args[++i]);
+      } else if (args[i].equals("-l")) {
+        lowerCase = true;
+      } else {
+        files.add(args[i]);
+      }
+    }
+    if (files.size() != 2) {
+      System.err.println("usage: UserDictionaryCompiler [-s special_tokens.txt] [-l] user_dict.csv user_dict.bin");
+      System.exit(1);
+    }
+
+    UserDictionaryCompiler compiler = new UserDictionaryCompiler();
+    try (Reader reader = Files.newBufferedReader(Paths.get(files.get(0)), StandardCharsets.UTF_8)) {
+      compiler.read(reader);
+    }
+    if (specialTokens != null) {
+      for (String token : Files.readAllLines(specialTokens, StandardCharsets.UTF_8)) {
+        if (!token.isEmpty()) {
+          compiler.addSpecialToken(lowerCase ? token.toLowerCase(Locale.ENGLISH) : token);
+        }
+      }
+    }
+    compiler.write(Paths.get(files.get(1)));
+    System.out.println("compiled " + compiler.entries.size() + " entries into " + files.get(1));
+  }
+
+}
@@ -0,0 +1,9 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+@ExportPackage
+package jp.co.yahoo.vespa.language.lib.dict;
+
+import com.yahoo.osgi.annotation.ExportPackage;
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.docproc;
+
+import com.google.inject.Inject;
+import com.yahoo.docproc.DocumentProcessor;
+import com.yahoo.docproc.Processing;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentOperation;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.Field;
+import com.yahoo.document.annotation.Annotation;
+import com.yahoo.document.annotation.AnnotationTypes;
+import com.yahoo.document.annotation.Span;
+import com.yahoo.document.annotation.SpanList;
+import com.yahoo.document.annotation.SpanTree;
+import com.yahoo.document.annotation.SpanTrees;
+import com.yahoo.document.datatypes.Array;
+import com.yahoo.document.datatypes.FieldValue;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.language.Language;
+import com.yahoo.language.Linguistics;
+import com.yahoo.language.LinguisticsCase;
+import com.yahoo.language.lib.kuromoji.KuromojiDocprocConfig;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+
+import jp.co.yahoo.vespa.language.lib.kuromoji.KuromojiLinguistics;
+import jp.co.yahoo.vespa.language.lib.kuromoji.TokenizeRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Document processor which tokenizes Japanese string fields of documents in parallel before indexing.
+ *
+ * <p>Each value gets the linguistics span tree which the tokenize expression of indexing would create, and indexing
+ * does not tokenize a value which already has it. All values of a processing are tokenized as one batch of
+ * {@link KuromojiLinguistics#tokenize(List)}, whose parallelism is batch.parallelism of kuromoji config, so a
+ * document with many fields is not tokenized field by field on the indexing thread.
+ *
+ * <p>Only values whose language is Japanese are tokenized, the others are left to indexing. The language is taken
+ * from language_field of the document, which must be the input of set_language in indexing, then from language,
+ * and is detected from each value only if neither is set, as indexing does.
+ *
+ * <p>Stem mode and accent removal must be the same as the stemming and normalizing of the fields in the schema,
+ * which are BEST and true by default. Available configurations are as below.
+ * <table>
+ * <tr><th>parameter</th><th>default</th><th>description</th></tr>
+ * <tr><td>fields</td><td>-</td><td>names of string and array of string fields, nothing is tokenized if empty</td></tr>
+ * <tr><td>language</td><td>-</td><td>language of the fields if the document has no language_field</td></tr>
+ * <tr><td>language_field</td><td>-</td><td>name of the field which has the language tag of the document</td></tr>
+ * <tr><td>stem_mode</td><td>BEST</td><td>stem mode of tokenization</td></tr>
+ * <tr><td>remove_accents</td><td>true</td><td>whether accents are removed</td></tr>
+ * <tr><td>max_term_occurrences</td><td>10000</td><td>max occurrences of a term annotated in a value</td></tr>
+ * <tr><td>max_tokenize_length</td><td>1000000</td><td>max length of a value which is tokenized</td></tr>
+ * </table>
+ */
+public class KuromojiDocumentProcessor extends DocumentProcessor {
+
+  private static final Logger logger = Logger.getLogger(KuromojiDocumentProcessor.class.getName());
+
+  private final Linguistics linguistics;
+  private final Set<String> fields;
+  // null to detect
+  private final Language language;
+  // empty if documents have no language
+  private final String languageField;
+  private final StemMode stemMode;
+  private final boolean removeAccents;
+  private final int maxTermOccurrences;
+  private final int maxTokenizeLength;
+
+  @Inject
+  public KuromojiDocumentProcessor(Linguistics linguistics, KuromojiDocprocConfig config) {
+    this.linguistics = linguistics;
+    this.fields = new HashSet<>(config.fields());
+    this.language = config.language().isEmpty() ? null : Language.fromLanguageTag(config.language());
+    this.languageField = config.language_field();
+    if (fields.isEmpty()) {
+      logger.log(Level.WARNING, "no fields are configured, documents are left to indexing");
+    }
+    this.stemMode = StemMode.valueOf(config.stem_mode().toUpperCase(Locale.US));
+    this.removeAccents = config.remove_accents();
+    this.maxTermOccurrences = config.max_term_occurrences();
+    this.maxTokenizeLength = config.max_tokenize_length();
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public Progress process(Processing processing) {
+    if (fields.isEmpty()) {
+      return Progress.DONE;
+    }
+    List<StringFieldValue> values = new ArrayList<>();
+    List<TokenizeRequest> requests = new ArrayList<>();
+    for (DocumentOperation operation : processing.getDocumentOperations()) {
+      if (operation instanceof DocumentPut) {
+        collect(((DocumentPut) operation).getDocument(), values, requests);
+      }
+    }
+
+    List<? extends Iterable<Token>> results = tokenize(requests);
+    for (int i = 0; i < values.size(); ++i) {
+      annotate(values.get(i), results.get(i));
+    }
+    return Progress.DONE;
+  }
+
+  private void collect(Document document, List<StringFieldValue> values, List<TokenizeRequest> requests) {
+    Language documentLanguage = getLanguage(document);
+    for (Iterator<Map.Entry<Field, FieldValue>> it = document.iterator(); it.hasNext(); ) {
+      Map.Entry<Field, FieldValue> entry = it.next();
+      if (!fields.contains(entry.getKey().getName())) {
+        continue;
+      }
+      FieldValue value = entry.getValue();
+      if (value instanceof StringFieldValue) {
+        collect((StringFieldValue) value, documentLanguage, values, requests);
+      } else if (value instanceof Array) {
+        for (Object element : (Array<?>) value) {
+          if (element instanceof StringFieldValue) {
+            collect((StringFieldValue) element, documentLanguage, values, requests);
+          }
+        }
+      }
+    }
+  }
+
+  // same as set_language of indexing, null to detect
+  private Language getLanguage(Document document) {
+    if (!languageField.isEmpty()) {
+      FieldValue value = document.getFieldValue(languageField);
+      if (value instanceof StringFieldValue) {
+        Language documentLanguage = Language.fromLanguageTag(((StringFieldValue) value).getString());
+        if (documentLanguage != Language.UNKNOWN) {
+          return documentLanguage;
+        }
+      }
+    }
+    return language;
+  }
+
+  private void collect(StringFieldValue value, Language documentLanguage, List<StringFieldValue> values,
+                       List<TokenizeRequest> requests) {
+    if (value.getSpanTree(SpanTrees.LINGUISTICS) != null || value.getString().isEmpty()) {
+      return;
+    }
+    // same as com.yahoo.vespa.indexinglanguage.linguistics.LinguisticsAnnotator
+    String input = value.getString().length() <= maxTokenizeLength
+                   ? value.getString()
+                   : value.getString().substring(0, maxTokenizeLength);
+    Language inputLanguage = documentLanguage != null
+                             ? documentLanguage
+                             : linguistics.getDetector().detect(input, null).getLanguage();
+    if (inputLanguage != Language.JAPANESE) {
+      // left to indexing
+      return;
+    }
+    values.add(value);
+    requests.add(new TokenizeRequest(input, Language.JAPANESE, stemMode, removeAccents));
+  }
+
+  private List<? extends Iterable<Token>> tokenize(List<TokenizeRequest> requests) {
+    if (linguistics instanceof KuromojiLinguistics) {
+      return ((KuromojiLinguistics) linguistics).tokenize(requests).getTokens();
+    }
+    List<Iterable<Token>> results = new ArrayList<>(requests.size());
+    for (TokenizeRequest request : requests) {
+      results.add(linguistics.getTokenizer().tokenize(request.getInput(), request.getLanguage(),
+                                                      request.getStemMode(), request.isRemoveAccents()));
+    }
+    return results;
+  }
+
+  // same as com.yahoo.vespa.indexinglanguage.linguistics.LinguisticsAnnotator#annotate
+  private void annotate(StringFieldValue value, Iterable<Token> tokens) {
+    Map<String, Integer> termOccurrences = new HashMap<>();
+    SpanTree tree = new SpanTree(SpanTrees.LINGUISTICS);
+    for (Token token : tokens) {
+      addAnnotationSpan(value.getString(), tree.spanList(), token, termOccurrences);
+    }
+    if (tree.numAnnotations() > 0) {
+      value.setSpanTree(tree);
+    }
+  }
+
+  private void addAnnotationSpan(String input, SpanList parent, Token token, Map<String, Integer> termOccurrences) {
+    if (!token.isSpecialToken()) {
+      if (token.getNumComponents() > 0) {
+        for (int i = 0; i < token.getNumComponents(); ++i) {
+          addAnnotationSpan(input, parent, token.getComponent(i), termOccurrences);
+        }
+        return;
+      }
+      if (!token.isIndexable()) {
+        return;
+      }
+    }
+    String orig = token.getOrig();
+    int pos = (int) token.getOffset();
+    if (pos >= input.length() || pos + orig.length() > input.length()) {
+      throw new IllegalArgumentException("Token '" + orig + "' has offset " + pos
+                                         + ", which is outside the bounds of the input string; " + input);
+    }
+    int len = orig.length();
+
+    if (stemMode == StemMode.ALL) {
+      Span where = parent.span(pos, len);
+      String lowercasedOrig = LinguisticsCase.toLowerCase(orig);
+      addAnnotation(where, orig, orig, termOccurrences);
+
+      String lowercasedTerm = lowercasedOrig;
+      String term = token.getTokenString();
+      if (term != null) {
+        lowercasedTerm = LinguisticsCase.toLowerCase(term);
+      }
+      if (!lowercasedOrig.equals(lowercasedTerm)) {
+        addAnnotation(where, term, orig, termOccurrences);
+      }
+      for (int i = 0; i < token.getNumStems(); ++i) {
+        String stem = token.getStem(i);
+        String lowercasedStem = LinguisticsCase.toLowerCase(stem);
+        if (!lowercasedOrig.equals(lowercasedStem) && !lowercasedTerm.equals(lowercasedStem)) {
+          addAnnotation(where, stem, orig, termOccurrences);
+        }
+      }
+    } else {
+      String term = token.getTokenString();
+      if (term == null || term.trim().isEmpty()) {
+        return;
+      }
+      if (isBelowLimit(term, termOccurrences)) {
+        parent.span(pos, len).annotate(termAnnotation(term, orig));
+      }
+    }
+  }
+
+  private void addAnnotation(Span here, String term, String orig, Map<String, Integer> termOccurrences) {
+    if (isBelowLimit(term, termOccurrences)) {
+      here.annotate(termAnnotation(term, orig));
+    }
+  }
+
+  private boolean isBelowLimit(String term, Map<String, Integer> termOccurrences) {
+    String lowercasedTerm = LinguisticsCase.toLowerCase(term);
+    int occurrences = termOccurrences.getOrDefault(lowercasedTerm, 0);
+    if (occurrences >= maxTermOccurrences) {
+      return false;
+    }
+    termOccurrences.put(lowercasedTerm, occurrences + 1);
+    return true;
+  }
+
+  private static Annotation termAnnotation(String term, String orig) {
+    String value = LinguisticsCase.toLowerCase(term);
+    if (value.equals(orig)) {
+      return new Annotation(AnnotationTypes.TERM);
+    }
+    return new Annotation(AnnotationTypes.TERM, new StringFieldValue(value));
+  }
+
+}
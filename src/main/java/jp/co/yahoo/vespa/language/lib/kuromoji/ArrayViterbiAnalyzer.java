@@ -0,0 +1,640 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.atilika.kuromoji.TokenizerBase;
+import com.atilika.kuromoji.dict.CharacterDefinitions;
+import com.atilika.kuromoji.dict.Dictionary;
+import com.atilika.kuromoji.dict.TokenInfoDictionary;
+import com.atilika.kuromoji.dict.UnknownDictionary;
+import com.atilika.kuromoji.dict.UserDictionary;
+import com.atilika.kuromoji.ipadic.Token;
+import com.atilika.kuromoji.trie.DoubleArrayTrie;
+import com.atilika.kuromoji.viterbi.ViterbiNode;
+
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Viterbi search of Kuromoji on {@link KuromojiDictionaries}, keeping the lattice in primitive arrays.
+ *
+ * <p>Kuromoji builds a node object with its surface for every candidate word, and looks up the double array trie
+ * from its root for every prefix of the text. This analyzer keeps nodes in int arrays which are reused by each thread,
+ * walks the trie once for each start position, and reads connection costs from a flat matrix.
+ *
+ * <p>The lattice and the search, including ties and the repair of the lattice around user dictionary words, are the
+ * same as com.atilika.kuromoji.viterbi.ViterbiBuilder and ViterbiSearcher of Kuromoji 0.9.0, so tokens are the same
+ * as the ones of Kuromoji's tokenizer. Extended mode is not supported.
+ *
+ * <p>In compound mode, nodes of normal and search mode are kept in one lattice, each marked with the modes which
+ * have it, so that a sentence is built once and searched once in each mode. Search mode is searched only if normal
+ * mode gives a token which is penalized in search mode, since others are never decomposed.
+ */
+final class ArrayViterbiAnalyzer implements SentenceAnalyzer {
+
+  // same as com.atilika.kuromoji.trie.DoubleArrayTrie
+  private static final int TAIL_OFFSET = 100000000;
+
+  // index of ViterbiNode.Type
+  private static final byte KNOWN = 0;
+  private static final byte UNKNOWN = 1;
+  private static final byte USER = 2;
+  private static final byte INSERTED = 3;
+  private static final ViterbiNode.Type[] TYPES = ViterbiNode.Type.values();
+
+  private static final int NONE = -1;
+
+  // modes of a node, as bits
+  private static final byte NORMAL = 1;
+  private static final byte SEARCH = 2;
+
+  // lattices grown larger than this are not kept by threads
+  private static final int MAX_RETAINED_NODES = 1 << 16;
+
+  // modes of this analyzer, both in compound mode
+  private final byte modes;
+  private final int kanjiLengthThreshold;
+  private final int kanjiPenalty;
+  private final int otherLengthThreshold;
+  private final int otherPenalty;
+
+  private final IntBuffer trieBase;
+  private final IntBuffer trieCheck;
+  private final CharBuffer trieTail;
+  private final boolean trieCompact;
+  private final int trieLimit;
+
+  // costs[backwardId + forwardId * costSize], or mapped buffer in the same layout if not on the heap
+  private final short[] costs;
+  private final ShortBuffer costBuffer;
+  private final int costSize;
+
+  private final TokenInfoDictionary tokenInfoDictionary;
+  private final UnknownDictionary unknownDictionary;
+  private final CharacterDefinitions characterDefinitions;
+  private final UserDictionary userDictionary;
+  // by ViterbiNode.Type
+  private final Dictionary[] typeDictionaries;
+
+  private final KuromojiDictionaries dictionaries;
+
+  private final ThreadLocal<Lattice> lattices = ThreadLocal.withInitial(Lattice::new);
+
+  /**
+   * Create ArrayViterbiAnalyzer.
+   *
+   * @param dictionaries dictionaries shared with Kuromoji's tokenizers
+   * @param mode         normal or search
+   * @param penalties    kanji length threshold, kanji penalty, other length threshold and other penalty
+   */
+  ArrayViterbiAnalyzer(KuromojiDictionaries dictionaries, TokenizerBase.Mode mode, int[] penalties) {
+    this(dictionaries, toModes(mode), penalties);
+  }
+
+  /**
+   * Create ArrayViterbiAnalyzer in compound mode, which analyzes in normal and search mode on one lattice.
+   *
+   * @param dictionaries dictionaries shared with Kuromoji's tokenizers
+   * @param penalties    kanji length threshold, kanji penalty, other length threshold and other penalty of search
+   *                     mode
+   * @see #analyze(String, List)
+   */
+  ArrayViterbiAnalyzer(KuromojiDictionaries dictionaries, int[] penalties) {
+    this(dictionaries, (byte) (NORMAL | SEARCH), penalties);
+  }
+
+  private ArrayViterbiAnalyzer(KuromojiDictionaries dictionaries, byte modes, int[] penalties) {
+    this.dictionaries = dictionaries;
+    this.modes = modes;
+    this.kanjiLengthThreshold = penalties[0];
+    this.kanjiPenalty = penalties[1];
+    this.otherLengthThreshold = penalties[2];
+    this.otherPenalty = penalties[3];
+
+    DoubleArrayTrie trie = dictionaries.getDoubleArrayTrie();
+    this.trieBase = trie.getBaseBuffer();
+    this.trieCheck = trie.getCheckBuffer();
+    this.trieTail = trie.getTailBuffer();
+    this.trieCompact = dictionaries.isDoubleArrayTrieCompact();
+    this.trieLimit = trieBase.limit();
+
+    ShortBuffer matrix = dictionaries.getConnectionCostMatrix();
+    this.costs = matrix.hasArray() && matrix.arrayOffset() == 0 ? matrix.array() : null;
+    this.costBuffer = matrix;
+    this.costSize = dictionaries.getConnectionCostSize();
+
+    this.tokenInfoDictionary = dictionaries.getTokenInfoDictionary();
+    this.unknownDictionary = dictionaries.getUnknownDictionary();
+    this.characterDefinitions = dictionaries.getCharacterDefinitions();
+    this.userDictionary = dictionaries.getUserDictionary();
+    this.typeDictionaries = new Dictionary[TYPES.length];
+    typeDictionaries[KNOWN] = tokenInfoDictionary;
+    typeDictionaries[UNKNOWN] = unknownDictionary;
+    typeDictionaries[USER] = userDictionary;
+    typeDictionaries[INSERTED] = dictionaries.getInsertedDictionary();
+  }
+
+  private static byte toModes(TokenizerBase.Mode mode) {
+    switch (mode) {
+      case NORMAL:
+        return NORMAL;
+      case SEARCH:
+        return SEARCH;
+      default:
+        throw new IllegalArgumentException("extended mode is not supported");
+    }
+  }
+
+  @Override
+  public List<Token> analyze(String text) {
+    return analyze(text, null);
+  }
+
+  /**
+   * Return tokens of normal mode of given text, and add tokens of search mode of the same lattice to decomposition
+   * for each part of the text split on ideographic full stops and commas, if normal mode gives a token there which
+   * is penalized in search mode. Only the analyzer in compound mode supports this.
+   */
+  @Override
+  public List<Token> analyze(String text, List<Token> decomposition) {
+    if (decomposition != null && modes != (NORMAL | SEARCH)) {
+      throw new UnsupportedOperationException("not in compound mode");
+    }
+    List<Token> tokens = new ArrayList<>();
+    Lattice lattice = lattices.get();
+    // same as com.atilika.kuromoji.TokenizerBase
+    int offset = 0;
+    for (int i = 0, len = text.length(); i < len; ++i) {
+      char c = text.charAt(i);
+      if (c == '\u3002' || c == '\u3001') {
+        analyze(lattice, text.substring(offset, i + 1), offset, tokens, decomposition);
+        offset = i + 1;
+      }
+    }
+    if (offset == 0) {
+      analyze(lattice, text, 0, tokens, decomposition);
+    } else if (offset < text.length()) {
+      analyze(lattice, text.substring(offset), offset, tokens, decomposition);
+    }
+    if (lattice.capacity() > MAX_RETAINED_NODES) {
+      lattices.remove();
+    }
+    return tokens;
+  }
+
+  private void analyze(Lattice lattice, String sentence, int offset, List<Token> tokens,
+                       List<Token> decomposition) {
+    build(lattice, sentence);
+    // compound mode without decomposition is normal mode
+    search(lattice, modes == SEARCH ? SEARCH : NORMAL);
+    int[] path = path(lattice);
+    addTokens(lattice, path, sentence, offset, tokens);
+
+    if (decomposition != null && isDecomposable(lattice, path, sentence)) {
+      lattice.resetPaths();
+      search(lattice, SEARCH);
+      addTokens(lattice, path(lattice), sentence, offset, decomposition);
+    }
+  }
+
+  private static int[] path(Lattice lattice) {
+    int count = 0;
+    for (int node = lattice.eos; node != NONE; node = lattice.back[node]) {
+      ++count;
+    }
+    int[] path = new int[count];
+    for (int node = lattice.eos; node != NONE; node = lattice.back[node]) {
+      path[--count] = node;
+    }
+    return path;
+  }
+
+  private void addTokens(Lattice lattice, int[] path, String sentence, int offset, List<Token> tokens) {
+    for (int node : path) {
+      byte type = lattice.type[node];
+      int wordId = lattice.wordId[node];
+      if (type == KNOWN && wordId == NONE) {
+        // BOS and EOS
+        continue;
+      }
+      int begin = lattice.begin[node];
+      tokens.add(dictionaries.createToken(wordId, sentence.substring(begin, begin + lattice.length[node]),
+                                          TYPES[type], offset + lattice.position[node], typeDictionaries[type]));
+    }
+  }
+
+  /**
+   * Whether any node of given path is penalized in search mode, which is the same as
+   * {@link KuromojiContext#isDecomposable(String)}.
+   */
+  private boolean isDecomposable(Lattice lattice, int[] path, String sentence) {
+    for (int node : path) {
+      if (isPenalized(sentence, lattice.begin[node], lattice.length[node])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Same as com.atilika.kuromoji.viterbi.ViterbiBuilder#build for each mode of this analyzer. Positions of the
+   * lattice are indexes of the sentence plus one.
+   */
+  private void build(Lattice lattice, String sentence) {
+    int length = sentence.length();
+    int dimension = length + 2;
+    lattice.reset(dimension);
+    lattice.add(NONE, KNOWN, 0, 0, 0, 0, 0, 0, NONE, 0, 1, modes);
+
+    // in normal mode, where no unknown word begins inside the previous one
+    int unknownWordEnd = -1;
+    for (int start = 0; start < length; ++start) {
+      // modes which reach start
+      byte reached = lattice.endModes[start + 1];
+      if (reached == 0) {
+        continue;
+      }
+      boolean found = addKnownWords(lattice, sentence, start, reached);
+      byte unknownModes = unknownWordEnd > start ? (byte) (reached & ~NORMAL) : reached;
+      if (unknownModes == 0) {
+        continue;
+      }
+      int[] categories = characterDefinitions.lookupCategories(sentence.charAt(start));
+      for (int i = 0; i < categories.length; ++i) {
+        int end = addUnknownWord(lattice, sentence, start, categories[i], i, found, unknownModes);
+        if (end != NONE && (unknownModes & NORMAL) != 0) {
+          unknownWordEnd = end;
+        }
+      }
+    }
+    if (userDictionary != null) {
+      addUserWords(lattice, sentence, dimension);
+    }
+    lattice.eos = lattice.add(NONE, KNOWN, 0, 0, 0, 0, 0, 0, dimension - 1, dimension - 1, 0, modes);
+  }
+
+  /**
+   * Add known words beginning at start in given modes, walking the trie along the sentence. Same as
+   * {@link DoubleArrayTrie#lookup(String, int, int)} for each prefix.
+   */
+  private boolean addKnownWords(Lattice lattice, String sentence, int start, byte modes) {
+    boolean found = false;
+    int index = 0;
+    int base = 1;
+    // position in the tail while matching it
+    int tail = NONE;
+    for (int end = start, len = sentence.length(); end < len; ++end) {
+      char c = sentence.charAt(end);
+      int result;
+      if (tail == NONE) {
+        int previous = index;
+        index = trieCompact ? base + c : index + base + c;
+        if (index >= trieLimit) {
+          break;
+        }
+        base = trieBase.get(index);
+        if (base == 0 || trieCheck.get(index) != previous) {
+          break;
+        }
+        if (base >= TAIL_OFFSET) {
+          tail = base - TAIL_OFFSET;
+          result = trieTail.get(tail) == DoubleArrayTrie.TERMINATING_CHARACTER ? index : 0;
+        } else {
+          int endIndex = trieCompact ? base + 1 : index + base + 1;
+          result = endIndex < trieLimit && trieCheck.get(endIndex) == index ? index : 0;
+        }
+      } else {
+        if (c != trieTail.get(tail)) {
+          break;
+        }
+        ++tail;
+        result = trieTail.get(tail) == DoubleArrayTrie.TERMINATING_CHARACTER ? index : 0;
+      }
+
+      if (result > 0) {
+        found = true;
+        int length = end + 1 - start;
+        int penalty = penalty(sentence, start, length);
+        for (int wordId : tokenInfoDictionary.lookupWordIds(result)) {
+          lattice.add(wordId, KNOWN, tokenInfoDictionary.getLeftId(wordId), tokenInfoDictionary.getRightId(wordId),
+                      tokenInfoDictionary.getWordCost(wordId), penalty, start, length, start, start + 1,
+                      start + 1 + length, modes);
+        }
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Same as com.atilika.kuromoji.viterbi.ViterbiBuilder#processUnknownWord in given modes.
+   *
+   * @return end of the unknown word, or NONE if not added
+   */
+  private int addUnknownWord(Lattice lattice, String sentence, int start, int category, int i, boolean found,
+                             byte modes) {
+    int length = 0;
+    int[] definition = characterDefinitions.lookupDefinition(category);
+    if (definition[CharacterDefinitions.INVOKE] == 1 || !found) {
+      length = 1;
+      if (definition[CharacterDefinitions.GROUP] != 0) {
+        for (int j = start + 1, len = sentence.length(); j < len; ++j) {
+          int[] categories = characterDefinitions.lookupCategories(sentence.charAt(j));
+          if (i >= categories.length || categories[i] != category) {
+            break;
+          }
+          ++length;
+        }
+      }
+    }
+    if (length > 0) {
+      int penalty = penalty(sentence, start, length);
+      for (int wordId : unknownDictionary.lookupWordIds(category)) {
+        lattice.add(wordId, UNKNOWN, unknownDictionary.getLeftId(wordId), unknownDictionary.getRightId(wordId),
+                    unknownDictionary.getWordCost(wordId), penalty, start, length, start, start + 1,
+                    start + 1 + length, modes);
+      }
+      return start + length;
+    }
+    return NONE;
+  }
+
+  /**
+   * Same as com.atilika.kuromoji.viterbi.ViterbiBuilder#processUserDictionary. The lattice around user words is
+   * repaired in each mode with the nodes of the mode.
+   */
+  private void addUserWords(Lattice lattice, String sentence, int dimension) {
+    for (UserDictionary.UserDictionaryMatch match : userDictionary.findUserDictionaryMatches(sentence)) {
+      int wordId = match.getWordId();
+      int index = match.getMatchStartIndex();
+      int length = match.getMatchLength();
+      int start = index + 1;
+      int end = start + length;
+      lattice.add(wordId, USER, userDictionary.getLeftId(wordId), userDictionary.getRightId(wordId),
+                  userDictionary.getWordCost(wordId), penalty(sentence, index, length), index, length, index, start,
+                  end, modes);
+      for (byte mode = NORMAL; mode <= SEARCH; mode <<= 1) {
+        if ((modes & mode) == 0) {
+          continue;
+        }
+        if ((lattice.endModes[start] & mode) == 0) {
+          repairBefore(lattice, sentence, index, mode);
+        }
+        if ((lattice.startModes[end] & mode) == 0) {
+          repairAfter(lattice, sentence, end, dimension, mode);
+        }
+      }
+    }
+  }
+
+  private void repairBefore(Lattice lattice, String sentence, int index, byte mode) {
+    for (int start = index; start > 0; --start) {
+      int glueBase = findGlueBase(lattice, index + 1 - start, lattice.startHead[start], lattice.nextStart, mode);
+      if (glueBase == NONE) {
+        continue;
+      }
+      int length = index + 1 - start;
+      addGlue(lattice, sentence, glueBase, lattice.begin[glueBase], length, start, mode);
+      return;
+    }
+  }
+
+  private void repairAfter(Lattice lattice, String sentence, int nodeEnd, int dimension, byte mode) {
+    for (int end = nodeEnd + 1; end < dimension; ++end) {
+      int glueBase = findGlueBase(lattice, nodeEnd + 1 - end, lattice.endHead[end], lattice.nextEnd, mode);
+      if (glueBase == NONE) {
+        continue;
+      }
+      int delta = end - nodeEnd;
+      int glueBaseLength = lattice.length[glueBase];
+      if (delta > glueBaseLength) {
+        // Kuromoji fails on substring in this case
+        throw new StringIndexOutOfBoundsException(glueBaseLength - delta);
+      }
+      addGlue(lattice, sentence, glueBase, lattice.begin[glueBase] + glueBaseLength - delta, delta, nodeEnd, mode);
+      return;
+    }
+  }
+
+  /**
+   * Return the shortest node of given mode at least as long as given length in given list, the first one of the
+   * same length.
+   */
+  private static int findGlueBase(Lattice lattice, int length, int head, int[] next, byte mode) {
+    int glueBase = NONE;
+    for (int node = head; node != NONE; node = next[node]) {
+      if ((lattice.modes[node] & mode) == 0) {
+        continue;
+      }
+      int candidate = lattice.length[node];
+      if ((glueBase == NONE || candidate < lattice.length[glueBase]) && candidate >= length) {
+        glueBase = node;
+      }
+    }
+    return glueBase;
+  }
+
+  /**
+   * Add a node of given mode with the word and costs of glue base. Its position is the one of the lattice like
+   * Kuromoji.
+   */
+  private void addGlue(Lattice lattice, String sentence, int glueBase, int begin, int length, int start, byte mode) {
+    lattice.add(lattice.wordId[glueBase], INSERTED, lattice.leftId[glueBase], lattice.rightId[glueBase],
+                lattice.cost[glueBase], penalty(sentence, begin, length), begin, length, start, start, start + length,
+                mode);
+  }
+
+  /**
+   * Same as com.atilika.kuromoji.viterbi.ViterbiSearcher#calculatePathCosts on the nodes of given mode.
+   */
+  private void search(Lattice lattice, byte mode) {
+    boolean penalized = mode == SEARCH;
+    for (int i = 1; i < lattice.dimension; ++i) {
+      if ((lattice.startModes[i] & lattice.endModes[i] & mode) == 0) {
+        continue;
+      }
+      for (int node = lattice.startHead[i]; node != NONE; node = lattice.nextStart[node]) {
+        if ((lattice.modes[node] & mode) == 0) {
+          continue;
+        }
+        int leftId = lattice.leftId[node];
+        int cost = penalized ? lattice.cost[node] + lattice.penalty[node] : lattice.cost[node];
+        int leastPathCost = Integer.MAX_VALUE;
+        for (int left = lattice.endHead[i]; left != NONE; left = lattice.nextEnd[left]) {
+          if ((lattice.modes[left] & mode) == 0) {
+            continue;
+          }
+          int pathCost = lattice.pathCost[left] + connectionCost(lattice.rightId[left], leftId) + cost;
+          if (pathCost < leastPathCost) {
+            leastPathCost = pathCost;
+            lattice.pathCost[node] = pathCost;
+            lattice.back[node] = left;
+          }
+        }
+      }
+    }
+  }
+
+  private int connectionCost(int forwardId, int backwardId) {
+    int index = backwardId + forwardId * costSize;
+    return costs != null ? costs[index] : costBuffer.get(index);
+  }
+
+  /**
+   * Same as com.atilika.kuromoji.viterbi.ViterbiSearcher#getPenaltyCost, which is 0 without search mode.
+   */
+  private int penalty(String sentence, int begin, int length) {
+    if ((modes & SEARCH) == 0 || length <= kanjiLengthThreshold) {
+      return 0;
+    }
+    if (isKanji(sentence, begin, length)) {
+      return (length - kanjiLengthThreshold) * kanjiPenalty;
+    }
+    return length > otherLengthThreshold ? (length - otherLengthThreshold) * otherPenalty : 0;
+  }
+
+  private boolean isPenalized(String sentence, int begin, int length) {
+    return length > kanjiLengthThreshold && (isKanji(sentence, begin, length) || length > otherLengthThreshold);
+  }
+
+  private static boolean isKanji(String sentence, int begin, int length) {
+    for (int i = begin; i < begin + length; ++i) {
+      if (Character.UnicodeBlock.of(sentence.charAt(i)) != Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Nodes of a lattice in arrays. Nodes beginning and ending at each position are linked in the order of addition.
+   */
+  private static final class Lattice {
+    private static final int INITIAL_NODES = 256;
+    private static final int INITIAL_POSITIONS = 64;
+
+    int dimension;
+    int size;
+    int eos;
+
+    // by position
+    int[] startHead = new int[INITIAL_POSITIONS];
+    int[] startTail = new int[INITIAL_POSITIONS];
+    int[] endHead = new int[INITIAL_POSITIONS];
+    int[] endTail = new int[INITIAL_POSITIONS];
+    // modes of nodes beginning and ending at each position
+    byte[] startModes = new byte[INITIAL_POSITIONS];
+    byte[] endModes = new byte[INITIAL_POSITIONS];
+
+    // by node
+    int[] nextStart = new int[INITIAL_NODES];
+    int[] nextEnd = new int[INITIAL_NODES];
+    int[] wordId = new int[INITIAL_NODES];
+    byte[] type = new byte[INITIAL_NODES];
+    short[] leftId = new short[INITIAL_NODES];
+    short[] rightId = new short[INITIAL_NODES];
+    byte[] modes = new byte[INITIAL_NODES];
+    int[] cost = new int[INITIAL_NODES];
+    // added to cost in search mode
+    int[] penalty = new int[INITIAL_NODES];
+    // surface is sentence[begin, begin + length)
+    int[] begin = new int[INITIAL_NODES];
+    int[] length = new int[INITIAL_NODES];
+    int[] position = new int[INITIAL_NODES];
+    int[] pathCost = new int[INITIAL_NODES];
+    int[] back = new int[INITIAL_NODES];
+
+    void reset(int dimension) {
+      if (startHead.length < dimension) {
+        int positions = Math.max(dimension, startHead.length * 2);
+        startHead = new int[positions];
+        startTail = new int[positions];
+        endHead = new int[positions];
+        endTail = new int[positions];
+        startModes = new byte[positions];
+        endModes = new byte[positions];
+      }
+      Arrays.fill(startHead, 0, dimension, NONE);
+      Arrays.fill(endHead, 0, dimension, NONE);
+      Arrays.fill(startModes, 0, dimension, (byte) 0);
+      Arrays.fill(endModes, 0, dimension, (byte) 0);
+      this.dimension = dimension;
+      this.size = 0;
+    }
+
+    /**
+     * Clear the paths found by the previous search, to search again in another mode.
+     */
+    void resetPaths() {
+      Arrays.fill(pathCost, 0, size, 0);
+      Arrays.fill(back, 0, size, NONE);
+    }
+
+    int capacity() {
+      return wordId.length;
+    }
+
+    int add(int wordId, byte type, int leftId, int rightId, int cost, int penalty, int begin, int length, int position,
+            int start, int end, byte modes) {
+      if (size == capacity()) {
+        grow();
+      }
+      int node = size++;
+      this.wordId[node] = wordId;
+      this.type[node] = type;
+      this.leftId[node] = (short) leftId;
+      this.rightId[node] = (short) rightId;
+      this.modes[node] = modes;
+      this.cost[node] = cost;
+      this.penalty[node] = penalty;
+      this.begin[node] = begin;
+      this.length[node] = length;
+      this.position[node] = position;
+      this.pathCost[node] = 0;
+      this.back[node] = NONE;
+
+      nextStart[node] = NONE;
+      if (startHead[start] == NONE) {
+        startHead[start] = node;
+      } else {
+        nextStart[startTail[start]] = node;
+      }
+      startTail[start] = node;
+      nextEnd[node] = NONE;
+      if (endHead[end] == NONE) {
+        endHead[end] = node;
+      } else {
+        nextEnd[endTail[end]] = node;
+      }
+      endTail[end] = node;
+      startModes[start] |= modes;
+      endModes[end] |= modes;
+      return node;
+    }
+
+    private void grow() {
+      int capacity = capacity() * 2;
+      nextStart = Arrays.copyOf(nextStart, capacity);
+      nextEnd = Arrays.copyOf(nextEnd, capacity);
+      wordId = Arrays.copyOf(wordId, capacity);
+      type = Arrays.copyOf(type, capacity);
+      leftId = Arrays.copyOf(leftId, capacity);
+      rightId = Arrays.copyOf(rightId, capacity);
+      modes = Arrays.copyOf(modes, capacity);
+      cost = Arrays.copyOf(cost, capacity);
+      penalty = Arrays.copyOf(penalty, capacity);
+      begin = Arrays.copyOf(begin, capacity);
+      length = Arrays.copyOf(length, capacity);
+      position = Arrays.copyOf(position, capacity);
+      pathCost = Arrays.copyOf(pathCost, capacity);
+      back = Arrays.copyOf(back, capacity);
+    }
+  }
+
+}
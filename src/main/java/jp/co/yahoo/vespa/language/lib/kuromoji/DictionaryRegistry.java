@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Reference counted dictionaries shared in the JVM.
+ *
+ * <p>Several container clusters in one JVM, and the previous and the new component while reconfiguring, get the
+ * same instance for the same key instead of loading their own. A dictionary is dropped from the registry when the
+ * last lease is closed, and is freed when tokenizers still using it finish.
+ *
+ * @param <K> key of dictionary, which identifies its content
+ * @param <V> dictionary
+ */
+final class DictionaryRegistry<K, V> {
+
+  private final Map<K, Entry<V>> entries = new HashMap<>();
+
+  /**
+   * Load a dictionary which is not in the registry.
+   */
+  @FunctionalInterface
+  interface Loader<V> {
+    V load() throws IOException;
+  }
+
+  private static class Entry<V> {
+    private final V value;
+    private int references = 0;
+
+    Entry(V value) {
+      this.value = value;
+    }
+  }
+
+  /**
+   * Return the dictionary of given key, loading it if nobody uses it.
+   *
+   * @param key    key of dictionary
+   * @param loader loader of dictionary, called while other callers wait
+   * @return lease of dictionary, which must be closed when it is no longer used
+   * @throws IOException failed to load dictionary
+   */
+  synchronized Lease<K, V> acquire(K key, Loader<V> loader) throws IOException {
+    Entry<V> entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry<>(loader.load());
+      entries.put(key, entry);
+    }
+    ++entry.references;
+    return new Lease<>(this, key, entry);
+  }
+
+  private synchronized void release(K key, Entry<V> entry) {
+    if (--entry.references == 0) {
+      entries.remove(key);
+    }
+  }
+
+  /**
+   * Return the number of dictionaries in use.
+   */
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Return the number of leases of given key.
+   */
+  synchronized int references(K key) {
+    Entry<V> entry = entries.get(key);
+    return entry != null ? entry.references : 0;
+  }
+
+  /**
+   * Use of a shared dictionary.
+   */
+  static final class Lease<K, V> implements AutoCloseable {
+    private final DictionaryRegistry<K, V> registry;
+    private final K key;
+    private final Entry<V> entry;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    private Lease(DictionaryRegistry<K, V> registry, K key, Entry<V> entry) {
+      this.registry = registry;
+      this.key = key;
+      this.entry = entry;
+    }
+
+    V get() {
+      return entry.value;
+    }
+
+    /**
+     * Release the dictionary, only once however many times this is called.
+     */
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        registry.release(key, entry);
+      }
+    }
+  }
+
+}
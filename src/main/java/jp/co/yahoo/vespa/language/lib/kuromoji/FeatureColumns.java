@@ -0,0 +1,152 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.atilika.kuromoji.dict.Dictionary;
+import com.atilika.kuromoji.viterbi.ViterbiNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base forms and parts of speech of a dictionary, precomputed into arrays indexed by word id.
+ *
+ * <p>Kuromoji resolves a feature of a token by decoding, splitting or joining the features of its entry on every
+ * call. Tokens created by {@link #createToken} read them from these columns instead, and the same feature of any
+ * word is the same String instance.
+ */
+final class FeatureColumns {
+
+  // feature numbers of com.atilika.kuromoji.dict.Dictionary, which has no meta data fields of TokenBase
+  private static final int PART_OF_SPEECH_LEVELS = 4;
+  private static final int BASE_FORM = 6;
+
+  private final int firstWordId;
+  // indexes of baseFormValues and partOfSpeechValues by word id - firstWordId
+  private final int[] baseForms;
+  private final char[] partOfSpeeches;
+  private final String[] baseFormValues;
+  private final String[][] partOfSpeechValues;
+
+  private FeatureColumns(int firstWordId, int[] baseForms, char[] partOfSpeeches, String[] baseFormValues,
+                         String[][] partOfSpeechValues) {
+    this.firstWordId = firstWordId;
+    this.baseForms = baseForms;
+    this.partOfSpeeches = partOfSpeeches;
+    this.baseFormValues = baseFormValues;
+    this.partOfSpeechValues = partOfSpeechValues;
+  }
+
+  /**
+   * Read features of given word ids from a dictionary.
+   *
+   * @param dictionary  dictionary
+   * @param firstWordId first word id
+   * @param size        number of word ids
+   * @return columns, or null if the dictionary has too many distinct parts of speech
+   */
+  static FeatureColumns build(Dictionary dictionary, int firstWordId, int size) {
+    int[] baseForms = new int[size];
+    char[] partOfSpeeches = new char[size];
+    Map<String, Integer> baseFormIds = new HashMap<>();
+    Map<List<String>, Integer> partOfSpeechIds = new HashMap<>();
+    for (int i = 0; i < size; ++i) {
+      String[] features = dictionary.getAllFeaturesArray(firstWordId + i);
+      baseForms[i] = baseFormIds.computeIfAbsent(features[BASE_FORM], k -> baseFormIds.size());
+      int partOfSpeech = partOfSpeechIds.computeIfAbsent(
+          Arrays.asList(Arrays.copyOf(features, PART_OF_SPEECH_LEVELS)), k -> partOfSpeechIds.size());
+      if (partOfSpeech > Character.MAX_VALUE) {
+        return null;
+      }
+      partOfSpeeches[i] = (char) partOfSpeech;
+    }
+
+    String[] baseFormValues = new String[baseFormIds.size()];
+    baseFormIds.forEach((value, id) -> baseFormValues[id] = value);
+    String[][] partOfSpeechValues = new String[partOfSpeechIds.size()][];
+    partOfSpeechIds.forEach((value, id) -> partOfSpeechValues[id] = value.toArray(new String[0]));
+    return new FeatureColumns(firstWordId, baseForms, partOfSpeeches, baseFormValues, partOfSpeechValues);
+  }
+
+  /**
+   * Return the number of word ids in these columns.
+   */
+  int size() {
+    return baseForms.length;
+  }
+
+  /**
+   * Return the base form of given word.
+   */
+  String getBaseForm(int wordId) {
+    return baseFormValues[baseForms[wordId - firstWordId]];
+  }
+
+  /**
+   * Return the part of speech of given word and level.
+   *
+   * @param wordId word id
+   * @param level  level from 0 to 3
+   * @return part of speech
+   */
+  String getPartOfSpeech(int wordId, int level) {
+    return partOfSpeechValues[partOfSpeeches[wordId - firstWordId]][level];
+  }
+
+  /**
+   * Create a token which reads its base form and parts of speech from these columns.
+   *
+   * @see com.atilika.kuromoji.viterbi.TokenFactory#createToken
+   */
+  com.atilika.kuromoji.ipadic.Token createToken(int wordId, String surface, ViterbiNode.Type type, int position,
+                                                Dictionary dictionary) {
+    return new ColumnToken(wordId, surface, type, position, dictionary, this);
+  }
+
+  /**
+   * Token of Kuromoji, whose base form and parts of speech are read from columns.
+   */
+  private static final class ColumnToken extends com.atilika.kuromoji.ipadic.Token {
+
+    private final int wordId;
+    private final FeatureColumns columns;
+
+    ColumnToken(int wordId, String surface, ViterbiNode.Type type, int position, Dictionary dictionary,
+                FeatureColumns columns) {
+      super(wordId, surface, type, position, dictionary);
+      this.wordId = wordId;
+      this.columns = columns;
+    }
+
+    @Override
+    public String getPartOfSpeechLevel1() {
+      return columns.getPartOfSpeech(wordId, 0);
+    }
+
+    @Override
+    public String getPartOfSpeechLevel2() {
+      return columns.getPartOfSpeech(wordId, 1);
+    }
+
+    @Override
+    public String getPartOfSpeechLevel3() {
+      return columns.getPartOfSpeech(wordId, 2);
+    }
+
+    @Override
+    public String getPartOfSpeechLevel4() {
+      return columns.getPartOfSpeech(wordId, 3);
+    }
+
+    @Override
+    public String getBaseForm() {
+      return columns.getBaseForm(wordId);
+    }
+  }
+
+}
@@ -4,12 +4,53 @@ import com.yahoo.language.process.CharacterClasses;
 
 import java.text.Normalizer;
 
+/**
+ * Character classes for Japanese text.
+ *
+ * <p>All classes are precomputed for every code point at class initialization,
+ * so each classification is a single bitset probe.
+ */
 public class KuromojiCharacterClasses extends CharacterClasses {
+
+  private static final long[] letters = new long[(Character.MAX_CODE_POINT + 1) >> 6];
+  private static final long[] digits = new long[(Character.MAX_CODE_POINT + 1) >> 6];
+  private static final long[] lettersOrDigits = new long[(Character.MAX_CODE_POINT + 1) >> 6];
+
+  static {
+    for (int c = 0; c <= Character.MAX_CODE_POINT; ++c) {
+      boolean letter = computeIsLetter(c);
+      boolean digit = Character.isDigit(c);
+      if (letter) {
+        set(letters, c);
+      }
+      if (digit) {
+        set(digits, c);
+      }
+      if (letter || digit) {
+        set(lettersOrDigits, c);
+      }
+    }
+  }
+
   @Override
   public boolean isLetter(int c) {
+    return get(letters, c);
+  }
+
+  @Override
+  public boolean isDigit(int c) {
+    return get(digits, c);
+  }
+
+  @Override
+  public boolean isLetterOrDigit(int c) {
+    return get(lettersOrDigits, c);
+  }
+
+  private static boolean computeIsLetter(int c) {
     // see https://github.com/vespa-engine/vespa/blob/master/linguistics/src/main/java/com/yahoo/language/process/CharacterClasses.java
     if (java.lang.Character.isLetter(c)) return true;
-    if (Character.isDigit(c) &&  ! isLatin(c)) return true;
+    if (Character.isDigit(c) && Character.UnicodeBlock.of(c) != Character.UnicodeBlock.BASIC_LATIN) return true;
 
     if (c == '\u3008' || c == '\u3009' || c == '\u300a' || c == '\u300b' ||
         c == '\u300c' || c == '\u300d' || c == '\u300e' ||
@@ -23,10 +64,19 @@ public class KuromojiCharacterClasses extends CharacterClasses {
       return true;
     } else if (type == Character.OTHER_SYMBOL) {
       // OTHER_SYMBOL contains Gengo(Era), letter enclosed within a circle, etc
-      String norm = Normalizer.normalize(String.valueOf((char)c), Normalizer.Form.NFKC);
-      if (c == norm.charAt(0)) return false;
-      return isLetterOrDigit(norm.charAt(0));
+      String norm = Normalizer.normalize(new String(Character.toChars(c)), Normalizer.Form.NFKC);
+      int n = norm.codePointAt(0);
+      if (c == n) return false;
+      return computeIsLetter(n) || Character.isDigit(n);
     }
     return false;
   }
+
+  private static void set(long[] bits, int c) {
+    bits[c >> 6] |= 1L << c;
+  }
+
+  private static boolean get(long[] bits, int c) {
+    return c >= 0 && c <= Character.MAX_CODE_POINT && (bits[c >> 6] & (1L << c)) != 0;
+  }
 }
@@ -5,26 +5,42 @@
  */
 package jp.co.yahoo.vespa.language.lib.kuromoji;
 
+import com.atilika.kuromoji.dict.UserDictionary;
 import com.yahoo.component.Version;
 import com.yahoo.language.LinguisticsCase;
 import com.yahoo.language.lib.kuromoji.KuromojiConfig;
 import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
 
-import java.io.ByteArrayInputStream;
+import jp.co.yahoo.vespa.language.lib.dict.CompiledUserDictionary;
+import jp.co.yahoo.vespa.language.lib.dict.MappedSystemDictionary;
+import jp.co.yahoo.vespa.language.lib.dict.SpecialTokenMatcher;
+import jp.co.yahoo.vespa.language.lib.dict.UserDictionaryCompiler;
+
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Stream;
+import java.util.stream.Collectors;
 
 /**
  * Settings of Kuromoji tokenizer.
@@ -36,7 +52,16 @@ public class KuromojiContext {
 
   private static final Logger logger = Logger.getLogger(KuromojiContext.class.getName());
 
+  private static final String DEFAULT_WARMUP_CORPUS = "kuromoji-warmup.txt";
+
+  // shared by all contexts in the JVM
+  private static final DictionaryRegistry<String, KuromojiDictionaries> systemDictionaries =
+      new DictionaryRegistry<>();
+  private static final DictionaryRegistry<String, UserDictionary> userDictionaries = new DictionaryRegistry<>();
+
   private com.atilika.kuromoji.TokenizerBase.Mode mode;
+  // normal mode tokens followed by their search mode decompositions
+  private boolean compound;
 
   private int kanjiLengthThreshold;
   private int kanjiPenalty;
@@ -48,16 +73,99 @@ public class KuromojiContext {
   private boolean allLanguage;
   private boolean ignoreCase;
 
-  private Map<String, String> specialTokens = new HashMap<>();
+  private boolean asciiFastPath;
+  private boolean scriptSplit;
+  private boolean streaming;
+  private int chunkMaxLength;
+
+  private boolean cacheEnabled;
+  private int cacheSize;
+  private int cacheMaxInputLength;
+
+  private boolean internEnabled;
+  private int internSize;
+
+  private SpecialTokenMatcher specialTokens;
+
+  private KuromojiConfig kuromojiConfig;
+  private SpecialtokensConfig specialtokensConfig;
+
+  private UserDictionary userDictionary;
+  private DictionaryRegistry.Lease<String, UserDictionary> userDictionaryLease;
+  private Path userDictPath;
+  private FileTime userDictModified;
 
-  private String userDictContent = "";
+  private int reloadInterval;
+
+  private boolean systemDictMmap;
+  private Path systemDictDir;
+  private boolean featureColumns;
+
+  private KuromojiDictionaries dictionaries;
+  private DictionaryRegistry.Lease<String, KuromojiDictionaries> systemDictionaryLease;
+
+  private String loadMode;
+  private String instanceMode;
+  private String engine;
+  private int instancePoolSize;
+
+  private int batchParallelism;
+
+  private boolean warmupEnabled;
+  private String warmupCorpus;
+  private int warmupTimeout;
 
   /**
    * Settings of Kuromoji tokenizer.
    */
   public KuromojiContext(KuromojiConfig kuromojiConfig, SpecialtokensConfig specialtokensConfig) {
+    configure(kuromojiConfig, specialtokensConfig);
+    try {
+      setupUserDict(kuromojiConfig.user_dict());
+    } catch (IOException e) {
+      logger.log(Level.SEVERE, "failed to load user dictionary", e);
+      try {
+        setupUserDict("");
+      } catch (IOException never) {
+        // never happens, nothing is read without user dict
+        throw new UncheckedIOException(never);
+      }
+    }
+  }
+
+  /**
+   * Settings reloaded from the user dictionary and given special tokens, sharing system dictionary with base.
+   */
+  private KuromojiContext(KuromojiConfig kuromojiConfig, SpecialtokensConfig specialtokensConfig,
+                          KuromojiContext base) throws IOException {
+    configure(kuromojiConfig, specialtokensConfig);
+    try {
+      setupUserDict(kuromojiConfig.user_dict());
+      // acquired while base holds the system dictionary, so it is never loaded again, and left to the first use if
+      // base has not loaded it, as in lazy load mode
+      synchronized (base) {
+        if (base.systemDictionaryLease != null) {
+          systemDictionaryLease = systemDictionaries.acquire(getSystemDictKey(), this::loadSystemDict);
+        }
+      }
+      if (systemDictionaryLease != null) {
+        getDictionaries();
+      }
+    } catch (IOException | RuntimeException e) {
+      deconstruct();
+      throw e;
+    }
+  }
+
+  private void configure(KuromojiConfig kuromojiConfig, SpecialtokensConfig specialtokensConfig) {
+    this.kuromojiConfig = kuromojiConfig;
+    this.specialtokensConfig = specialtokensConfig;
+
+    this.compound = "compound".equalsIgnoreCase(kuromojiConfig.mode());
     try {
-      this.mode = com.atilika.kuromoji.TokenizerBase.Mode.valueOf(kuromojiConfig.mode().toUpperCase(Locale.US));
+      this.mode = compound
+                  ? com.atilika.kuromoji.TokenizerBase.Mode.NORMAL
+                  : com.atilika.kuromoji.TokenizerBase.Mode.valueOf(kuromojiConfig.mode().toUpperCase(Locale.US));
     } catch (IllegalArgumentException | NullPointerException e) {
       logger.log(Level.WARNING, "unknown kuromoji mode, use default:", e);
       this.mode = com.atilika.kuromoji.TokenizerBase.Mode.SEARCH;
@@ -73,13 +181,58 @@ public class KuromojiContext {
 
     this.allLanguage = kuromojiConfig.all_language();
     this.ignoreCase = kuromojiConfig.ignore_case();
+    // extended mode splits unknown words into characters, which the fast path does not
+    this.asciiFastPath = kuromojiConfig.ascii_fast_path()
+                         && mode != com.atilika.kuromoji.TokenizerBase.Mode.EXTENDED;
+    this.scriptSplit = kuromojiConfig.script_split() && mode != com.atilika.kuromoji.TokenizerBase.Mode.EXTENDED;
+
+    this.streaming = kuromojiConfig.streaming();
+    this.chunkMaxLength = kuromojiConfig.chunk().max_length();
+
+    this.cacheEnabled = kuromojiConfig.cache().enabled() && kuromojiConfig.cache().size() > 0;
+    this.cacheSize = kuromojiConfig.cache().size();
+    this.cacheMaxInputLength = kuromojiConfig.cache().max_input_length();
+
+    this.internEnabled = kuromojiConfig.intern().enabled() && kuromojiConfig.intern().size() > 0;
+    this.internSize = kuromojiConfig.intern().size();
+
+    this.loadMode = kuromojiConfig.load().mode().toLowerCase(Locale.US);
+    this.instanceMode = kuromojiConfig.instance().mode().toLowerCase(Locale.US);
+    this.engine = kuromojiConfig.engine().toLowerCase(Locale.US);
+    if (!"kuromoji".equals(engine) && !"array".equals(engine)) {
+      logger.log(Level.WARNING, "unknown engine, use kuromoji: " + engine);
+      this.engine = "kuromoji";
+    } else if ("array".equals(engine) && mode == com.atilika.kuromoji.TokenizerBase.Mode.EXTENDED) {
+      logger.log(Level.WARNING, "array engine does not support extended mode, use kuromoji");
+      this.engine = "kuromoji";
+    }
+    this.instancePoolSize = kuromojiConfig.instance().pool_size() > 0
+                            ? kuromojiConfig.instance().pool_size()
+                            : Runtime.getRuntime().availableProcessors();
+
+    this.batchParallelism = kuromojiConfig.batch().parallelism() > 0
+                            ? kuromojiConfig.batch().parallelism()
+                            : Runtime.getRuntime().availableProcessors();
+
+    this.reloadInterval = kuromojiConfig.reload().interval();
+
+    this.warmupEnabled = kuromojiConfig.warmup().enabled();
+    this.warmupCorpus = kuromojiConfig.warmup().corpus();
+    this.warmupTimeout = kuromojiConfig.warmup().timeout();
+
+    this.systemDictMmap = kuromojiConfig.system_dict().mmap();
+    this.systemDictDir = kuromojiConfig.system_dict().dir().isEmpty()
+                         ? Paths.get(System.getProperty("java.io.tmpdir"),
+                                     "vespa-kuromoji-ipadic-" + System.getProperty("user.name") + "-"
+                                     + getKuromojiVersion().toFullString())
+                         : Paths.get(kuromojiConfig.system_dict().dir());
+    this.featureColumns = kuromojiConfig.feature_columns();
 
     setupSpecialTokens(kuromojiConfig.tokenlist_name(), specialtokensConfig);
-    setupUserDict(kuromojiConfig.user_dict());
   }
 
   private void setupSpecialTokens(String tokenListName, SpecialtokensConfig config) {
-    specialTokens.clear();
+    Map<String, String> tokenMap = new LinkedHashMap<>();
 
     for (SpecialtokensConfig.Tokenlist tokenList : config.tokenlist()) {
       if (!tokenList.name().equals(tokenListName)) {
@@ -87,36 +240,60 @@ public class KuromojiContext {
       }
 
       for (SpecialtokensConfig.Tokenlist.Tokens tokens : tokenList.tokens()) {
-        specialTokens.put(tokens.token(), tokens.replace());
+        // matched against normalized input, which is lower cased if ignore case
+        if (isIgnoreCase()) {
+          tokenMap.put(LinguisticsCase.toLowerCase(tokens.token()), LinguisticsCase.toLowerCase(tokens.replace()));
+        } else {
+          tokenMap.put(tokens.token(), tokens.replace());
+        }
       }
     }
+    specialTokens = SpecialTokenMatcher.of(tokenMap);
   }
 
-  private void setupUserDict(String userDict) {
-    StringBuilder builder = new StringBuilder();
+  private void setupUserDict(String userDict) throws IOException {
+    userDictionary = null;
 
     // load user dict if specified
     if (userDict.length() > 0) {
-      try (Stream<String> stream = Files.lines(getResource(userDict), StandardCharsets.UTF_8)) {
-        stream.forEach(line -> {
-          builder.append(line);
-          builder.append("\n");
-        });
-      } catch (IOException e) {
-        logger.log(Level.SEVERE, "failed to load user dictionary", e);
-      }
+      Path path = getResource(userDict);
+      // record before reading, so that a change while reading is detected next time
+      userDictModified = Files.getLastModifiedTime(path);
+      userDictPath = path;
+      // keyed by content, so the same dictionary is shared whichever path it is read from
+      userDictionaryLease = userDictionaries.acquire(digest(path), () -> loadUserDict(path));
+      userDictionary = userDictionaryLease.get();
     }
+  }
 
-    // load special tokens as user dict
-    for (String token : specialTokens.keySet()) {
-      token = isIgnoreCase() ? LinguisticsCase.toLowerCase(token) : token;
-
-      // XXX: do we need to provide correct reading?
-      builder.append(String.join(",", token, token, token, "SpecialToken"));
-      builder.append("\n");
+  private static UserDictionary loadUserDict(Path path) throws IOException {
+    ByteBuffer buffer;
+    if (CompiledUserDictionary.isCompiled(path)) {
+      // compiled by UserDictionaryCompiler, map it instead of parsing
+      buffer = CompiledUserDictionary.map(path);
+    } else {
+      try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        buffer = new UserDictionaryCompiler().read(reader).compile();
+      }
     }
+    return CompiledUserDictionary.of(Collections.singletonList(buffer));
+  }
 
-    userDictContent = builder.toString();
+  private static String digest(Path path) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every Java platform supports SHA-256
+      throw new IllegalStateException(e);
+    }
+    try (InputStream input = Files.newInputStream(path)) {
+      byte[] buffer = new byte[8192];
+      for (int n; (n = input.read(buffer)) >= 0; ) {
+        digest.update(buffer, 0, n);
+      }
+    }
+    return new BigInteger(1, digest.digest()).toString(16);
   }
 
   private Path getResource(String name) throws IOException {
@@ -134,21 +311,278 @@ public class KuromojiContext {
   /**
    * Create new Kuromoji tokenizer instance with given context.
    *
+   * <p>Dictionaries are loaded on the first call and shared by all tokenizers created by this context.
+   *
    * @return new Kuromoji tokenizer
    * @throws IOException failed to load user dictionary
    */
-  public com.atilika.kuromoji.ipadic.Tokenizer createTokenizer() throws IOException {
-    try (InputStream userDictStream = new ByteArrayInputStream(userDictContent.getBytes(StandardCharsets.UTF_8))) {
-      // @formatter:off
-      return new com.atilika.kuromoji.ipadic.Tokenizer.Builder()
-                    .mode(mode)
-                    .kanjiPenalty(kanjiLengthThreshold, kanjiPenalty)
-                    .otherPenalty(otherLengthThreshold, otherPenalry)
-                    .isSplitOnNakaguro(nakaguroSplit)
-                    .userDictionary(userDictStream)
-                    .build();
-      // @formatter:on
+  public KuromojiDictionaries.SharedTokenizer createTokenizer() throws IOException {
+    return createTokenizer(mode);
+  }
+
+  private KuromojiDictionaries.SharedTokenizer createTokenizer(com.atilika.kuromoji.TokenizerBase.Mode mode)
+      throws IOException {
+    return getDictionaries().newTokenizer(mode, new int[]{kanjiLengthThreshold, kanjiPenalty, otherLengthThreshold,
+                                                          otherPenalry});
+  }
+
+  /**
+   * Create new analyzer of the configured engine, which is Kuromoji's tokenizer or {@link ArrayViterbiAnalyzer}.
+   */
+  SentenceAnalyzer createAnalyzer() throws IOException {
+    if (isSinglePassCompound()) {
+      return new ArrayViterbiAnalyzer(getDictionaries(), new int[]{kanjiLengthThreshold, kanjiPenalty,
+                                                                   otherLengthThreshold, otherPenalry});
+    }
+    return createAnalyzer(mode);
+  }
+
+  /**
+   * Whether the analyzer gives tokens with their decomposition in one analysis in compound mode, which the array
+   * engine does. Otherwise sentences with tokens to decompose are analyzed again by the compound analyzer.
+   *
+   * @return true if compound mode of the array engine
+   */
+  boolean isSinglePassCompound() {
+    return compound && "array".equals(engine);
+  }
+
+  /**
+   * Create new analyzer in search mode, which decomposes tokens in compound mode unless
+   * {@link #isSinglePassCompound()}.
+   */
+  SentenceAnalyzer createCompoundAnalyzer() throws IOException {
+    return createAnalyzer(com.atilika.kuromoji.TokenizerBase.Mode.SEARCH);
+  }
+
+  private SentenceAnalyzer createAnalyzer(com.atilika.kuromoji.TokenizerBase.Mode mode) throws IOException {
+    if ("array".equals(engine)) {
+      return new ArrayViterbiAnalyzer(getDictionaries(), mode,
+                                      new int[]{kanjiLengthThreshold, kanjiPenalty, otherLengthThreshold,
+                                                otherPenalry});
+    }
+    return createTokenizer(mode)::tokenize;
+  }
+
+  /**
+   * Return dictionaries of Kuromoji tokenizer, loading them on the first call.
+   *
+   * <p>The system dictionary is shared with all contexts in the JVM which have the same nakaguro_split and
+   * system_dict settings, until they are deconstructed.
+   *
+   * @return dictionaries
+   * @throws IOException failed to load user dictionary
+   */
+  public synchronized KuromojiDictionaries getDictionaries() throws IOException {
+    if (dictionaries == null) {
+      if (systemDictionaryLease == null) {
+        systemDictionaryLease = systemDictionaries.acquire(getSystemDictKey(), this::loadSystemDict);
+      }
+      dictionaries = systemDictionaryLease.get().withUserDictionary(userDictionary);
+    }
+    return dictionaries;
+  }
+
+  /**
+   * Whether the system dictionary is loaded, which is false until the first call of getDictionaries in lazy load
+   * mode unless reloaded from a context which has loaded it.
+   *
+   * @return true if loaded
+   */
+  synchronized boolean isSystemDictLoaded() {
+    return systemDictionaryLease != null;
+  }
+
+  private String getSystemDictKey() {
+    return "nakaguro_split=" + nakaguroSplit + (systemDictMmap ? ", mmap=" + systemDictDir : "")
+           + (featureColumns ? ", feature_columns" : "");
+  }
+
+  private KuromojiDictionaries loadSystemDict() throws IOException {
+    MappedSystemDictionary systemDictionary = null;
+    if (systemDictMmap) {
+      try {
+        systemDictionary = MappedSystemDictionary.open(systemDictDir);
+      } catch (IOException e) {
+        logger.log(Level.WARNING, "failed to map system dictionary, load it on the heap:", e);
+      }
+    }
+    return KuromojiDictionaries.load(nakaguroSplit, null, systemDictionary, featureColumns);
+  }
+
+  /**
+   * Release dictionaries shared in the JVM, which are freed when no other context uses them.
+   *
+   * <p>Tokenizers already created by this context keep working.
+   */
+  public synchronized void deconstruct() {
+    if (systemDictionaryLease != null) {
+      systemDictionaryLease.close();
+    }
+    if (userDictionaryLease != null) {
+      userDictionaryLease.close();
+    }
+  }
+
+  /**
+   * Return the number of system and user dictionaries shared in the JVM.
+   *
+   * @return number of dictionaries in use
+   */
+  static int getSharedDictionaryCount() {
+    return systemDictionaries.size() + userDictionaries.size();
+  }
+
+  /**
+   * Create new context which reloads the user dictionary, sharing the system dictionary with this context.
+   *
+   * @return reloaded context
+   * @throws IOException failed to load user dictionary
+   */
+  public KuromojiContext reload() throws IOException {
+    return reload(specialtokensConfig);
+  }
+
+  /**
+   * Create new context which reloads the user dictionary and uses given special tokens, sharing the system
+   * dictionary with this context.
+   *
+   * @param specialtokensConfig new special tokens
+   * @return reloaded context
+   * @throws IOException failed to load user dictionary
+   */
+  public KuromojiContext reload(SpecialtokensConfig specialtokensConfig) throws IOException {
+    return new KuromojiContext(kuromojiConfig, specialtokensConfig, this);
+  }
+
+  /**
+   * Whether the user dictionary file was modified after it was loaded.
+   *
+   * @return true if modified
+   */
+  public boolean isUserDictModified() {
+    if (userDictPath == null) {
+      return false;
+    }
+    try {
+      return !Files.getLastModifiedTime(userDictPath).equals(userDictModified);
+    } catch (IOException e) {
+      // e.g. being replaced, check again later
+      return false;
+    }
+  }
+
+  /**
+   * Return the interval to check if the user dictionary was modified.
+   *
+   * @return interval in seconds, or 0 if not checked
+   */
+  public int getReloadInterval() {
+    return reloadInterval;
+  }
+
+  /**
+   * Whether a sample corpus is tokenized on construction.
+   *
+   * @return true if warm up is enabled
+   */
+  public boolean isWarmupEnabled() {
+    return warmupEnabled;
+  }
+
+  /**
+   * Return the max time of warm up.
+   *
+   * @return timeout in seconds
+   */
+  public int getWarmupTimeout() {
+    return warmupTimeout;
+  }
+
+  /**
+   * Load the sample corpus of warm up, one input per line.
+   *
+   * @return non-empty lines of the corpus
+   * @throws IOException failed to read the corpus
+   */
+  public List<String> loadWarmupCorpus() throws IOException {
+    List<String> lines;
+    if (warmupCorpus.isEmpty()) {
+      InputStream input = getClass().getClassLoader().getResourceAsStream(DEFAULT_WARMUP_CORPUS);
+      if (input == null) {
+        throw new IOException("unexisted resource: " + DEFAULT_WARMUP_CORPUS);
+      }
+      try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
+        lines = reader.lines().collect(Collectors.toList());
+      }
+    } else {
+      lines = Files.readAllLines(getResource(warmupCorpus), StandardCharsets.UTF_8);
     }
+    lines.removeIf(String::isEmpty);
+    return lines;
+  }
+
+  /**
+   * Whether the system dictionary is memory mapped instead of being loaded on the heap.
+   *
+   * @return true if memory mapped
+   */
+  public boolean isSystemDictMmap() {
+    return systemDictMmap;
+  }
+
+  /**
+   * Whether base forms and parts of speech of all words are precomputed into columns.
+   *
+   * @return true if feature columns are enabled
+   */
+  public boolean isFeatureColumns() {
+    return featureColumns;
+  }
+
+  /**
+   * Return the directory where the system dictionary is extracted to be memory mapped.
+   *
+   * @return directory of system dictionary
+   */
+  public Path getSystemDictDir() {
+    return systemDictDir;
+  }
+
+  /**
+   * Return when dictionaries are loaded (eager|background|lazy).
+   *
+   * @return load mode
+   */
+  public String getLoadMode() {
+    return loadMode;
+  }
+
+  /**
+   * Return how tokenizer instances are shared between threads (shared|thread|pool).
+   *
+   * @return instance mode
+   */
+  public String getInstanceMode() {
+    return instanceMode;
+  }
+
+  /**
+   * Return the engine of morphological analysis.
+   *
+   * @return engine
+   */
+  public String getEngine() {
+    return engine;
+  }
+
+  /**
+   * Return the number of pooled tokenizer instances.
+   *
+   * @return pool size
+   */
+  public int getInstancePoolSize() {
+    return instancePoolSize;
   }
 
   /**
@@ -169,6 +603,136 @@ public class KuromojiContext {
     return ignoreCase;
   }
 
+  /**
+   * Return the number of threads used by batch tokenization.
+   *
+   * @return parallelism of batch pool
+   */
+  public int getBatchParallelism() {
+    return batchParallelism;
+  }
+
+  /**
+   * Whether tokens are produced lazily while iterating.
+   *
+   * @return true if streaming
+   */
+  public boolean isStreaming() {
+    return streaming;
+  }
+
+  /**
+   * Return the max length of chunks which are tokenized in parallel.
+   *
+   * @return max length of chunks, or 0 if inputs are not chunked
+   */
+  public int getChunkMaxLength() {
+    return chunkMaxLength;
+  }
+
+  /**
+   * Whether tokenized results should be cached.
+   *
+   * @return true if cache is enabled
+   */
+  public boolean isCacheEnabled() {
+    return cacheEnabled;
+  }
+
+  /**
+   * Return the max number of cached results.
+   *
+   * @return max number of cached results
+   */
+  public int getCacheSize() {
+    return cacheSize;
+  }
+
+  /**
+   * Return the max length of inputs whose results are cached.
+   *
+   * @return max length of cached inputs
+   */
+  public int getCacheMaxInputLength() {
+    return cacheMaxInputLength;
+  }
+
+  /**
+   * Whether frequent token strings should be shared.
+   *
+   * @return true if intern pool is enabled
+   */
+  public boolean isInternEnabled() {
+    return internEnabled;
+  }
+
+  /**
+   * Return the max number of shared token strings.
+   *
+   * @return max number of shared strings
+   */
+  public int getInternSize() {
+    return internSize;
+  }
+
+  /**
+   * Whether pure ASCII inputs are tokenized without normalization and Kuromoji.
+   *
+   * @return true if the ASCII fast path is enabled
+   */
+  public boolean isAsciiFastPath() {
+    return asciiFastPath;
+  }
+
+  /**
+   * Whether ASCII runs between Japanese letters are split off from the text analyzed by Kuromoji.
+   *
+   * @return true if script split is enabled
+   */
+  public boolean isScriptSplit() {
+    return scriptSplit;
+  }
+
+  /**
+   * Whether tokens of normal mode are followed by their decompositions of search mode at the same offsets.
+   *
+   * @return true if compound mode
+   */
+  public boolean isCompound() {
+    return compound;
+  }
+
+  /**
+   * Whether given surface is penalized by search mode, so that it may be decomposed.
+   *
+   * <p>Same as the penalty of com.atilika.kuromoji.viterbi.ViterbiSearcher.
+   *
+   * @param surface surface of token
+   * @return true if penalized
+   */
+  public boolean isDecomposable(String surface) {
+    int length = surface.length();
+    if (length <= kanjiLengthThreshold) {
+      return false;
+    }
+    for (int i = 0; i < length; ++i) {
+      if (Character.UnicodeBlock.of(surface.charAt(i)) != Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS) {
+        return length > otherLengthThreshold;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether any word of the user dictionary appears in given text.
+   *
+   * @param text normalized text
+   * @return true if the user dictionary matches given text
+   */
+  public boolean hasUserDictionaryMatch(String text) {
+    return userDictionary != null && !userDictionary.findUserDictionaryMatches(text).isEmpty();
+  }
+
   /**
    * Whether given token is special token.
    *
@@ -176,7 +740,16 @@ public class KuromojiContext {
    * @return true if given token is special token
    */
   public boolean isSpecialToken(String token) {
-    return specialTokens.containsKey(token);
+    return specialTokens.getReplacement(token) != null;
+  }
+
+  /**
+   * Return the matcher of special tokens, which are lower cased if ignore case.
+   *
+   * @return matcher of special tokens
+   */
+  public SpecialTokenMatcher getSpecialTokens() {
+    return specialTokens;
   }
 
   /**
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.atilika.kuromoji.dict.CharacterDefinitions;
+import com.atilika.kuromoji.dict.ConnectionCosts;
+import com.atilika.kuromoji.dict.Dictionary;
+import com.atilika.kuromoji.dict.InsertedDictionary;
+import com.atilika.kuromoji.dict.TokenInfoDictionary;
+import com.atilika.kuromoji.dict.UnknownDictionary;
+import com.atilika.kuromoji.dict.UserDictionary;
+import com.atilika.kuromoji.trie.DoubleArrayTrie;
+import com.atilika.kuromoji.util.ResourceResolver;
+import com.atilika.kuromoji.util.SimpleResourceResolver;
+import com.atilika.kuromoji.viterbi.ViterbiNode;
+
+import jp.co.yahoo.vespa.language.lib.dict.CompiledUserDictionary;
+import jp.co.yahoo.vespa.language.lib.dict.MappedSystemDictionary;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dictionaries of Kuromoji tokenizer loaded once and shared by tokenizer instances.
+ *
+ * <p>All dictionaries are read only after loading, so any number of tokenizers created by {@link #newTokenizer}
+ * can use them concurrently.
+ *
+ * <p>If feature columns are enabled, tokens of these tokenizers read their base forms and parts of speech from
+ * {@link FeatureColumns} of the system, unknown and user dictionaries.
+ *
+ * @see com.atilika.kuromoji.ipadic.Tokenizer
+ */
+public final class KuromojiDictionaries {
+
+  // same as com.atilika.kuromoji.ipadic.Tokenizer.Builder
+  private static final int TOTAL_FEATURES = 9;
+  private static final int[] DEFAULT_PENALTIES = {2, 3000, 7, 1700};
+  // same as com.atilika.kuromoji.buffer.TokenInfoBuffer
+  private static final int TOKEN_INFO_HEADER = 20;
+
+  private final DoubleArrayTrie doubleArrayTrie;
+  private final boolean doubleArrayTrieCompact;
+  private final ConnectionCosts connectionCosts;
+  private final int connectionCostSize;
+  private final ShortBuffer connectionCostMatrix;
+  private final TokenInfoDictionary tokenInfoDictionary;
+  private final CharacterDefinitions characterDefinitions;
+  private final UnknownDictionary unknownDictionary;
+  private final InsertedDictionary insertedDictionary;
+  private final UserDictionary userDictionary;
+
+  // null if disabled
+  private final FeatureColumns systemFeatures;
+  private final FeatureColumns unknownFeatures;
+  private final FeatureColumns userFeatures;
+
+  private KuromojiDictionaries(boolean nakaguroSplit, UserDictionary userDictionary,
+                               MappedSystemDictionary systemDictionary, boolean featureColumns) throws IOException {
+    ResourceResolver resolver = new SimpleResourceResolver(com.atilika.kuromoji.ipadic.Tokenizer.class);
+    if (systemDictionary != null) {
+      doubleArrayTrie = systemDictionary.getDoubleArrayTrie();
+      connectionCostSize = systemDictionary.getConnectionCostSize();
+      connectionCostMatrix = systemDictionary.getConnectionCostMatrix();
+      tokenInfoDictionary = systemDictionary.getTokenInfoDictionary();
+    } else {
+      doubleArrayTrie = DoubleArrayTrie.newInstance(resolver);
+      // read into a flat array instead of ConnectionCosts#newInstance, which is shared with ArrayViterbiAnalyzer
+      try (DataInputStream input = new DataInputStream(resolver.resolve(ConnectionCosts.CONNECTION_COSTS_FILENAME))) {
+        connectionCostSize = input.readInt();
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        short[] matrix = new short[bytes.length / 2];
+        ByteBuffer.wrap(bytes).asShortBuffer().get(matrix);
+        connectionCostMatrix = ShortBuffer.wrap(matrix);
+      }
+      tokenInfoDictionary = TokenInfoDictionary.newInstance(resolver);
+    }
+    connectionCosts = new ConnectionCosts(connectionCostSize, connectionCostMatrix);
+    // same as the extracted file of the mapped system dictionary
+    try (InputStream input = resolver.resolve(DoubleArrayTrie.DOUBLE_ARRAY_TRIE_FILENAME)) {
+      doubleArrayTrieCompact = input.read() > 0;
+    }
+    characterDefinitions = CharacterDefinitions.newInstance(resolver);
+    if (nakaguroSplit) {
+      characterDefinitions.setCategories('\u30fb', new String[]{"SYMBOL"});
+    }
+    unknownDictionary = UnknownDictionary.newInstance(resolver, characterDefinitions, TOTAL_FEATURES);
+    insertedDictionary = new InsertedDictionary(TOTAL_FEATURES);
+    this.userDictionary = userDictionary;
+
+    if (featureColumns) {
+      systemFeatures = FeatureColumns.build(tokenInfoDictionary, 0, countTokenInfos(resolver));
+      unknownFeatures = FeatureColumns.build(unknownDictionary, 0, countUnknownWords());
+      userFeatures = buildUserFeatures(userDictionary);
+    } else {
+      systemFeatures = null;
+      unknownFeatures = null;
+      userFeatures = null;
+    }
+  }
+
+  private KuromojiDictionaries(KuromojiDictionaries base, UserDictionary userDictionary) {
+    doubleArrayTrie = base.doubleArrayTrie;
+    doubleArrayTrieCompact = base.doubleArrayTrieCompact;
+    connectionCosts = base.connectionCosts;
+    connectionCostSize = base.connectionCostSize;
+    connectionCostMatrix = base.connectionCostMatrix;
+    tokenInfoDictionary = base.tokenInfoDictionary;
+    characterDefinitions = base.characterDefinitions;
+    unknownDictionary = base.unknownDictionary;
+    insertedDictionary = base.insertedDictionary;
+    this.userDictionary = userDictionary;
+    systemFeatures = base.systemFeatures;
+    unknownFeatures = base.unknownFeatures;
+    userFeatures = systemFeatures != null ? buildUserFeatures(userDictionary) : null;
+  }
+
+  // same as the extracted file of the mapped system dictionary
+  private static int countTokenInfos(ResourceResolver resolver) throws IOException {
+    try (DataInputStream input = new DataInputStream(
+        resolver.resolve(TokenInfoDictionary.TOKEN_INFO_DICTIONARY_FILENAME))) {
+      // size of buffer, then the header of com.atilika.kuromoji.buffer.TokenInfoBuffer
+      int size = input.readInt();
+      input.readInt();
+      input.readInt();
+      int tokenInfoCount = input.readInt();
+      int posInfoCount = input.readInt();
+      int featureCount = input.readInt();
+      return (size - TOKEN_INFO_HEADER) / (tokenInfoCount * 2 + posInfoCount + featureCount * 4);
+    }
+  }
+
+  // unknown words of all categories which any character belongs to
+  private int countUnknownWords() {
+    int count = 0;
+    for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; ++c) {
+      for (int category : characterDefinitions.lookupCategories((char) c)) {
+        for (int wordId : unknownDictionary.lookupWordIds(category)) {
+          count = Math.max(count, wordId + 1);
+        }
+      }
+    }
+    return count;
+  }
+
+  private static FeatureColumns buildUserFeatures(UserDictionary userDictionary) {
+    if (!(userDictionary instanceof CompiledUserDictionary)) {
+      return null;
+    }
+    CompiledUserDictionary compiled = (CompiledUserDictionary) userDictionary;
+    return FeatureColumns.build(compiled, compiled.getFirstWordId(), compiled.getWordCount());
+  }
+
+  /**
+   * Load system dictionaries of IPADIC and given user dictionary.
+   *
+   * @param nakaguroSplit  whether splits unknown words on the middle dot character
+   * @param userDictionary user dictionary, or null
+   * @return loaded dictionaries
+   * @throws IOException failed to load dictionaries
+   */
+  public static KuromojiDictionaries load(boolean nakaguroSplit, UserDictionary userDictionary) throws IOException {
+    return new KuromojiDictionaries(nakaguroSplit, userDictionary, null, false);
+  }
+
+  /**
+   * Load dictionaries of IPADIC and given user dictionary, using memory mapped system dictionary.
+   *
+   * @param nakaguroSplit    whether splits unknown words on the middle dot character
+   * @param userDictionary   user dictionary, or null
+   * @param systemDictionary mapped system dictionary, or null to load it on the heap
+   * @return loaded dictionaries
+   * @throws IOException failed to load dictionaries
+   */
+  public static KuromojiDictionaries load(boolean nakaguroSplit, UserDictionary userDictionary,
+                                          MappedSystemDictionary systemDictionary) throws IOException {
+    return new KuromojiDictionaries(nakaguroSplit, userDictionary, systemDictionary, false);
+  }
+
+  /**
+   * Load dictionaries of IPADIC and given user dictionary, optionally with feature columns.
+   *
+   * @param nakaguroSplit    whether splits unknown words on the middle dot character
+   * @param userDictionary   user dictionary, or null
+   * @param systemDictionary mapped system dictionary, or null to load it on the heap
+   * @param featureColumns   whether precomputes base forms and parts of speech of all words
+   * @return loaded dictionaries
+   * @throws IOException failed to load dictionaries
+   */
+  public static KuromojiDictionaries load(boolean nakaguroSplit, UserDictionary userDictionary,
+                                          MappedSystemDictionary systemDictionary, boolean featureColumns)
+      throws IOException {
+    return new KuromojiDictionaries(nakaguroSplit, userDictionary, systemDictionary, featureColumns);
+  }
+
+  /**
+   * Return dictionaries which share system dictionaries with these but use given user dictionary.
+   *
+   * @param userDictionary user dictionary, or null
+   * @return dictionaries with given user dictionary
+   */
+  public KuromojiDictionaries withUserDictionary(UserDictionary userDictionary) {
+    return new KuromojiDictionaries(this, userDictionary);
+  }
+
+  /**
+   * Create a Kuromoji tokenizer which uses these dictionaries instead of loading its own, with the default penalties
+   * of search mode.
+   *
+   * @param mode mode of Kuromoji
+   * @return new tokenizer
+   */
+  public SharedTokenizer newTokenizer(com.atilika.kuromoji.TokenizerBase.Mode mode) {
+    return newTokenizer(mode, DEFAULT_PENALTIES);
+  }
+
+  /**
+   * Create a Kuromoji tokenizer which uses these dictionaries instead of loading its own.
+   *
+   * @param mode      mode of Kuromoji
+   * @param penalties kanji length threshold, kanji penalty, other length threshold and other penalty of search mode
+   * @return new tokenizer
+   */
+  public SharedTokenizer newTokenizer(com.atilika.kuromoji.TokenizerBase.Mode mode, int[] penalties) {
+    return new SharedTokenizer(new Builder(mode, penalties));
+  }
+
+  /**
+   * Create a token of Kuromoji, which reads its features from feature columns if they have the word.
+   *
+   * @see com.atilika.kuromoji.viterbi.TokenFactory#createToken
+   */
+  com.atilika.kuromoji.ipadic.Token createToken(int wordId, String surface, ViterbiNode.Type type, int position,
+                                                Dictionary dictionary) {
+    FeatureColumns columns = null;
+    if (dictionary == tokenInfoDictionary) {
+      columns = systemFeatures;
+    } else if (dictionary == unknownDictionary) {
+      columns = unknownFeatures;
+    } else if (dictionary == userDictionary) {
+      columns = userFeatures;
+    }
+    if (columns == null) {
+      return new com.atilika.kuromoji.ipadic.Token(wordId, surface, type, position, dictionary);
+    }
+    return columns.createToken(wordId, surface, type, position, dictionary);
+  }
+
+  /**
+   * Return whether tokens read their features from feature columns.
+   */
+  boolean hasFeatureColumns() {
+    return systemFeatures != null;
+  }
+
+  DoubleArrayTrie getDoubleArrayTrie() {
+    return doubleArrayTrie;
+  }
+
+  boolean isDoubleArrayTrieCompact() {
+    return doubleArrayTrieCompact;
+  }
+
+  int getConnectionCostSize() {
+    return connectionCostSize;
+  }
+
+  /**
+   * Return connection costs, whose cost from right id r to left id l is at l + r * size.
+   */
+  ShortBuffer getConnectionCostMatrix() {
+    return connectionCostMatrix;
+  }
+
+  TokenInfoDictionary getTokenInfoDictionary() {
+    return tokenInfoDictionary;
+  }
+
+  CharacterDefinitions getCharacterDefinitions() {
+    return characterDefinitions;
+  }
+
+  UnknownDictionary getUnknownDictionary() {
+    return unknownDictionary;
+  }
+
+  InsertedDictionary getInsertedDictionary() {
+    return insertedDictionary;
+  }
+
+  UserDictionary getUserDictionary() {
+    return userDictionary;
+  }
+
+  /**
+   * Kuromoji tokenizer on shared dictionaries, which gives the same tokens as
+   * {@link com.atilika.kuromoji.ipadic.Tokenizer} with the same settings.
+   */
+  public static final class SharedTokenizer extends com.atilika.kuromoji.TokenizerBase {
+
+    private SharedTokenizer(Builder builder) {
+      configure(builder);
+    }
+
+    /**
+     * Tokenize given text.
+     *
+     * @param text text
+     * @return tokens of IPADIC
+     */
+    @Override
+    public List<com.atilika.kuromoji.ipadic.Token> tokenize(String text) {
+      return createTokenList(text);
+    }
+  }
+
+  /**
+   * Settings of {@link SharedTokenizer}, which only hands the shared dictionaries over to it.
+   */
+  private final class Builder extends com.atilika.kuromoji.TokenizerBase.Builder {
+
+    Builder(com.atilika.kuromoji.TokenizerBase.Mode mode, int[] penalties) {
+      this.mode = mode;
+      this.penalties = new ArrayList<>();
+      for (int penalty : penalties) {
+        this.penalties.add(penalty);
+      }
+      this.totalFeatures = TOTAL_FEATURES;
+      this.tokenFactory = KuromojiDictionaries.this::createToken;
+    }
+
+    @Override
+    protected void loadDictionaries() {
+      this.doubleArrayTrie = KuromojiDictionaries.this.doubleArrayTrie;
+      this.connectionCosts = KuromojiDictionaries.this.connectionCosts;
+      this.tokenInfoDictionary = KuromojiDictionaries.this.tokenInfoDictionary;
+      this.characterDefinitions = KuromojiDictionaries.this.characterDefinitions;
+      this.unknownDictionary = KuromojiDictionaries.this.unknownDictionary;
+      this.insertedDictionary = KuromojiDictionaries.this.insertedDictionary;
+      this.userDictionary = KuromojiDictionaries.this.userDictionary;
+    }
+
+    // only SharedTokenizer is built, by its constructor
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends com.atilika.kuromoji.TokenizerBase> T build() {
+      return (T) new SharedTokenizer(this);
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Settings and Kuromoji tokenizers which are swapped together on reload.
+ */
+final class KuromojiGeneration {
+  private final KuromojiContext context;
+  private volatile KuromojiTokenizerPool tokenizers;
+  // search mode tokenizers in compound mode, set before tokenizers
+  private KuromojiTokenizerPool decompounders;
+
+  KuromojiGeneration(KuromojiContext context, boolean lazy) throws IOException {
+    this.context = context;
+    if (!lazy) {
+      load();
+    }
+  }
+
+  private KuromojiTokenizerPool load() throws IOException {
+    if (context.isCompound() && !context.isSinglePassCompound()) {
+      decompounders = KuromojiTokenizerPool.create(context, context::createCompoundAnalyzer);
+    }
+    tokenizers = KuromojiTokenizerPool.create(context);
+    return tokenizers;
+  }
+
+  KuromojiContext context() {
+    return context;
+  }
+
+  boolean isLoaded() {
+    return tokenizers != null;
+  }
+
+  /**
+   * Return Kuromoji tokenizers, loading dictionaries if not yet. Callers wait while loading.
+   */
+  KuromojiTokenizerPool tokenizers() {
+    KuromojiTokenizerPool pool = tokenizers;
+    if (pool == null) {
+      synchronized (this) {
+        pool = tokenizers;
+        if (pool == null) {
+          try {
+            pool = load();
+          } catch (IOException e) {
+            // tried again by the next call
+            throw new UncheckedIOException(e);
+          }
+        }
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Return search mode tokenizers, which are loaded with tokenizers in compound mode unless both modes are found in a
+   * single pass.
+   */
+  KuromojiTokenizerPool decompounders() {
+    tokenizers();
+    return decompounders;
+  }
+
+  /**
+   * Release the dictionaries of the context and the analyzers kept for threads, when this is replaced.
+   */
+  synchronized void close() {
+    if (tokenizers != null) {
+      tokenizers.close();
+    }
+    if (decompounders != null) {
+      decompounders.close();
+    }
+    context.deconstruct();
+  }
+}
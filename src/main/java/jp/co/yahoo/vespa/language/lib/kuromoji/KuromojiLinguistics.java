@@ -6,7 +6,9 @@
 package jp.co.yahoo.vespa.language.lib.kuromoji;
 
 import com.google.inject.Inject;
+import com.yahoo.component.AbstractComponent;
 import com.yahoo.component.Version;
+import com.yahoo.jdisc.Metric;
 import com.yahoo.language.Linguistics;
 import com.yahoo.language.detect.Detector;
 import com.yahoo.language.lib.kuromoji.KuromojiConfig;
@@ -14,16 +16,18 @@ import com.yahoo.language.process.CharacterClasses;
 import com.yahoo.language.process.GramSplitter;
 import com.yahoo.language.process.Normalizer;
 import com.yahoo.language.process.Segmenter;
-import com.yahoo.language.process.SegmenterImpl;
 import com.yahoo.language.process.Stemmer;
-import com.yahoo.language.process.StemmerImpl;
 import com.yahoo.language.process.Tokenizer;
 import com.yahoo.language.process.Transformer;
 import com.yahoo.language.simple.SimpleLinguistics;
 import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -35,7 +39,7 @@ import java.util.logging.Logger;
  * <p>Available configurations are as below.
  * <table>
  * <tr><th>parameter</th><th>default</th><th>description</th></tr>
- * <tr><td>mode</td><td>search</td><td>mode of Kuromoji (normal|search|extended)</td></tr>
+ * <tr><td>mode</td><td>search</td><td>mode of Kuromoji (normal|search|extended|compound)</td></tr>
  * <tr><td>kanji.length_threshold</td><td>2</td><td>threshold of the length of kanji tokens which is penalized while running the Viterbi search (expert feature).</td></tr>
  * <tr><td>kanji.penalty</td><td>3000</td><td>additional cost for kanji tokens which is longer than the pre-defined length threshold (expert feature).</td></tr>
  * <tr><td>other.length_threshold</td><td>7</td><td>threshold of the length of non-kanji tokens which is penalized while running the Viterbi search (expert feature).</td></tr>
@@ -43,11 +47,33 @@ import java.util.logging.Logger;
  * <tr><td>nakaguro_split</td><td>false</td><td>whether splits unknown words on the middle dot character (U+30FB KATAKANA MIDDLE DOT)</td></tr>
  * <tr><td>user_dict</td><td>-</td><td>path of user dictionary</td></tr>
  * <tr><td>tokenlist_name</td><td>default</td><td>target specialtokens name</td></tr>
+ * <tr><td>warmup.enabled</td><td>false</td><td>tokenize a sample corpus on construction</td></tr>
+ * <tr><td>warmup.corpus</td><td>-</td><td>path of the sample corpus (default: bundled)</td></tr>
+ * <tr><td>warmup.timeout</td><td>30</td><td>max seconds of warm up</td></tr>
+ * <tr><td>metrics.interval</td><td>60</td><td>seconds between reports of metrics (0: never)</td></tr>
+ * <tr><td>reload.interval</td><td>0</td><td>seconds between checks if user dictionary is modified (0: never)</td></tr>
+ * <tr><td>system_dict.mmap</td><td>false</td><td>memory map system dictionary off-heap</td></tr>
+ * <tr><td>system_dict.dir</td><td>-</td><td>directory owned by the user where system dictionary is extracted to be mapped</td></tr>
+ * <tr><td>feature_columns</td><td>false</td><td>precompute base forms and parts of speech of all words</td></tr>
  * <tr><td>all_language</td><td>false</td><td>apply kuromoji tokenizer to all language</td></tr>
  * <tr><td>ignore_case</td><td>true</td><td>ignore upper/lower difference</td></tr>
+ * <tr><td>ascii_fast_path</td><td>true</td><td>split pure ASCII inputs without Kuromoji</td></tr>
+ * <tr><td>script_split</td><td>false</td><td>split ASCII runs between Japanese letters without Kuromoji</td></tr>
+ * <tr><td>streaming</td><td>false</td><td>produce tokens lazily sentence by sentence while iterating</td></tr>
+ * <tr><td>chunk.max_length</td><td>0</td><td>split long inputs into chunks tokenized in parallel (0 disables)</td></tr>
+ * <tr><td>cache.enabled</td><td>false</td><td>cache tokenized results of Japanese inputs</td></tr>
+ * <tr><td>cache.size</td><td>10000</td><td>max number of cached results</td></tr>
+ * <tr><td>cache.max_input_length</td><td>256</td><td>max length of inputs whose results are cached</td></tr>
+ * <tr><td>intern.enabled</td><td>false</td><td>share instances of frequent token strings</td></tr>
+ * <tr><td>intern.size</td><td>4096</td><td>max number of shared token strings</td></tr>
+ * <tr><td>load.mode</td><td>eager</td><td>when dictionaries are loaded (eager|background|lazy)</td></tr>
+ * <tr><td>instance.mode</td><td>shared</td><td>how Kuromoji instances are used by threads (shared|thread|pool)</td></tr>
+ * <tr><td>instance.pool_size</td><td>0</td><td>number of instances in pool mode (0 means the number of processors)</td></tr>
+ * <tr><td>batch.parallelism</td><td>0</td><td>number of threads of batch tokenization (0 means the number of processors)</td></tr>
+ * <tr><td>engine</td><td>kuromoji</td><td>engine of morphological analysis (kuromoji|array)</td></tr>
  * </table>
  */
-public class KuromojiLinguistics implements Linguistics {
+public class KuromojiLinguistics extends AbstractComponent implements Linguistics {
 
   private static final Logger logger = Logger.getLogger(KuromojiLinguistics.class.getName());
 
@@ -56,14 +82,57 @@ public class KuromojiLinguistics implements Linguistics {
   private final GramSplitter gramSplitter = new GramSplitter(characterClasses);
 
   private KuromojiContext context;
-  private Tokenizer tokenizer;
+  private KuromojiTokenizer tokenizer;
+
+  private ScheduledExecutorService metricsPublisher;
 
-  @Inject
   public KuromojiLinguistics(KuromojiConfig kuromojiConfig, SpecialtokensConfig specialtokensConfig)
       throws IOException {
+    this(kuromojiConfig, specialtokensConfig, null);
+  }
+
+  /**
+   * Create KuromojiLinguistics which reports metrics of tokenization to given metric every metrics.interval seconds.
+   */
+  @Inject
+  public KuromojiLinguistics(KuromojiConfig kuromojiConfig, SpecialtokensConfig specialtokensConfig, Metric metric)
+      throws IOException {
     this.context = new KuromojiContext(kuromojiConfig, specialtokensConfig);
     this.tokenizer = new KuromojiTokenizer(context, simpleLinguistics.getNormalizer(),
                                            simpleLinguistics.getTransformer(), simpleLinguistics.getTokenizer());
+    if (context.isWarmupEnabled()) {
+      // Vespa switches to this component after construction, so it serves only when warmed up
+      warmUp();
+    }
+
+    int interval = kuromojiConfig.metrics().interval();
+    if (metric != null && interval > 0) {
+      metricsPublisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kuromoji-metrics");
+        thread.setDaemon(true);
+        return thread;
+      });
+      metricsPublisher.scheduleAtFixedRate(() -> tokenizer.getMetrics().publish(metric), interval, interval,
+                                           TimeUnit.SECONDS);
+    }
+  }
+
+  private void warmUp() {
+    if (!tokenizer.isLoaded()) {
+      logger.log(Level.INFO, "skip warm up, dictionaries are not loaded yet in load mode " + context.getLoadMode());
+      return;
+    }
+    List<String> corpus;
+    try {
+      corpus = context.loadWarmupCorpus();
+    } catch (IOException e) {
+      logger.log(Level.WARNING, "failed to load warm up corpus, skip warm up:", e);
+      return;
+    }
+    long start = System.nanoTime();
+    int passes = tokenizer.warmUp(corpus, TimeUnit.SECONDS.toMillis(context.getWarmupTimeout()));
+    logger.log(Level.INFO, String.format("warmed up by %d passes of %d inputs in %d ms", passes, corpus.size(),
+                                         TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
   }
 
   /**
@@ -83,7 +152,7 @@ public class KuromojiLinguistics implements Linguistics {
    */
   @Override
   public Stemmer getStemmer() {
-    return new StemmerImpl(getTokenizer());
+    return new KuromojiStemmer(getTokenizer());
   }
 
   /**
@@ -94,6 +163,38 @@ public class KuromojiLinguistics implements Linguistics {
     return tokenizer;
   }
 
+  /**
+   * Tokenize given requests in parallel.
+   *
+   * @param requests inputs and arguments of {@link Tokenizer#tokenize}
+   * @return tokens of each request in the same order, and aggregate throughput
+   * @see KuromojiTokenizer#tokenize(List)
+   */
+  public TokenizeBatchResult tokenize(List<TokenizeRequest> requests) {
+    return tokenizer.tokenize(requests);
+  }
+
+  /**
+   * Reload the user dictionary without reconstructing this component.
+   *
+   * @throws IOException failed to load user dictionary, the previous one is kept
+   * @see KuromojiTokenizer#reload()
+   */
+  public void reload() throws IOException {
+    tokenizer.reload();
+  }
+
+  /**
+   * Reload the user dictionary with given special tokens without reconstructing this component.
+   *
+   * @param specialtokensConfig new special tokens
+   * @throws IOException failed to load user dictionary, the previous one is kept
+   * @see KuromojiTokenizer#reload(SpecialtokensConfig)
+   */
+  public void reload(SpecialtokensConfig specialtokensConfig) throws IOException {
+    tokenizer.reload(specialtokensConfig);
+  }
+
   /**
    * {@inheritDoc}
    */
@@ -115,7 +216,7 @@ public class KuromojiLinguistics implements Linguistics {
    */
   @Override
   public Segmenter getSegmenter() {
-    return new SegmenterImpl(getTokenizer());
+    return new KuromojiSegmenter(getTokenizer());
   }
 
   /**
@@ -149,4 +250,15 @@ public class KuromojiLinguistics implements Linguistics {
   public boolean equals(Linguistics other) {
     return (other instanceof KuromojiLinguistics);
   }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void deconstruct() {
+    if (metricsPublisher != null) {
+      metricsPublisher.shutdownNow();
+    }
+    tokenizer.deconstruct();
+  }
 }
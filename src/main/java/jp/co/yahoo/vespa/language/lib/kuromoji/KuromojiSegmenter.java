@@ -0,0 +1,75 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.process.Segmenter;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+import com.yahoo.language.process.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Segmenter of queries, which is the same as com.yahoo.language.process.SegmenterImpl except that a token with the
+ * offset and orig of the previous token is skipped.
+ *
+ * <p>Parts of a compound in compound mode have its offset and orig, and are indexed at its position as its
+ * alternatives. The compound is a single segment, so that phrases have the positions of the index.
+ */
+public class KuromojiSegmenter implements Segmenter {
+
+  private final Tokenizer tokenizer;
+
+  public KuromojiSegmenter(Tokenizer tokenizer) {
+    this.tokenizer = tokenizer;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<String> segment(String input, Language language) {
+    List<String> segments = new ArrayList<>();
+    Token previous = null;
+    for (Token token : tokenizer.tokenize(input, language, StemMode.NONE, false)) {
+      if (!isAlternative(token, previous)) {
+        findSegments(token, segments);
+      }
+      previous = token;
+    }
+    if (segments.isEmpty()) {
+      segments.add(input);
+    }
+    return segments;
+  }
+
+  private static void findSegments(Token token, List<String> segments) {
+    int len;
+    if (token.isSpecialToken() || (len = token.getNumComponents()) == 0) {
+      if (token.isIndexable()) {
+        String orig = token.getOrig();
+        if (!orig.isEmpty()) {
+          segments.add(orig);
+        }
+      }
+    } else {
+      for (int i = 0; i < len; ++i) {
+        findSegments(token.getComponent(i), segments);
+      }
+    }
+  }
+
+  /**
+   * Whether given token is an alternative of the previous token, which has the same offset and orig.
+   */
+  static boolean isAlternative(Token token, Token previous) {
+    return previous != null && token.getOffset() == previous.getOffset() && token.getNumComponents() == 0
+           && previous.getNumComponents() == 0 && token.getOrig().equals(previous.getOrig());
+  }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.process.StemList;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Stemmer;
+import com.yahoo.language.process.Token;
+import com.yahoo.language.process.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stemmer of queries, which is the same as com.yahoo.language.process.StemmerImpl except that stems of a token with
+ * the offset and orig of the previous token are added to the stems of the previous token.
+ *
+ * <p>Parts of a compound in compound mode are indexed at its position as its alternatives, so they are alternatives
+ * of one query term instead of terms of their own.
+ *
+ * @see KuromojiSegmenter
+ */
+public class KuromojiStemmer implements Stemmer {
+
+  private final Tokenizer tokenizer;
+
+  public KuromojiStemmer(Tokenizer tokenizer) {
+    this.tokenizer = tokenizer;
+  }
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public List<StemList> stem(String input, StemMode mode, Language language) {
+    List<StemList> stems = new ArrayList<>();
+    Token previous = null;
+    // stems of the previous token, null if it had none of its own
+    StemList previousStems = null;
+    for (Token token : tokenizer.tokenize(input, language, mode, false)) {
+      if (previousStems != null && KuromojiSegmenter.isAlternative(token, previous)) {
+        if (token.isIndexable()) {
+          addAlternatives(token, previousStems);
+        }
+      } else {
+        int size = stems.size();
+        findStems(token, stems);
+        previousStems = stems.size() == size + 1 && token.getNumComponents() == 0 ? stems.get(size) : null;
+      }
+      previous = token;
+    }
+    return stems;
+  }
+
+  private static void findStems(Token token, List<StemList> stems) {
+    int len;
+    if (token.isSpecialToken() || (len = token.getNumComponents()) == 0) {
+      if (token.isIndexable()) {
+        StemList stemList = new StemList();
+        stemList.add(token.getTokenString());
+        for (int i = 1; i < token.getNumStems(); ++i) {
+          stemList.add(token.getStem(i));
+        }
+        stems.add(stemList);
+      }
+    } else {
+      for (int i = 0; i < len; ++i) {
+        findStems(token.getComponent(i), stems);
+      }
+    }
+  }
+
+  private static void addAlternatives(Token token, StemList stemList) {
+    addAlternative(token.getTokenString(), stemList);
+    for (int i = 1; i < token.getNumStems(); ++i) {
+      addAlternative(token.getStem(i), stemList);
+    }
+  }
+
+  private static void addAlternative(String stem, StemList stemList) {
+    if (!stemList.contains(stem)) {
+      stemList.add(stem);
+    }
+  }
+
+}
@@ -10,17 +10,33 @@ import com.yahoo.language.process.TokenScript;
 import com.yahoo.language.process.TokenType;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * Token for Kuromoji tokenizer.
+ *
+ * <p>Orig and token string may be given as ranges of the input and the normalized text, which are shared by all
+ * tokens of them. Substrings are created only when they are asked for, or when the token is detached from the texts
+ * before it is kept longer than the input, e.g. in the cache.
  */
 public class KuromojiToken implements Token {
 
-  private List<Token> components = new ArrayList<>();
+  private static final List<Token> NO_COMPONENTS = Collections.emptyList();
 
-  private final String orig;
+  private List<Token> components = NO_COMPONENTS;
+
+  // orig is origSource[origBegin, origEnd), created on demand
+  private String orig;
+  private String origSource;
+  private final int origBegin;
+  private final int origEnd;
+
+  // token string is tokenSource[tokenBegin, tokenEnd) if not given as it is, created on demand
   private String tokenString = null;
+  private String tokenSource = null;
+  private int tokenBegin;
+  private int tokenEnd;
 
   private TokenType type = TokenType.UNKNOWN;
   private TokenScript script = TokenScript.UNKNOWN;
@@ -32,7 +48,15 @@ public class KuromojiToken implements Token {
     private KuromojiToken token;
 
     public Builder(String orig) {
-      token = new KuromojiToken(orig);
+      token = new KuromojiToken(orig, 0, orig.length());
+      token.orig = orig;
+    }
+
+    /**
+     * Builder of token whose orig is source[begin, end).
+     */
+    public Builder(String source, int begin, int end) {
+      token = new KuromojiToken(source, begin, end);
     }
 
     public KuromojiToken build() {
@@ -40,12 +64,27 @@ public class KuromojiToken implements Token {
     }
 
     public Builder component(Token component) {
+      if (token.components == NO_COMPONENTS) {
+        token.components = new ArrayList<>();
+      }
       token.components.add(component);
       return this;
     }
 
     public Builder tokenString(String tokenString) {
       token.tokenString = tokenString;
+      token.tokenSource = null;
+      return this;
+    }
+
+    /**
+     * Set token string which is source[begin, end).
+     */
+    public Builder tokenString(String source, int begin, int end) {
+      token.tokenString = null;
+      token.tokenSource = source;
+      token.tokenBegin = begin;
+      token.tokenEnd = end;
       return this;
     }
 
@@ -70,8 +109,26 @@ public class KuromojiToken implements Token {
     }
   }
 
-  private KuromojiToken(String orig) {
-    this.orig = orig;
+  private KuromojiToken(String origSource, int origBegin, int origEnd) {
+    this.origSource = origSource;
+    this.origBegin = origBegin;
+    this.origEnd = origEnd;
+  }
+
+  /**
+   * Create orig and token string of this token and its components, and drop the texts they are taken from, so that
+   * the token does not keep the whole input and normalized text reachable.
+   */
+  void detach() {
+    getOrig();
+    getTokenString();
+    origSource = null;
+    tokenSource = null;
+    for (Token component : components) {
+      if (component instanceof KuromojiToken) {
+        ((KuromojiToken) component).detach();
+      }
+    }
   }
 
   /**
@@ -87,6 +144,9 @@ public class KuromojiToken implements Token {
    */
   @Override
   public String getOrig() {
+    if (orig == null) {
+      orig = origSource.substring(origBegin, origEnd);
+    }
     return orig;
   }
 
@@ -95,7 +155,7 @@ public class KuromojiToken implements Token {
    */
   @Override
   public int getNumStems() {
-    return tokenString != null ? 1 : 0;
+    return tokenString != null || tokenSource != null ? 1 : 0;
   }
 
   /**
@@ -103,7 +163,7 @@ public class KuromojiToken implements Token {
    */
   @Override
   public String getStem(int i) {
-    return tokenString;
+    return getTokenString();
   }
 
   /**
@@ -143,6 +203,9 @@ public class KuromojiToken implements Token {
    */
   @Override
   public String getTokenString() {
+    if (tokenString == null && tokenSource != null) {
+      tokenString = tokenSource.substring(tokenBegin, tokenEnd);
+    }
     return tokenString;
   }
 
@@ -171,7 +234,7 @@ public class KuromojiToken implements Token {
 
   @Override
   public int hashCode() {
-    return orig.hashCode();
+    return getOrig().hashCode();
   }
 
   @Override
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Transformer;
+
+import jp.co.yahoo.vespa.language.lib.dict.SpecialTokenMatcher;
+import jp.co.yahoo.vespa.language.lib.util.JapaneseNormalizer;
+import jp.co.yahoo.vespa.language.lib.util.JapaneseTokenScript;
+import jp.co.yahoo.vespa.language.lib.util.JapaneseTokenType;
+
+/**
+ * Builds Vespa tokens of Kuromoji tokens and special tokens, whose origs are mapped back from normalized text to
+ * input.
+ */
+final class KuromojiTokenFactory {
+
+  private final Transformer transformer;
+
+  // shared instances of token strings, kept over reloads since they are only contents
+  private final StringPool internPool;
+
+  KuromojiTokenFactory(Transformer transformer, StringPool internPool) {
+    this.transformer = transformer;
+    this.internPool = internPool;
+  }
+
+  /**
+   * Build token of Kuromoji token at normOffset of result.norm.
+   *
+   * @return token, or null if its token string is empty
+   */
+  KuromojiToken createToken(com.atilika.kuromoji.ipadic.Token t, String input, int normOffset,
+                            JapaneseNormalizer.Result result, Language language, StemMode stemMode,
+                            boolean removeAccents) {
+    return buildToken(input, result.origIndexes[normOffset], getOrigEnd(normOffset, t.getSurface().length(), result),
+                      processToken(t, language, stemMode, removeAccents), false);
+  }
+
+  /**
+   * Build token of Kuromoji token whose orig is input[origBegin, origEnd), which may be longer than its surface.
+   *
+   * @return token, or null if its token string is empty
+   */
+  KuromojiToken createToken(com.atilika.kuromoji.ipadic.Token t, String input, int origBegin, int origEnd,
+                            Language language, StemMode stemMode, boolean removeAccents) {
+    return buildToken(input, origBegin, origEnd, processToken(t, language, stemMode, removeAccents), false);
+  }
+
+  /**
+   * Build token of special token, which is its replacement if any.
+   *
+   * @return token, or null if its token string is empty
+   */
+  KuromojiToken createSpecialToken(SpecialTokenMatcher.Match match, String input, JapaneseNormalizer.Result result,
+                                   Language language, boolean removeAccents) {
+    String tokenString = match.getReplacement();
+    if (tokenString.isEmpty()) {
+      tokenString = removeAccents ? transformer.accentDrop(match.getToken(), language) : match.getToken();
+    }
+    return buildToken(input, result.origIndexes[match.getStart()],
+                      getOrigEnd(match.getStart(), match.getEnd() - match.getStart(), result), tokenString, true);
+  }
+
+  private String processToken(com.atilika.kuromoji.ipadic.Token t, Language language, StemMode stemMode,
+                              boolean removeAccents) {
+    String input = t.getBaseForm();
+    if (stemMode == StemMode.NONE || "*".equals(input)) {
+      // XXX: sometime, base form will be "*" (maybe UNKNOWN)
+      input = t.getSurface();
+    }
+
+    if (removeAccents) {
+      input = transformer.accentDrop(input, language);
+    }
+    return internPool != null ? internPool.intern(input) : input;
+  }
+
+  /**
+   * Build token whose orig is input[origBegin, origEnd).
+   *
+   * @return token, or null if tokenString is empty
+   */
+  static KuromojiToken buildToken(String input, int origBegin, int origEnd, String tokenString,
+                                  boolean specialToken) {
+    if (tokenString.isEmpty()) {
+      return null;
+    }
+    return newBuilder(input, origBegin, origEnd, Character.codePointAt(tokenString, 0), specialToken)
+        .tokenString(tokenString).build();
+  }
+
+  /**
+   * Build token whose orig is input[origBegin, origEnd) and token string is norm[normBegin, normEnd), which are
+   * created on demand.
+   */
+  static KuromojiToken buildToken(String input, int origBegin, int origEnd, String norm, int normBegin,
+                                  int normEnd) {
+    return newBuilder(input, origBegin, origEnd, norm.codePointAt(normBegin), false)
+        .tokenString(norm, normBegin, normEnd).build();
+  }
+
+  private static KuromojiToken.Builder newBuilder(String input, int origBegin, int origEnd, int head,
+                                                  boolean specialToken) {
+    // @formatter:off
+    return new KuromojiToken.Builder(input, origBegin, origEnd)
+               // XXX: we only consider head character
+               .type(JapaneseTokenType.valueOf(head))
+               .script(JapaneseTokenScript.valueOf(head))
+               .specialToken(specialToken)
+               .offset(origBegin);
+    // @formatter:on
+  }
+
+  /**
+   * Return the end in input of normalized text of normLength from normOffset.
+   */
+  static int getOrigEnd(int normOffset, int normLength, JapaneseNormalizer.Result result) {
+    int endNormOffset = normOffset + normLength;
+    while (result.origIndexes[normOffset] == result.origIndexes[endNormOffset]) {
+      // for cases like CJK Compatibility
+      ++endNormOffset;
+    }
+    return result.origIndexes[endNormOffset];
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+
+import jp.co.yahoo.vespa.language.lib.dict.SpecialTokenMatcher;
+import jp.co.yahoo.vespa.language.lib.util.JapaneseNormalizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Tokens produced sentence by sentence while iterating.
+ *
+ * <p>Kuromoji analyzes text after each "\u3002" and "\u3001" independently, so feeding these sentences one by one
+ * gives the same tokens as analyzing the whole text at once.
+ *
+ * <p>Special tokens are found before Kuromoji, and emitted as they are. Only text between them is analyzed.
+ *
+ * <p>With script split, ASCII runs between Japanese letters are split by character categories as Kuromoji does for
+ * unknown words, and only the rest is analyzed. Japanese text after them is analyzed as a new sentence.
+ *
+ * <p>In compound mode, the parts of a decomposable token are emitted after it.
+ */
+final class KuromojiTokenIterator implements Iterator<Token> {
+  private final KuromojiGeneration generation;
+  private final KuromojiTokenFactory factory;
+  private final String input;
+  private final JapaneseNormalizer.Result result;
+  private final int end;
+  private final Language language;
+  private final StemMode stemMode;
+  private final boolean removeAccents;
+
+  private final List<SpecialTokenMatcher.Match> specials;
+  private int special = 0;
+
+  private final boolean scriptSplit;
+  // end of ASCII run split off from Kuromoji's analysis
+  private int asciiEnd;
+
+  private int sentenceBegin;
+  private int sentenceEnd;
+  private List<com.atilika.kuromoji.ipadic.Token> sentence = Collections.emptyList();
+  private int index = 0;
+  // tokens of search mode of the sentence in compound mode, given with the sentence in a single pass, or analyzed on
+  // the first decomposable token
+  private List<com.atilika.kuromoji.ipadic.Token> decomposition;
+  private int decompositionIndex;
+  // decomposition of the last token, emitted after it
+  private final List<Token> parts = new ArrayList<>();
+  private int partIndex = 0;
+  private int normOffset;
+  private Token next = null;
+  // counts tokens and records the time from start until the end, if not null
+  private TokenizeMetrics metrics;
+  private long start;
+
+  /**
+   * Tokens of result.norm between begin and end.
+   */
+  KuromojiTokenIterator(KuromojiGeneration generation, KuromojiTokenFactory factory, String input,
+                        JapaneseNormalizer.Result result, int begin, int end, Language language, StemMode stemMode,
+                        boolean removeAccents) {
+    this.generation = generation;
+    this.factory = factory;
+    this.input = input;
+    this.result = result;
+    this.end = end;
+    this.language = language;
+    this.stemMode = stemMode;
+    this.removeAccents = removeAccents;
+    this.sentenceEnd = begin;
+    this.normOffset = begin;
+    KuromojiContext context = generation.context();
+    this.specials = context.getSpecialTokens().match(result.norm, begin, end);
+    // words of the user dictionary may join ASCII and Japanese
+    this.scriptSplit = context.isScriptSplit() && !context.hasUserDictionaryMatch(
+        begin == 0 && end == result.norm.length() ? result.norm : result.norm.substring(begin, end));
+    this.asciiEnd = begin;
+  }
+
+  /**
+   * Count tokens by given metrics while iterating, and record the time from given start until the end.
+   */
+  KuromojiTokenIterator counted(TokenizeMetrics metrics, long start) {
+    this.metrics = metrics;
+    this.start = start;
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (next == null) {
+      next = advance();
+      if (next == null && metrics != null) {
+        metrics.recordStreaming(System.nanoTime() - start);
+        // recorded once, no more tokens are counted
+        metrics = null;
+      }
+    }
+    return next != null;
+  }
+
+  @Override
+  public Token next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    Token token = next;
+    next = null;
+    if (metrics != null) {
+      metrics.recordTokens(1);
+    }
+    return token;
+  }
+
+  private Token advance() {
+    if (partIndex < parts.size()) {
+      return parts.get(partIndex++);
+    }
+    KuromojiContext context = generation.context();
+    while (true) {
+      while (index < sentence.size()) {
+        com.atilika.kuromoji.ipadic.Token t = sentence.get(index++);
+        if (t.getSurface().isEmpty()) {
+          continue;
+        }
+
+        Token token = factory.createToken(t, input, normOffset, result, language, stemMode, removeAccents);
+        if (token != null && context.isCompound() && context.isDecomposable(t.getSurface())) {
+          decompose(normOffset, normOffset + t.getSurface().length());
+        }
+        normOffset += t.getSurface().length();
+        if (token != null) {
+          return token;
+        }
+      }
+
+      if (sentenceEnd >= end) {
+        return null;
+      }
+      normOffset = sentenceEnd;
+      index = 0;
+
+      if (special < specials.size() && specials.get(special).getStart() == normOffset) {
+        SpecialTokenMatcher.Match match = specials.get(special++);
+        sentenceEnd = match.getEnd();
+        sentence = Collections.emptyList();
+        Token token = factory.createSpecialToken(match, input, result, language, removeAccents);
+        normOffset = sentenceEnd;
+        if (token != null) {
+          return token;
+        }
+        continue;
+      }
+
+      int limit = special < specials.size() ? specials.get(special).getStart() : end;
+      if (scriptSplit) {
+        if (normOffset >= asciiEnd) {
+          asciiEnd = splittableAsciiEnd(result.norm, normOffset, limit);
+        }
+        if (normOffset < asciiEnd) {
+          sentenceEnd = asciiCategoryEnd(result.norm, normOffset, asciiEnd);
+          sentence = Collections.emptyList();
+          Token token = KuromojiTokenFactory.buildToken(
+              input, result.origIndexes[normOffset],
+              KuromojiTokenFactory.getOrigEnd(normOffset, sentenceEnd - normOffset, result),
+              result.norm, normOffset, sentenceEnd);
+          normOffset = sentenceEnd;
+          return token;
+        }
+        limit = nextSplittableAscii(result.norm, normOffset, limit);
+      }
+      sentenceEnd = nextSentenceEnd(result.norm, sentenceEnd, limit);
+      sentenceBegin = normOffset;
+      String text = result.norm.substring(sentenceBegin, sentenceEnd);
+      if (context.isSinglePassCompound()) {
+        decomposition = new ArrayList<>();
+        sentence = analyze(generation.tokenizers(), text, decomposition);
+      } else {
+        sentence = analyze(generation.tokenizers(), text, null);
+        decomposition = null;
+      }
+      decompositionIndex = 0;
+    }
+  }
+
+  /**
+   * Set the tokens of search mode between begin and end of result.norm as parts, which are emitted as siblings after
+   * the token there, since indexing annotates only components of a token which has them.
+   *
+   * <p>Parts have the orig and offset of the token, so indexing puts them at the position of the token as its
+   * alternatives, and positions of the following tokens are the same as in normal mode. Phrases of normal mode tokens
+   * match across the token, while phrases of its parts do not.
+   *
+   * <p>Parts are found in the search mode analysis of the whole sentence, so in the same context as the token. The
+   * array engine gives it with the sentence from the same lattice, otherwise the sentence is analyzed again. No part
+   * is set if search mode does not split the token, or splits it across its boundaries.
+   */
+  private void decompose(int begin, int end) {
+    parts.clear();
+    partIndex = 0;
+    if (decomposition == null) {
+      decomposition = analyze(generation.decompounders(), result.norm.substring(sentenceBegin, sentenceEnd), null);
+    }
+    // tokens are decomposed in order
+    while (decompositionIndex < decomposition.size()
+           && sentenceBegin + decomposition.get(decompositionIndex).getPosition() < begin) {
+      ++decompositionIndex;
+    }
+    int offset = begin;
+    int last = decompositionIndex;
+    while (last < decomposition.size() && offset < end) {
+      com.atilika.kuromoji.ipadic.Token part = decomposition.get(last);
+      if (sentenceBegin + part.getPosition() != offset) {
+        break;
+      }
+      offset += part.getSurface().length();
+      ++last;
+    }
+    if (offset != end || last - decompositionIndex <= 1) {
+      return;
+    }
+    int origBegin = result.origIndexes[begin];
+    int origEnd = KuromojiTokenFactory.getOrigEnd(begin, end - begin, result);
+    for (int i = decompositionIndex; i < last; ++i) {
+      com.atilika.kuromoji.ipadic.Token part = decomposition.get(i);
+      if (part.getSurface().isEmpty()) {
+        continue;
+      }
+      Token token = factory.createToken(part, input, origBegin, origEnd, language, stemMode, removeAccents);
+      if (token != null) {
+        parts.add(token);
+      }
+    }
+    decompositionIndex = last;
+  }
+
+  /**
+   * Analyze given sentence, with its decomposition if not null.
+   */
+  private static List<com.atilika.kuromoji.ipadic.Token> analyze(
+      KuromojiTokenizerPool tokenizers, String sentence, List<com.atilika.kuromoji.ipadic.Token> decomposition) {
+    SentenceAnalyzer analyzer = tokenizers.acquire();
+    try {
+      return decomposition != null ? analyzer.analyze(sentence, decomposition) : analyzer.analyze(sentence);
+    } finally {
+      tokenizers.release(analyzer);
+    }
+  }
+
+  private static int nextSentenceEnd(String norm, int start, int end) {
+    // same as com.atilika.kuromoji.TokenizerBase
+    for (int i = start; i < end; ++i) {
+      char c = norm.charAt(i);
+      if (c == '\u3002' || c == '\u3001') {
+        return i + 1;
+      }
+    }
+    return end;
+  }
+
+  /**
+   * Return the end of ASCII characters beginning at start, if they are followed by a Japanese letter or limit.
+   * Otherwise return start.
+   *
+   * <p>A Japanese letter is never joined with ASCII by Kuromoji. The beginning of ASCII characters is a boundary of
+   * analysis already, or follows a Japanese letter.
+   */
+  private static int splittableAsciiEnd(String norm, int start, int limit) {
+    int end = start;
+    while (end < limit && norm.charAt(end) < 0x80) {
+      ++end;
+    }
+    return end == limit || end > start && isJapaneseLetter(norm.codePointAt(end)) ? end : start;
+  }
+
+  /**
+   * Return the beginning of the first splittable ASCII characters after a Japanese letter, or limit.
+   */
+  private static int nextSplittableAscii(String norm, int start, int limit) {
+    for (int i = start + 1; i < limit; ++i) {
+      if (norm.charAt(i) < 0x80 && isJapaneseLetter(norm.codePointBefore(i))) {
+        if (splittableAsciiEnd(norm, i, limit) > i) {
+          return i;
+        }
+        while (i < limit && norm.charAt(i) < 0x80) {
+          ++i;
+        }
+      }
+    }
+    return limit;
+  }
+
+  /**
+   * Return the end of ASCII characters of the same category as the one at start, before limit.
+   */
+  static int asciiCategoryEnd(String norm, int start, int limit) {
+    int category = asciiCategory(norm.charAt(start));
+    int end = start + 1;
+    while (end < limit && asciiCategory(norm.charAt(end)) == category) {
+      ++end;
+    }
+    return end;
+  }
+
+  /**
+   * Return the category of an ASCII character in char.def of IPADIC, whose unknown words are grouped by it.
+   */
+  private static int asciiCategory(char c) {
+    if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B) {
+      return 1; // SPACE
+    } else if (c >= '0' && c <= '9') {
+      return 2; // NUMERIC
+    } else if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z') {
+      return 3; // ALPHA
+    } else if (c < 0x20 || c == 0x7F) {
+      return 0; // DEFAULT
+    }
+    return 4; // SYMBOL
+  }
+
+  /**
+   * Whether given code point is hiragana, katakana or kanji, whose character categories are not shared with ASCII.
+   */
+  private static boolean isJapaneseLetter(int codePoint) {
+    if (codePoint >= 0x3000 && codePoint <= 0x303F) {
+      // CJK symbols and punctuation
+      return false;
+    }
+    Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+    return script == Character.UnicodeScript.HIRAGANA || script == Character.UnicodeScript.KATAKANA
+           || script == Character.UnicodeScript.HAN;
+  }
+}
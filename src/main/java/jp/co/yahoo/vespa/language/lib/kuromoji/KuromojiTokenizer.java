@@ -11,39 +11,249 @@ import com.yahoo.language.process.StemMode;
 import com.yahoo.language.process.Token;
 import com.yahoo.language.process.Tokenizer;
 import com.yahoo.language.process.Transformer;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
 
+import jp.co.yahoo.vespa.language.lib.dict.SpecialTokenMatcher;
 import jp.co.yahoo.vespa.language.lib.exception.NormalizationException;
 import jp.co.yahoo.vespa.language.lib.util.JapaneseNormalizer;
-import jp.co.yahoo.vespa.language.lib.util.JapaneseTokenScript;
-import jp.co.yahoo.vespa.language.lib.util.JapaneseTokenType;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Vespa wrapper of Kuromoji tokenizer.
+ *
+ * <p>This handles the fallback, the ASCII fast path, the cache, reloads and metrics. Tokens are produced by
+ * {@link KuromojiTokenIterator} from the {@link KuromojiGeneration} current at the call, long inputs are split by
+ * {@link TokenizeChunker}, and batches and chunks run on {@link TokenizeBatchExecutor}.
  */
 public class KuromojiTokenizer implements Tokenizer {
 
-  private KuromojiContext context;
+  private static final Logger logger = Logger.getLogger(KuromojiTokenizer.class.getName());
 
-  private Transformer transformer;
+  private volatile KuromojiGeneration current;
 
   private Tokenizer fallback;
-  private com.atilika.kuromoji.ipadic.Tokenizer tokenizer;
+
+  private volatile TokenizeCache cache;
+
+  private final KuromojiTokenFactory factory;
+
+  private final TokenizeMetrics metrics = new TokenizeMetrics();
+
+  // passes of warm up which are run at least
+  private static final int MIN_WARMUP_PASSES = 3;
+  // a pass is stable if it is not faster than the previous one by this ratio
+  private static final double WARMUP_STABLE_RATIO = 0.95;
+
+  private final TokenizeBatchExecutor batchExecutor;
+  private final TokenizeChunker chunker;
+  private ScheduledExecutorService reloader;
+  // held from reading the current context until swapping to the one built from it, so reloads never undo each other
+  private final Object reloadLock = new Object();
+  // set by deconstruct, after which no context is swapped in
+  private boolean closed;
+
+  // max time to wait for a reload in progress on deconstruct
+  private static final long RELOADER_TERMINATION_SECONDS = 60;
 
   /**
    * Create KuromojiTokenizer.
    */
   public KuromojiTokenizer(KuromojiContext context, Normalizer normalizer, Transformer transformer, Tokenizer fallback)
       throws IOException {
-    this.context = context;
-    this.transformer = transformer;
     this.fallback = fallback;
 
-    tokenizer = context.createTokenizer();
+    switch (context.getLoadMode()) {
+      case "eager":
+        current = new KuromojiGeneration(context, false);
+        break;
+      case "background":
+        current = new KuromojiGeneration(context, true);
+        Thread loader = new Thread(this::loadInBackground, "kuromoji-load");
+        loader.setDaemon(true);
+        loader.start();
+        break;
+      case "lazy":
+        current = new KuromojiGeneration(context, true);
+        break;
+      default:
+        logger.log(Level.WARNING, "unknown load mode, use eager: " + context.getLoadMode());
+        current = new KuromojiGeneration(context, false);
+    }
+    if (context.isCacheEnabled()) {
+      cache = new TokenizeCache(context.getCacheSize());
+    }
+    factory = new KuromojiTokenFactory(transformer,
+                                       context.isInternEnabled() ? new StringPool(context.getInternSize()) : null);
+    batchExecutor = new TokenizeBatchExecutor(context.getBatchParallelism());
+    chunker = new TokenizeChunker(batchExecutor);
+    if (context.getReloadInterval() > 0) {
+      reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "kuromoji-reload");
+        thread.setDaemon(true);
+        return thread;
+      });
+      reloader.scheduleWithFixedDelay(this::reloadIfModified, context.getReloadInterval(),
+                                      context.getReloadInterval(), TimeUnit.SECONDS);
+    }
+  }
+
+  private void loadInBackground() {
+    long start = System.nanoTime();
+    try {
+      current.tokenizers();
+      logger.log(Level.INFO, String.format("loaded dictionaries in %d ms",
+                                           TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+    } catch (RuntimeException e) {
+      logger.log(Level.WARNING, "failed to load dictionaries in background, load them on first use:", e);
+    }
+  }
+
+  /**
+   * Whether dictionaries are loaded, which is false until the first Japanese input in lazy load mode, or until
+   * loaded by the background thread.
+   *
+   * @return true if loaded
+   */
+  public boolean isLoaded() {
+    return current.isLoaded();
+  }
+
+  /**
+   * Return counters and latencies of this tokenizer.
+   *
+   * @return metrics
+   */
+  public TokenizeMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Return the current context, which is replaced on reload.
+   *
+   * @return current context
+   */
+  public KuromojiContext getContext() {
+    return current.context();
+  }
+
+  /**
+   * Reload the user dictionary, and swap to new Kuromoji tokenizers sharing the system dictionary.
+   *
+   * <p>Tokenization is never blocked. Calls in progress finish with the previous user dictionary. Concurrent reloads
+   * run one after another, each from the context swapped by the previous one.
+   *
+   * @throws IOException failed to load user dictionary, the previous one is kept
+   */
+  public void reload() throws IOException {
+    synchronized (reloadLock) {
+      swap(current.context().reload());
+    }
+  }
+
+  /**
+   * Reload the user dictionary with given special tokens, and swap to new Kuromoji tokenizers sharing the system
+   * dictionary.
+   *
+   * @param specialtokensConfig new special tokens
+   * @throws IOException failed to load user dictionary, the previous one is kept
+   */
+  public void reload(SpecialtokensConfig specialtokensConfig) throws IOException {
+    synchronized (reloadLock) {
+      swap(current.context().reload(specialtokensConfig));
+    }
+  }
+
+  private synchronized void swap(KuromojiContext context) throws IOException {
+    if (closed) {
+      // nobody would release the dictionaries of a context swapped in after deconstruct
+      context.deconstruct();
+      throw new IllegalStateException("tokenizer is deconstructed");
+    }
+    KuromojiGeneration previous = current;
+    try {
+      // stays lazy until the first use if the previous one was not loaded yet
+      current = new KuromojiGeneration(context, !context.isSystemDictLoaded());
+    } catch (IOException | RuntimeException e) {
+      context.deconstruct();
+      throw e;
+    }
+    if (cache != null) {
+      // new cache instead of clearing, calls in progress may still put results of the previous generation
+      cache = new TokenizeCache(context.getCacheSize());
+    }
+    // calls in progress keep the previous dictionaries until they finish
+    previous.close();
+  }
+
+  private void reloadIfModified() {
+    if (!current.context().isUserDictModified()) {
+      return;
+    }
+    try {
+      reload();
+      logger.log(Level.INFO, "reloaded user dictionary");
+    } catch (IOException | RuntimeException e) {
+      logger.log(Level.WARNING, "failed to reload user dictionary, keep previous one:", e);
+    }
+  }
+
+  /**
+   * Tokenize given corpus in all stem modes with and without accents repeatedly, until a pass over them is no longer
+   * faster than the previous one or timeout.
+   *
+   * <p>Dictionary pages are loaded and code paths are compiled by JIT, so that first calls after this are not slower
+   * than others. The cache is bypassed, so every pass really tokenizes, and metrics of warm up are discarded. Nothing
+   * is done if dictionaries are not loaded yet in lazy or background load mode, which must not be loaded by this.
+   *
+   * @param corpus        sample inputs
+   * @param timeoutMillis max time of warm up
+   * @return number of passes
+   */
+  public int warmUp(List<String> corpus, long timeoutMillis) {
+    if (!isLoaded()) {
+      return 0;
+    }
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    long previous = Long.MAX_VALUE;
+    int passes = 0;
+    while (!corpus.isEmpty() && System.nanoTime() < deadline) {
+      long start = System.nanoTime();
+      for (String input : corpus) {
+        for (StemMode stemMode : StemMode.values()) {
+          tokenizeInternal(input, Language.JAPANESE, stemMode, true, false).forEach(token -> { });
+          tokenizeInternal(input, Language.JAPANESE, stemMode, false, false).forEach(token -> { });
+        }
+      }
+      long elapsed = System.nanoTime() - start;
+      ++passes;
+      if (passes >= MIN_WARMUP_PASSES && elapsed >= previous * WARMUP_STABLE_RATIO) {
+        break;
+      }
+      previous = elapsed;
+    }
+    metrics.reset();
+    return passes;
+  }
+
+  /**
+   * Return the cache of tokenized results.
+   *
+   * @return cache if enabled
+   */
+  public Optional<TokenizeCache> getCache() {
+    return Optional.ofNullable(cache);
   }
 
   /**
@@ -51,77 +261,205 @@ public class KuromojiTokenizer implements Tokenizer {
    */
   @Override
   public Iterable<Token> tokenize(String input, Language language, StemMode stemMode, boolean removeAccents) {
+    long start = System.nanoTime();
+    Iterable<Token> tokens = tokenizeInternal(input, language, stemMode, removeAccents, true);
+    if (tokens instanceof Collection) {
+      metrics.recordTokenize(input.length(), System.nanoTime() - start);
+      metrics.recordTokens(((Collection<Token>) tokens).size());
+    } else {
+      // streaming tokens are counted and timed while iterating
+      metrics.recordTokenize(input.length());
+    }
+    return tokens;
+  }
+
+  private Iterable<Token> tokenizeInternal(String input, Language language, StemMode stemMode,
+                                           boolean removeAccents, boolean cached) {
     if (input.isEmpty()) {
       return Collections.emptyList();
     }
 
+    KuromojiContext context = current.context();
     if (!context.isAllLanguage() && !language.equals(Language.JAPANESE)) {
+      metrics.recordFallback(language);
       return fallback.tokenize(input, language, stemMode, removeAccents);
     }
 
-    // normalize input before tokenizing
-    JapaneseNormalizer.Result result;
-    try {
-      result = JapaneseNormalizer.normalizeByNFKC(input, context.isIgnoreCase());
-    } catch (NormalizationException e) {
-      // fallback to original input
-      // XXX: is it better to output error log?
-      result = new JapaneseNormalizer.Result(input);
-      result.reset();
+    if (context.isAsciiFastPath() && isAscii(input)) {
+      List<Token> tokens = tokenizeAscii(context, input);
+      if (tokens != null) {
+        metrics.recordAscii();
+        return tokens;
+      }
     }
 
-    List<Token> tokens = new ArrayList<>();
-    int normOffset = 0;
-    for (com.atilika.kuromoji.ipadic.Token t : tokenizer.tokenize(result.norm)) {
-      if (t.getSurface().isEmpty()) {
-        continue;
-      }
+    TokenizeCache cache = this.cache;
+    if (cached && cache != null && input.length() <= context.getCacheMaxInputLength()) {
+      return cache.get(new TokenizeRequest(input, language, stemMode, removeAccents), this::doTokenize);
+    }
+    if (context.isStreaming()) {
+      return () -> {
+        long start = System.nanoTime();
+        KuromojiGeneration generation = current;
+        JapaneseNormalizer.Result result = normalize(generation.context(), input);
+        return new KuromojiTokenIterator(generation, factory, input, result, 0, result.norm.length(), language,
+                                         stemMode, removeAccents).counted(metrics, start);
+      };
+    }
+    return doTokenize(input, language, stemMode, removeAccents);
+  }
+
+  /**
+   * Tokenize given requests in parallel on the batch pool, whose parallelism is batch.parallelism.
+   *
+   * @param requests inputs and arguments of {@link #tokenize(String, Language, StemMode, boolean)}
+   * @return tokens of each request in the same order, and aggregate throughput
+   */
+  public TokenizeBatchResult tokenize(List<TokenizeRequest> requests) {
+    return batchExecutor.tokenize(this, requests);
+  }
 
-      String orig = getOrig(t, input, normOffset, result);
-      String tokenString = processToken(t, language, stemMode, removeAccents);
+  /**
+   * Tokenize given requests in parallel on given pool.
+   *
+   * @param requests inputs and arguments of {@link #tokenize(String, Language, StemMode, boolean)}
+   * @param pool     pool to run tokenization
+   * @return tokens of each request in the same order, and aggregate throughput
+   */
+  public TokenizeBatchResult tokenize(List<TokenizeRequest> requests, ForkJoinPool pool) {
+    return TokenizeBatchExecutor.tokenize(this, requests, pool);
+  }
 
-      if (tokenString.isEmpty()) {
-        continue;
+  /**
+   * Release threads of the batch pool and the reloader, and dictionaries of the context.
+   *
+   * <p>A reload in progress is waited for, and reloads after this fail without swapping the context.
+   */
+  public void deconstruct() {
+    ScheduledExecutorService stopping;
+    synchronized (this) {
+      if (closed) {
+        return;
       }
+      closed = true;
+      stopping = reloader;
+      reloader = null;
+    }
+    // not holding the lock, which the reloader takes to swap
+    if (stopping != null) {
+      stopping.shutdownNow();
+      try {
+        if (!stopping.awaitTermination(RELOADER_TERMINATION_SECONDS, TimeUnit.SECONDS)) {
+          logger.log(Level.WARNING, "reload in progress did not finish, its context is released when it does");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    synchronized (this) {
+      current.close();
+    }
+    batchExecutor.shutdown();
+  }
 
-      // @formatter:off
-      tokens.add(new KuromojiToken.Builder(orig).tokenString(tokenString)
-                     // XXX: we only consider head character
-                     .type(JapaneseTokenType.valueOf(Character.codePointAt(tokenString, 0)))
-                     .script(JapaneseTokenScript.valueOf(Character.codePointAt(tokenString, 0)))
-                     .specialToken(context.isSpecialToken(t.getSurface()))
-                     .offset(result.origIndexes[normOffset]).build());
-      // @formatter:on
+  private List<Token> doTokenize(TokenizeRequest request) {
+    return doTokenize(request.getInput(), request.getLanguage(), request.getStemMode(), request.isRemoveAccents());
+  }
 
-      normOffset += t.getSurface().length();
+  private List<Token> doTokenize(String input, Language language, StemMode stemMode, boolean removeAccents) {
+    KuromojiGeneration generation = current;
+    JapaneseNormalizer.Result result = normalize(generation.context(), input);
+    int maxChunkLength = generation.context().getChunkMaxLength();
+    if (maxChunkLength > 0 && result.norm.length() > maxChunkLength) {
+      return chunker.tokenize(result, generation.context().getSpecialTokens(), maxChunkLength,
+                              (begin, end) -> new KuromojiTokenIterator(generation, factory, input, result, begin, end,
+                                                                        language, stemMode, removeAccents));
     }
 
+    List<Token> tokens = new ArrayList<>();
+    new KuromojiTokenIterator(generation, factory, input, result, 0, result.norm.length(), language, stemMode,
+                              removeAccents).forEachRemaining(tokens::add);
     return tokens;
   }
 
-  private String getOrig(com.atilika.kuromoji.ipadic.Token t, String input, int normOffset,
-                         JapaneseNormalizer.Result result) {
-    int endNormOffset = normOffset + t.getSurface().length();
-    while (result.origIndexes[normOffset] == result.origIndexes[endNormOffset]) {
-      // for cases like CJK Compatibility
-      ++endNormOffset;
+  private static boolean isAscii(String input) {
+    for (int i = 0, len = input.length(); i < len; ++i) {
+      if (input.charAt(i) >= 0x80) {
+        return false;
+      }
     }
+    return true;
+  }
 
-    return input.substring(result.origIndexes[normOffset], result.origIndexes[endNormOffset]);
+  /**
+   * Tokenize ASCII input without normalization and Kuromoji.
+   *
+   * <p>IPADIC has no word of ASCII characters, so Kuromoji splits ASCII text into runs of the same character category
+   * of its unknown words, whose base forms are unknown. NFKC keeps ASCII as it is, and accents are never found.
+   *
+   * @return tokens, or null if the user dictionary may change the result
+   */
+  private List<Token> tokenizeAscii(KuromojiContext context, String input) {
+    String norm = context.isIgnoreCase() ? toLowerCaseAscii(input) : input;
+    if (context.hasUserDictionaryMatch(norm)) {
+      return null;
+    }
+
+    List<Token> tokens = new ArrayList<>();
+    List<SpecialTokenMatcher.Match> specials = context.getSpecialTokens().match(norm, 0, norm.length());
+    int special = 0;
+    for (int start = 0, len = norm.length(); start < len; ) {
+      int end;
+      if (special < specials.size() && specials.get(special).getStart() == start) {
+        SpecialTokenMatcher.Match match = specials.get(special++);
+        end = match.getEnd();
+        String tokenString = match.getReplacement().isEmpty() ? match.getToken() : match.getReplacement();
+        addToken(tokens, KuromojiTokenFactory.buildToken(input, start, end, tokenString, true));
+      } else {
+        int limit = special < specials.size() ? specials.get(special).getStart() : len;
+        end = KuromojiTokenIterator.asciiCategoryEnd(norm, start, limit);
+        addToken(tokens, KuromojiTokenFactory.buildToken(input, start, end, norm, start, end));
+      }
+      start = end;
+    }
+    return tokens;
   }
 
-  private String processToken(com.atilika.kuromoji.ipadic.Token t, Language language, StemMode stemMode,
-                              boolean removeAccents) {
-    String input = t.getBaseForm();
-    if (stemMode == StemMode.NONE || "*".equals(input)) {
-      // XXX: sometime, base form will be "*" (maybe UNKNOWN)
-      input = t.getSurface();
+  private static void addToken(List<Token> tokens, Token token) {
+    if (token != null) {
+      tokens.add(token);
     }
+  }
 
-    if (removeAccents) {
-      input = transformer.accentDrop(input, language);
+  private static String toLowerCaseAscii(String input) {
+    for (int i = 0, len = input.length(); i < len; ++i) {
+      if (input.charAt(i) >= 'A' && input.charAt(i) <= 'Z') {
+        char[] chars = input.toCharArray();
+        for (; i < len; ++i) {
+          if (chars[i] >= 'A' && chars[i] <= 'Z') {
+            chars[i] += 'a' - 'A';
+          }
+        }
+        return new String(chars);
+      }
     }
     return input;
   }
 
+  private JapaneseNormalizer.Result normalize(KuromojiContext context, String input) {
+    // normalize input before tokenizing
+    long start = System.nanoTime();
+    JapaneseNormalizer.Result result;
+    try {
+      result = JapaneseNormalizer.normalizeByNFKC(input, context.isIgnoreCase());
+    } catch (NormalizationException e) {
+      // fallback to original input, failures are counted by metrics
+      metrics.recordNormalizeFallback();
+      logger.log(Level.FINE, "failed to normalize, use input as is:", e);
+      result = new JapaneseNormalizer.Result(input);
+      result.reset();
+    }
+    metrics.recordNormalize(System.nanoTime() - start);
+    return result;
+  }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Analyzer instances used by {@link KuromojiTokenizer}.
+ *
+ * <p>All instances share dictionaries of {@link KuromojiContext}, and only working state of Kuromoji is per instance.
+ * <ul>
+ * <li>shared: one instance for all threads</li>
+ * <li>thread: one instance per thread, which a thread drops on its first call after the pool is closed</li>
+ * <li>pool: bounded number of instances, callers wait if all of them are in use</li>
+ * </ul>
+ */
+abstract class KuromojiTokenizerPool {
+
+  private static final Logger logger = Logger.getLogger(KuromojiTokenizerPool.class.getName());
+
+  /**
+   * Create instances as configured by given context.
+   */
+  static KuromojiTokenizerPool create(KuromojiContext context) throws IOException {
+    return create(context, context::createAnalyzer);
+  }
+
+  /**
+   * Create instances by given factory as configured by given context.
+   */
+  static KuromojiTokenizerPool create(KuromojiContext context, Factory factory) throws IOException {
+    switch (context.getInstanceMode()) {
+      case "shared":
+        return new Shared(factory.create());
+      case "thread":
+        return new PerThread(context, factory);
+      case "pool":
+        return new Pooled(factory, context.getInstancePoolSize());
+      default:
+        logger.log(Level.WARNING, "unknown instance mode, use shared: " + context.getInstanceMode());
+        return new Shared(factory.create());
+    }
+  }
+
+  /**
+   * Create an analyzer instance.
+   */
+  @FunctionalInterface
+  interface Factory {
+    SentenceAnalyzer create() throws IOException;
+  }
+
+  /**
+   * Take an instance, which must be given back by {@link #release(SentenceAnalyzer)}.
+   */
+  abstract SentenceAnalyzer acquire();
+
+  abstract void release(SentenceAnalyzer analyzer);
+
+  /**
+   * Stop keeping instances, when the generation of dictionaries using them is replaced. Calls in progress may still
+   * acquire and release instances.
+   */
+  void close() {
+  }
+
+  private static class Shared extends KuromojiTokenizerPool {
+    private final SentenceAnalyzer analyzer;
+
+    Shared(SentenceAnalyzer analyzer) {
+      this.analyzer = analyzer;
+    }
+
+    @Override
+    SentenceAnalyzer acquire() {
+      return analyzer;
+    }
+
+    @Override
+    void release(SentenceAnalyzer analyzer) {
+    }
+  }
+
+  private static class PerThread extends KuromojiTokenizerPool {
+    // analyzers of each thread by pool, shared by all pools so that a thread drops the analyzers of closed pools,
+    // which hold their dictionaries, on its next call instead of keeping them as long as it lives
+    private static final ThreadLocal<Map<PerThread, SentenceAnalyzer>> analyzers =
+        ThreadLocal.withInitial(IdentityHashMap::new);
+
+    private final Factory factory;
+    private volatile boolean closed = false;
+
+    PerThread(KuromojiContext context, Factory factory) throws IOException {
+      // load dictionaries here to report failure on construction
+      context.getDictionaries();
+      this.factory = factory;
+    }
+
+    @Override
+    SentenceAnalyzer acquire() {
+      Map<PerThread, SentenceAnalyzer> threadAnalyzers = analyzers.get();
+      SentenceAnalyzer analyzer = threadAnalyzers.get(this);
+      if (analyzer != null) {
+        return analyzer;
+      }
+      threadAnalyzers.keySet().removeIf(pool -> pool.closed);
+      try {
+        analyzer = factory.create();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (!closed) {
+        threadAnalyzers.put(this, analyzer);
+      }
+      return analyzer;
+    }
+
+    @Override
+    void release(SentenceAnalyzer analyzer) {
+    }
+
+    @Override
+    void close() {
+      closed = true;
+    }
+  }
+
+  private static class Pooled extends KuromojiTokenizerPool {
+    private final BlockingQueue<SentenceAnalyzer> analyzers;
+
+    Pooled(Factory factory, int size) throws IOException {
+      analyzers = new ArrayBlockingQueue<>(size);
+      for (int i = 0; i < size; ++i) {
+        analyzers.add(factory.create());
+      }
+    }
+
+    @Override
+    SentenceAnalyzer acquire() {
+      try {
+        return analyzers.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted while waiting for analyzer", e);
+      }
+    }
+
+    @Override
+    void release(SentenceAnalyzer analyzer) {
+      analyzers.add(analyzer);
+    }
+  }
+
+}
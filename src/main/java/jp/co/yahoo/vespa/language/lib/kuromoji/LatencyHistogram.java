@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free histogram of latencies in nanoseconds.
+ *
+ * <p>Buckets are log-linear: each power of two is divided into {@value #SUB_BUCKETS} buckets, so a percentile is
+ * within 25% of the actual value. Every bucket is a striped counter, so concurrent recording does not contend.
+ */
+final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // 1 microsecond and less go to the first bucket
+  private static final int MIN_EXPONENT = 10;
+  // about 2 minutes and more go to the last bucket
+  private static final int MAX_EXPONENT = 37;
+
+  private final LongAdder[] buckets = new LongAdder[(MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS];
+  private final LongAccumulator max = new LongAccumulator(Long::max, 0);
+
+  LatencyHistogram() {
+    for (int i = 0; i < buckets.length; ++i) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  private static int bucketOf(long nanos) {
+    if (nanos < 1L << MIN_EXPONENT) {
+      return 0;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+    if (exponent > MAX_EXPONENT) {
+      return (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS - 1;
+    }
+    int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+  }
+
+  private static long upperBoundOf(int bucket) {
+    int exponent = bucket / SUB_BUCKETS + MIN_EXPONENT;
+    int subBucket = bucket % SUB_BUCKETS;
+    return (long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  void record(long nanos) {
+    buckets[bucketOf(nanos)].increment();
+    max.accumulate(nanos);
+  }
+
+  /**
+   * Take counts recorded since the last snapshot.
+   */
+  Snapshot snapshotAndReset() {
+    long[] counts = new long[buckets.length];
+    for (int i = 0; i < buckets.length; ++i) {
+      counts[i] = buckets[i].sumThenReset();
+    }
+    return new Snapshot(counts, max.getThenReset());
+  }
+
+  /**
+   * Latencies recorded in an interval.
+   */
+  static final class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long max;
+
+    Snapshot(long[] counts, long max) {
+      this.counts = counts;
+      long total = 0;
+      for (long c : counts) {
+        total += c;
+      }
+      this.count = total;
+      this.max = max;
+    }
+
+    long getCount() {
+      return count;
+    }
+
+    long getMax() {
+      return max;
+    }
+
+    /**
+     * Return the upper bound of the bucket containing given percentile, but not more than max.
+     */
+    long getPercentile(double percentile) {
+      if (count == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(count * percentile / 100.0);
+      long seen = 0;
+      for (int i = 0; i < counts.length; ++i) {
+        seen += counts[i];
+        if (seen >= rank && counts[i] > 0) {
+          // the last bucket has no upper bound
+          return i < counts.length - 1 ? Math.min(upperBoundOf(i), max) : max;
+        }
+      }
+      return max;
+    }
+  }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.atilika.kuromoji.ipadic.Token;
+
+import java.util.List;
+
+/**
+ * Morphological analysis of a sentence, which is Kuromoji's tokenizer or {@link ArrayViterbiAnalyzer}.
+ */
+@FunctionalInterface
+interface SentenceAnalyzer {
+
+  /**
+   * Return tokens of given text, which is split on ideographic full stops and commas like Kuromoji.
+   */
+  List<Token> analyze(String text);
+
+  /**
+   * Return tokens of given text in normal mode, adding the tokens of search mode from the same analysis to
+   * decomposition where normal mode gives tokens to decompose. Only analyzers in compound mode support this.
+   */
+  default List<Token> analyze(String text, List<Token> decomposition) {
+    throw new UnsupportedOperationException("not in compound mode");
+  }
+
+}
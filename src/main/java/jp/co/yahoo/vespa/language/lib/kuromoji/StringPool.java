@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Size bounded pool of frequent token strings.
+ *
+ * <p>The pool is a direct mapped table indexed by hash code, so lookups are lock free and a string simply replaces
+ * another one in its slot. Frequent strings like particles are therefore almost always found, and rare strings
+ * never grow the pool. Long strings are returned as they are, since they rarely repeat.
+ *
+ * <p>Strings are looked up after they are created by Kuromoji and the transformer, so this does not reduce allocation.
+ * Only the duplicates retained by tokens which outlive the call, e.g. in the cache or in indexed documents, are
+ * reduced; the given strings become young garbage instead.
+ */
+final class StringPool {
+
+  // longer strings are not pooled
+  static final int MAX_LENGTH = 16;
+
+  private final AtomicReferenceArray<String> table;
+  private final int mask;
+
+  /**
+   * Create StringPool.
+   *
+   * @param size max number of pooled strings, rounded up to a power of two
+   */
+  StringPool(int size) {
+    if (size <= 0) {
+      throw new IllegalArgumentException("pool size must be positive: " + size);
+    }
+    int capacity = Integer.highestOneBit(Math.min(size, 1 << 30));
+    if (capacity < size) {
+      capacity <<= 1;
+    }
+    this.table = new AtomicReferenceArray<>(capacity);
+    this.mask = capacity - 1;
+  }
+
+  /**
+   * Return the pooled string equal to given one, or pool and return given one.
+   *
+   * @param s string
+   * @return shared instance equal to s
+   */
+  String intern(String s) {
+    if (s.length() > MAX_LENGTH) {
+      return s;
+    }
+    int h = s.hashCode();
+    int index = (h ^ (h >>> 16)) & mask;
+    String pooled = table.get(index);
+    if (pooled != null && pooled.equals(s)) {
+      return pooled;
+    }
+    // only a hint, another string may replace it at any time
+    table.lazySet(index, s);
+    return s;
+  }
+
+  /**
+   * Return the max number of pooled strings.
+   */
+  int capacity() {
+    return table.length();
+  }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.process.Token;
+import com.yahoo.language.process.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs batches of requests and chunks of long inputs on a pool, which is created on first use.
+ */
+final class TokenizeBatchExecutor {
+
+  private final int parallelism;
+
+  private ForkJoinPool pool;
+
+  TokenizeBatchExecutor(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Tokenize given requests by given tokenizer in parallel on the pool.
+   */
+  TokenizeBatchResult tokenize(Tokenizer tokenizer, List<TokenizeRequest> requests) {
+    return tokenize(tokenizer, requests, getPool());
+  }
+
+  /**
+   * Tokenize given requests by given tokenizer in parallel on given pool.
+   */
+  static TokenizeBatchResult tokenize(Tokenizer tokenizer, List<TokenizeRequest> requests, ForkJoinPool pool) {
+    long start = System.nanoTime();
+    List<List<Token>> results = new ArrayList<>(Collections.nCopies(requests.size(), null));
+    if (!requests.isEmpty()) {
+      pool.invoke(new BatchTask(tokenizer, requests, results, 0, requests.size()));
+    }
+    long elapsed = System.nanoTime() - start;
+
+    long chars = 0;
+    long tokens = 0;
+    for (int i = 0, len = requests.size(); i < len; ++i) {
+      chars += requests.get(i).getInput().length();
+      tokens += results.get(i).size();
+    }
+    return new TokenizeBatchResult(results, chars, tokens, elapsed);
+  }
+
+  /**
+   * Run given task in the current pool if called from one, e.g. in batch tokenization, otherwise on the pool.
+   */
+  void invoke(RecursiveAction task) {
+    if (ForkJoinTask.inForkJoinPool()) {
+      task.invoke();
+    } else {
+      getPool().invoke(task);
+    }
+  }
+
+  private synchronized ForkJoinPool getPool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+        thread.setName("kuromoji-batch-" + thread.getPoolIndex());
+        return thread;
+      }, null, false);
+    }
+    return pool;
+  }
+
+  /**
+   * Release threads of the pool.
+   */
+  synchronized void shutdown() {
+    if (pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+  }
+
+  private static class BatchTask extends RecursiveAction {
+    private static final long serialVersionUID = -4977824459416614203L;
+
+    private final Tokenizer tokenizer;
+    private final List<TokenizeRequest> requests;
+    private final List<List<Token>> results;
+    private final int from;
+    private final int to;
+
+    BatchTask(Tokenizer tokenizer, List<TokenizeRequest> requests, List<List<Token>> results, int from, int to) {
+      this.tokenizer = tokenizer;
+      this.requests = requests;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new BatchTask(tokenizer, requests, results, from, mid),
+                  new BatchTask(tokenizer, requests, results, mid, to));
+        return;
+      }
+
+      TokenizeRequest request = requests.get(from);
+      Iterable<Token> tokens = tokenizer.tokenize(request.getInput(), request.getLanguage(), request.getStemMode(),
+                                                  request.isRemoveAccents());
+      if (tokens instanceof List) {
+        results.set(from, (List<Token>) tokens);
+      } else {
+        List<Token> list = new ArrayList<>();
+        tokens.forEach(list::add);
+        results.set(from, list);
+      }
+    }
+  }
+}
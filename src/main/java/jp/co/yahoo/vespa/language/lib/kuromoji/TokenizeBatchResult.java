@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.process.Token;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Result of {@link KuromojiTokenizer#tokenize(List)}.
+ */
+public final class TokenizeBatchResult {
+
+  private final List<List<Token>> tokens;
+  private final long chars;
+  private final long tokenCount;
+  private final long elapsedNanos;
+
+  TokenizeBatchResult(List<List<Token>> tokens, long chars, long tokenCount, long elapsedNanos) {
+    this.tokens = Collections.unmodifiableList(tokens);
+    this.chars = chars;
+    this.tokenCount = tokenCount;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * Return tokens of each request, in the same order as requests.
+   *
+   * @return tokens of each request
+   */
+  public List<List<Token>> getTokens() {
+    return tokens;
+  }
+
+  /**
+   * Return the total length of inputs.
+   *
+   * @return number of chars
+   */
+  public long getCharCount() {
+    return chars;
+  }
+
+  /**
+   * Return the total number of tokens.
+   *
+   * @return number of tokens
+   */
+  public long getTokenCount() {
+    return tokenCount;
+  }
+
+  /**
+   * Return wall clock time of the batch.
+   *
+   * @param unit time unit
+   * @return elapsed time
+   */
+  public long getElapsed(TimeUnit unit) {
+    return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Return aggregate throughput of the batch.
+   *
+   * @return tokens per second
+   */
+  public double getTokensPerSecond() {
+    return elapsedNanos > 0 ? tokenCount * 1e9 / elapsedNanos : 0.0;
+  }
+
+  /**
+   * Return aggregate throughput of the batch.
+   *
+   * @return chars per second
+   */
+  public double getCharsPerSecond() {
+    return elapsedNanos > 0 ? chars * 1e9 / elapsedNanos : 0.0;
+  }
+
+  @Override
+  public String toString() {
+    return "TokenizeBatchResult{requests=" + tokens.size() + ", chars=" + chars + ", tokens=" + tokenCount
+           + ", elapsed=" + getElapsed(TimeUnit.MILLISECONDS) + "ms}";
+  }
+
+}
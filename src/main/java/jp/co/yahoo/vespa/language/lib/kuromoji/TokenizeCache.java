@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.process.Token;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Size bounded cache of tokenized results.
+ *
+ * <p>Lookups and insertions are lock free. Every entry has a small saturating access counter and eviction runs a
+ * clock hand over the entries, decrementing counters until an entry without recent access is found (GCLOCK).
+ * Frequently requested inputs therefore survive a burst of one-off inputs. Each insertion claims its slot by
+ * compare-and-set, so concurrent misses on indexing threads never wait for each other, and the number of cached
+ * results exceeds the max size at most by the number of insertions in progress.
+ *
+ * <p>Cached lists are unmodifiable and shared between callers. Their tokens are detached from the input and the
+ * normalized text before they are cached, so that cached tokens keep only their own strings.
+ */
+public class TokenizeCache {
+
+  private static final int MAX_FREQUENCY = 3;
+
+  private static final class Entry {
+    final TokenizeRequest key;
+    final List<Token> tokens;
+    // updated without synchronization, lost updates only affect eviction order
+    volatile int frequency = 0;
+
+    Entry(TokenizeRequest key, List<Token> tokens) {
+      this.key = key;
+      this.tokens = tokens;
+    }
+
+    void touch() {
+      int f = frequency;
+      if (f < MAX_FREQUENCY) {
+        frequency = f + 1;
+      }
+    }
+  }
+
+  private final ConcurrentHashMap<TokenizeRequest, Entry> entries;
+
+  private final AtomicReferenceArray<Entry> clock;
+  private final AtomicInteger hand = new AtomicInteger();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Create TokenizeCache.
+   *
+   * @param maxSize max number of cached results
+   */
+  public TokenizeCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("cache size must be positive: " + maxSize);
+    }
+    this.entries = new ConcurrentHashMap<>(Math.min(maxSize, 1 << 16));
+    this.clock = new AtomicReferenceArray<>(maxSize);
+  }
+
+  /**
+   * Return cached tokens of given request, or tokenize and cache them.
+   *
+   * <p>Concurrent misses of the same request may call tokenizer more than once, and the first result is kept.
+   *
+   * @param request   request to lookup
+   * @param tokenizer called on cache miss
+   * @return unmodifiable tokens
+   */
+  public List<Token> get(TokenizeRequest request, Function<TokenizeRequest, List<Token>> tokenizer) {
+    Entry entry = entries.get(request);
+    if (entry != null) {
+      hits.increment();
+      entry.touch();
+      return entry.tokens;
+    }
+
+    misses.increment();
+    List<Token> tokens = Collections.unmodifiableList(tokenizer.apply(request));
+    for (Token token : tokens) {
+      if (token instanceof KuromojiToken) {
+        ((KuromojiToken) token).detach();
+      }
+    }
+    return put(request, tokens);
+  }
+
+  private List<Token> put(TokenizeRequest request, List<Token> tokens) {
+    Entry entry = new Entry(request, tokens);
+    Entry previous = entries.putIfAbsent(request, entry);
+    if (previous != null) {
+      return previous.tokens;
+    }
+    while (true) {
+      int slot = hand.getAndUpdate(h -> h + 1 == clock.length() ? 0 : h + 1);
+      Entry victim = clock.get(slot);
+      if (victim == null) {
+        if (clock.compareAndSet(slot, null, entry)) {
+          return tokens;
+        }
+      } else if (victim.frequency > 0) {
+        victim.frequency = victim.frequency - 1;
+      } else if (clock.compareAndSet(slot, victim, entry)) {
+        entries.remove(victim.key, victim);
+        evictions.increment();
+        return tokens;
+      }
+    }
+  }
+
+  /**
+   * Remove all cached results. Counters are not reset.
+   *
+   * <p>Results put by concurrent calls may be kept.
+   */
+  public void clear() {
+    for (int i = 0; i < clock.length(); ++i) {
+      Entry entry = clock.getAndSet(i, null);
+      if (entry != null) {
+        entries.remove(entry.key, entry);
+      }
+    }
+    hand.set(0);
+  }
+
+  /**
+   * Return the number of cached results.
+   *
+   * @return number of cached results
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Return the max number of cached results.
+   *
+   * @return max number of cached results
+   */
+  public int maxSize() {
+    return clock.length();
+  }
+
+  /**
+   * Return the number of lookups which found a cached result.
+   *
+   * @return number of hits
+   */
+  public long getHitCount() {
+    return hits.sum();
+  }
+
+  /**
+   * Return the number of lookups which did not find a cached result.
+   *
+   * @return number of misses
+   */
+  public long getMissCount() {
+    return misses.sum();
+  }
+
+  /**
+   * Return the number of results evicted to make room for new results.
+   *
+   * @return number of evictions
+   */
+  public long getEvictionCount() {
+    return evictions.sum();
+  }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.process.Token;
+
+import jp.co.yahoo.vespa.language.lib.dict.SpecialTokenMatcher;
+import jp.co.yahoo.vespa.language.lib.util.JapaneseNormalizer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits long normalized text into chunks, which are tokenized in parallel and joined in order.
+ */
+final class TokenizeChunker {
+
+  /**
+   * Tokens of a range of normalized text.
+   */
+  interface RangeTokenizer {
+    Iterator<Token> tokenize(int begin, int end);
+  }
+
+  private final TokenizeBatchExecutor executor;
+
+  TokenizeChunker(TokenizeBatchExecutor executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Tokenize chunks of result.norm not longer than maxChunkLength, except special tokens which are never split.
+   */
+  List<Token> tokenize(JapaneseNormalizer.Result result, SpecialTokenMatcher specialTokens, int maxChunkLength,
+                       RangeTokenizer tokenizer) {
+    List<Integer> bounds = getBounds(result, specialTokens, maxChunkLength);
+    List<List<Token>> chunks = new ArrayList<>(Collections.nCopies(bounds.size() - 1, null));
+    executor.invoke(new ChunkTask(tokenizer, bounds, chunks, 0, chunks.size()));
+
+    List<Token> tokens = new ArrayList<>();
+    for (List<Token> chunk : chunks) {
+      tokens.addAll(chunk);
+    }
+    return tokens;
+  }
+
+  /**
+   * Return the bounds of chunks of result.norm, from 0 to its length.
+   */
+  static List<Integer> getBounds(JapaneseNormalizer.Result result, SpecialTokenMatcher specialTokens,
+                                 int maxChunkLength) {
+    List<SpecialTokenMatcher.Match> specials = specialTokens.match(result.norm, 0, result.norm.length());
+    List<Integer> bounds = new ArrayList<>();
+    bounds.add(0);
+    int special = 0;
+    for (int start = 0, len = result.norm.length(); start < len; ) {
+      start = nextChunkEnd(result, start, maxChunkLength);
+      // never split a special token
+      while (special < specials.size() && specials.get(special).getEnd() <= start) {
+        ++special;
+      }
+      if (special < specials.size() && specials.get(special).getStart() < start) {
+        start = specials.get(special).getEnd();
+      }
+      bounds.add(start);
+    }
+    return bounds;
+  }
+
+  /**
+   * Return the end of a chunk beginning at start, which is not longer than maxChunkLength.
+   *
+   * <p>A chunk ends after the last "\u3002", "\u3001", "!", "?", line break or whitespace run within the limit.
+   * If there is none, the chunk is cut at the limit but not inside a surrogate pair, a combining sequence or
+   * characters normalized from one character.
+   */
+  static int nextChunkEnd(JapaneseNormalizer.Result result, int start, int maxChunkLength) {
+    String norm = result.norm;
+    int limit = start + maxChunkLength;
+    if (limit >= norm.length()) {
+      return norm.length();
+    }
+
+    for (int end = limit; end > start; --end) {
+      char last = norm.charAt(end - 1);
+      char next = norm.charAt(end);
+      if (last == '\u3002' || last == '\u3001' || last == '!' || last == '?') {
+        return end;
+      }
+      if (Character.isWhitespace(last) && !Character.isWhitespace(next)
+          && (last == '\n' || last == '\r' || end - 2 >= start && Character.isWhitespace(norm.charAt(end - 2)))) {
+        return end;
+      }
+    }
+
+    for (int end = limit; end > start; --end) {
+      if (!Character.isLowSurrogate(norm.charAt(end)) && !isCombining(norm.charAt(end))
+          && result.origIndexes[end - 1] != result.origIndexes[end]) {
+        return end;
+      }
+    }
+    return limit;
+  }
+
+  private static boolean isCombining(char c) {
+    int type = Character.getType(c);
+    return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+           || type == Character.ENCLOSING_MARK;
+  }
+
+  private static class ChunkTask extends RecursiveAction {
+    private static final long serialVersionUID = 6396565233588278077L;
+
+    private final RangeTokenizer tokenizer;
+    private final List<Integer> bounds;
+    private final List<List<Token>> chunks;
+    private final int from;
+    private final int to;
+
+    ChunkTask(RangeTokenizer tokenizer, List<Integer> bounds, List<List<Token>> chunks, int from, int to) {
+      this.tokenizer = tokenizer;
+      this.bounds = bounds;
+      this.chunks = chunks;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int mid = (from + to) >>> 1;
+        invokeAll(new ChunkTask(tokenizer, bounds, chunks, from, mid),
+                  new ChunkTask(tokenizer, bounds, chunks, mid, to));
+        return;
+      }
+
+      List<Token> tokens = new ArrayList<>();
+      tokenizer.tokenize(bounds.get(from), bounds.get(from + 1)).forEachRemaining(tokens::add);
+      chunks.set(from, tokens);
+    }
+  }
+}
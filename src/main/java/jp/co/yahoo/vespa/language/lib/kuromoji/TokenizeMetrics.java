@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.jdisc.Metric;
+import com.yahoo.language.Language;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latencies of {@link KuromojiTokenizer}.
+ *
+ * <p>Recording only updates striped counters, so it is cheap enough to be always on. {@link #publish(Metric)} reports
+ * what was recorded since the previous call through Vespa's metric framework.
+ *
+ * <table>
+ * <caption>Metrics</caption>
+ * <tr><th>name</th><th>type</th><th>description</th></tr>
+ * <tr><td>kuromoji.tokenize.calls</td><td>counter</td><td>number of tokenize calls</td></tr>
+ * <tr><td>kuromoji.tokenize.input_chars</td><td>counter</td><td>length of tokenized inputs</td></tr>
+ * <tr><td>kuromoji.tokenize.tokens</td><td>counter</td><td>number of emitted tokens</td></tr>
+ * <tr><td>kuromoji.tokenize.latency.{p50,p99,max}</td><td>gauge</td><td>latency of tokenize in milliseconds, except
+ * streaming calls which return before tokenizing</td></tr>
+ * <tr><td>kuromoji.tokenize.streaming.latency.{p50,p99,max}</td><td>gauge</td><td>time from the start of iteration
+ * over streaming tokens to its end in milliseconds, including the time of the caller between tokens. Iterations
+ * stopped before the end are not recorded</td></tr>
+ * <tr><td>kuromoji.tokenize.fallback</td><td>counter</td><td>calls of fallback tokenizer, by language</td></tr>
+ * <tr><td>kuromoji.tokenize.ascii</td><td>counter</td><td>calls tokenized by the ASCII fast path</td></tr>
+ * <tr><td>kuromoji.normalize.latency.{p50,p99,max}</td><td>gauge</td><td>latency of normalization in
+ * milliseconds</td></tr>
+ * <tr><td>kuromoji.normalize.fallback</td><td>counter</td><td>failed normalizations, whose input is used as
+ * is</td></tr>
+ * </table>
+ */
+public final class TokenizeMetrics {
+
+  static final String PREFIX = "kuromoji.";
+
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder inputChars = new LongAdder();
+  private final LongAdder tokens = new LongAdder();
+  private final LatencyHistogram tokenizeLatency = new LatencyHistogram();
+  private final LatencyHistogram streamingLatency = new LatencyHistogram();
+  private final Map<Language, LongAdder> fallbacks = new ConcurrentHashMap<>();
+  private final LongAdder asciiCalls = new LongAdder();
+
+  private final LatencyHistogram normalizeLatency = new LatencyHistogram();
+  private final LongAdder normalizeFallbacks = new LongAdder();
+
+  // guarded by this, contexts of the metric given to publish
+  private Metric contextOwner;
+  private final Map<Language, Metric.Context> languageContexts = new HashMap<>();
+
+  void recordTokenize(int chars, long nanos) {
+    recordTokenize(chars);
+    tokenizeLatency.record(nanos);
+  }
+
+  // streaming calls, which are timed by recordStreaming while iterating
+  void recordTokenize(int chars) {
+    calls.increment();
+    inputChars.add(chars);
+  }
+
+  void recordStreaming(long nanos) {
+    streamingLatency.record(nanos);
+  }
+
+  void recordTokens(long count) {
+    tokens.add(count);
+  }
+
+  void recordFallback(Language language) {
+    LongAdder counter = fallbacks.get(language);
+    if (counter == null) {
+      counter = fallbacks.computeIfAbsent(language, k -> new LongAdder());
+    }
+    counter.increment();
+  }
+
+  void recordAscii() {
+    asciiCalls.increment();
+  }
+
+  void recordNormalize(long nanos) {
+    normalizeLatency.record(nanos);
+  }
+
+  void recordNormalizeFallback() {
+    normalizeFallbacks.increment();
+  }
+
+  /**
+   * Return the number of tokenize calls since the last publish.
+   *
+   * @return number of calls
+   */
+  public long getCalls() {
+    return calls.sum();
+  }
+
+  /**
+   * Return the total length of tokenized inputs since the last publish.
+   *
+   * @return number of chars
+   */
+  public long getInputChars() {
+    return inputChars.sum();
+  }
+
+  /**
+   * Return the number of emitted tokens since the last publish.
+   *
+   * @return number of tokens
+   */
+  public long getTokens() {
+    return tokens.sum();
+  }
+
+  /**
+   * Return the number of calls of the fallback tokenizer for given language since the last publish.
+   *
+   * @param language language of inputs
+   * @return number of calls
+   */
+  public long getFallbacks(Language language) {
+    LongAdder counter = fallbacks.get(language);
+    return counter != null ? counter.sum() : 0;
+  }
+
+  /**
+   * Return the number of calls tokenized by the ASCII fast path since the last publish.
+   *
+   * @return number of calls
+   */
+  public long getAsciiCalls() {
+    return asciiCalls.sum();
+  }
+
+  /**
+   * Return the number of failed normalizations since the last publish.
+   *
+   * @return number of failures
+   */
+  public long getNormalizeFallbacks() {
+    return normalizeFallbacks.sum();
+  }
+
+  /**
+   * Discard counters and latencies recorded so far.
+   */
+  synchronized void reset() {
+    calls.reset();
+    inputChars.reset();
+    tokens.reset();
+    tokenizeLatency.snapshotAndReset();
+    streamingLatency.snapshotAndReset();
+    fallbacks.values().forEach(LongAdder::reset);
+    asciiCalls.reset();
+    normalizeLatency.snapshotAndReset();
+    normalizeFallbacks.reset();
+  }
+
+  /**
+   * Report counters and latencies recorded since the previous call to given metric.
+   *
+   * @param metric Vespa's metric
+   */
+  public synchronized void publish(Metric metric) {
+    if (metric != contextOwner) {
+      languageContexts.clear();
+      contextOwner = metric;
+    }
+
+    metric.add(PREFIX + "tokenize.calls", calls.sumThenReset(), null);
+    metric.add(PREFIX + "tokenize.input_chars", inputChars.sumThenReset(), null);
+    metric.add(PREFIX + "tokenize.tokens", tokens.sumThenReset(), null);
+    publishLatency(metric, PREFIX + "tokenize.latency", tokenizeLatency.snapshotAndReset());
+    publishLatency(metric, PREFIX + "tokenize.streaming.latency", streamingLatency.snapshotAndReset());
+    for (Map.Entry<Language, LongAdder> entry : fallbacks.entrySet()) {
+      Metric.Context context = languageContexts.computeIfAbsent(entry.getKey(), language -> metric.createContext(
+          Collections.singletonMap("language", language.languageCode())));
+      metric.add(PREFIX + "tokenize.fallback", entry.getValue().sumThenReset(), context);
+    }
+    metric.add(PREFIX + "tokenize.ascii", asciiCalls.sumThenReset(), null);
+
+    publishLatency(metric, PREFIX + "normalize.latency", normalizeLatency.snapshotAndReset());
+    metric.add(PREFIX + "normalize.fallback", normalizeFallbacks.sumThenReset(), null);
+  }
+
+  private static void publishLatency(Metric metric, String name, LatencyHistogram.Snapshot snapshot) {
+    if (snapshot.getCount() == 0) {
+      return;
+    }
+    metric.set(name + ".p50", toMillis(snapshot.getPercentile(50)), null);
+    metric.set(name + ".p99", toMillis(snapshot.getPercentile(99)), null);
+    metric.set(name + ".max", toMillis(snapshot.getMax()), null);
+  }
+
+  private static double toMillis(long nanos) {
+    return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+  }
+
+}
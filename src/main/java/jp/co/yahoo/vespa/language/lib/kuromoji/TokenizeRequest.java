@@ -0,0 +1,79 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.process.StemMode;
+
+import java.util.Objects;
+
+/**
+ * Arguments of {@link com.yahoo.language.process.Tokenizer#tokenize(String, Language, StemMode, boolean)}.
+ *
+ * <p>Two requests are equal when all of the arguments are equal, so this can be used as a key of
+ * {@link TokenizeCache}.
+ */
+public final class TokenizeRequest {
+
+  private final String input;
+  private final Language language;
+  private final StemMode stemMode;
+  private final boolean removeAccents;
+
+  private final int hash;
+
+  /**
+   * Create TokenizeRequest.
+   */
+  public TokenizeRequest(String input, Language language, StemMode stemMode, boolean removeAccents) {
+    this.input = Objects.requireNonNull(input, "input");
+    this.language = language;
+    this.stemMode = stemMode;
+    this.removeAccents = removeAccents;
+    this.hash = Objects.hash(input, language, stemMode, removeAccents);
+  }
+
+  public String getInput() {
+    return input;
+  }
+
+  public Language getLanguage() {
+    return language;
+  }
+
+  public StemMode getStemMode() {
+    return stemMode;
+  }
+
+  public boolean isRemoveAccents() {
+    return removeAccents;
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof TokenizeRequest)) {
+      return false;
+    }
+    TokenizeRequest rhs = (TokenizeRequest) obj;
+    return hash == rhs.hash && removeAccents == rhs.removeAccents && language == rhs.language
+           && stemMode == rhs.stemMode && input.equals(rhs.input);
+  }
+
+  @Override
+  public String toString() {
+    return "TokenizeRequest{input='" + input + "', language=" + language + ", stemMode=" + stemMode
+           + ", removeAccents=" + removeAccents + "}";
+  }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Two-level lookup table from BMP code points to small values.
+ *
+ * <p>BMP is divided into blocks of 128 code points and identical blocks are shared,
+ * so the table of Japanese-related properties fits in a few KB.
+ */
+final class CodePointTable {
+
+  private static final int SHIFT = 7;
+  private static final int BLOCK_SIZE = 1 << SHIFT;
+  private static final int MASK = BLOCK_SIZE - 1;
+  private static final int BMP_SIZE = Character.MAX_VALUE + 1;
+
+  // block number => offset of the block in values
+  private final int[] blocks = new int[BMP_SIZE >> SHIFT];
+  private final byte[] values;
+
+  /**
+   * Build table with values calculated by given function.
+   *
+   * @param function function from code point to value (0 to 127)
+   */
+  CodePointTable(IntUnaryOperator function) {
+    Map<List<Byte>, Integer> offsets = new HashMap<>();
+    byte[] buffer = new byte[BMP_SIZE];
+    int length = 0;
+    for (int block = 0; block < blocks.length; ++block) {
+      Byte[] entries = new Byte[BLOCK_SIZE];
+      for (int i = 0; i < BLOCK_SIZE; ++i) {
+        int value = function.applyAsInt((block << SHIFT) | i);
+        if (value < 0 || value > Byte.MAX_VALUE) {
+          throw new IllegalArgumentException("value out of range: " + value);
+        }
+        entries[i] = (byte) value;
+      }
+
+      Integer offset = offsets.get(Arrays.asList(entries));
+      if (offset == null) {
+        offset = length;
+        for (Byte entry : entries) {
+          buffer[length++] = entry;
+        }
+        offsets.put(Arrays.asList(entries), offset);
+      }
+      blocks[block] = offset;
+    }
+    values = Arrays.copyOf(buffer, length);
+  }
+
+  /**
+   * Return value of given BMP code point.
+   *
+   * @param c BMP code point
+   * @return value of the code point
+   */
+  int get(char c) {
+    return values[blocks[c >> SHIFT] + (c & MASK)];
+  }
+}
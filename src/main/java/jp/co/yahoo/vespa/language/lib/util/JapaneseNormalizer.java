@@ -5,12 +5,11 @@
  */
 package jp.co.yahoo.vespa.language.lib.util;
 
-import com.yahoo.language.Language;
 import com.yahoo.language.LinguisticsCase;
 import jp.co.yahoo.vespa.language.lib.exception.NormalizationException;
 
 import java.text.Normalizer;
-import java.util.regex.Pattern;
+import java.util.Arrays;
 
 /**
  * Normalize utilities for Japanese text.
@@ -19,7 +18,27 @@ public class JapaneseNormalizer {
 
   public static final int MAX_SUB_LENGTH = 255;
 
-  private final static Pattern pattern = Pattern.compile("\\p{InCombiningDiacriticalMarks}+");
+  private static final int BMP_SIZE = Character.MAX_VALUE + 1;
+
+  // buffers larger than this are not kept by threads after normalization
+  private static final int MAX_RETAINED_BUFFER_LENGTH = 1 << 16;
+
+  // normalization of each BMP character standing alone, or null if it is kept as it is
+  private static final String[] replacements = new String[BMP_SIZE];
+  // same with lower casing
+  private static final String[] replacementsIgnoreCase = new String[BMP_SIZE];
+
+  private static final ThreadLocal<Buffer> buffers = ThreadLocal.withInitial(Buffer::new);
+
+  static {
+    for (int c = 0; c < BMP_SIZE; ++c) {
+      String s = String.valueOf((char) c);
+      String norm = normalize(s, false);
+      replacements[c] = s.equals(norm) ? null : norm;
+      String normIgnoreCase = normalize(s, true);
+      replacementsIgnoreCase[c] = s.equals(normIgnoreCase) ? null : normIgnoreCase;
+    }
+  }
 
   public static class Result {
     public final String norm;
@@ -31,6 +50,11 @@ public class JapaneseNormalizer {
       this.origIndexes = new int[norm.length() + 1];
     }
 
+    private Result(String norm, int[] origIndexes) {
+      this.norm = norm;
+      this.origIndexes = origIndexes;
+    }
+
     /**
      * Reset indexes.
      */
@@ -41,8 +65,57 @@ public class JapaneseNormalizer {
     }
   }
 
+  /**
+   * Per-thread working area of normalization.
+   */
+  private static class Buffer {
+    private char[] chars = new char[256];
+    private int[] indexes = new int[257];
+    private int length = 0;
+
+    void append(char c, int origIndex) {
+      ensureCapacity(length + 1);
+      chars[length] = c;
+      indexes[length] = origIndex;
+      ++length;
+    }
+
+    void ensureCapacity(int capacity) {
+      if (capacity + 1 > indexes.length) {
+        int newLength = Math.max(capacity + 1, indexes.length * 2);
+        chars = Arrays.copyOf(chars, newLength);
+        indexes = Arrays.copyOf(indexes, newLength);
+      }
+    }
+
+    void release() {
+      length = 0;
+      if (indexes.length > MAX_RETAINED_BUFFER_LENGTH) {
+        chars = new char[256];
+        indexes = new int[257];
+      }
+    }
+  }
+
   public static String accentDrop(String input) {
-    return pattern.matcher(Normalizer.normalize(input, Normalizer.Form.NFD)).replaceAll("");
+    String nfd = Normalizer.normalize(input, Normalizer.Form.NFD);
+    int i = 0;
+    while (i < nfd.length() && !isCombiningDiacriticalMark(nfd.charAt(i))) {
+      ++i;
+    }
+    if (i == nfd.length()) {
+      return nfd;
+    }
+
+    StringBuilder builder = new StringBuilder(nfd.length());
+    builder.append(nfd, 0, i);
+    for (; i < nfd.length(); ++i) {
+      char c = nfd.charAt(i);
+      if (!isCombiningDiacriticalMark(c)) {
+        builder.append(c);
+      }
+    }
+    return builder.toString();
   }
 
   /**
@@ -62,83 +135,158 @@ public class JapaneseNormalizer {
     return normalizeByNFKC(input, false);
   }
 
-    /**
-     * NFKC normalization with orig<=>norm validation.
-     *
-     * <p>This method normalizes input text and also
-     * checks index mapping between original and normalized text.
-     *
-     * <p>With check, this method considers Japanese half-mark sound,
-     * i.e., HANKAKU KATAKANA.
-     *
-     * @param input target text
-     * @param isIgnoreCase whether case is ignored or not
-     * @return normalization result as {@link Result} object
-     * @throws NormalizationException thrown when normalization failed, mostly by some validation issues.
-     */
+  /**
+   * NFKC normalization with orig<=>norm validation.
+   *
+   * <p>This method normalizes input text and also
+   * checks index mapping between original and normalized text.
+   *
+   * <p>With check, this method considers Japanese half-mark sound,
+   * i.e., HANKAKU KATAKANA.
+   *
+   * <p>Input is processed in a single pass. Each character and its following
+   * combining marks are normalized together, and the normalized characters
+   * are mapped to the head of them. A BMP character without combining marks,
+   * e.g. half-width katakana or full-width alphanumerics, is copied or replaced
+   * by a precomputed normalization without creating intermediate strings.
+   *
+   * @param input target text
+   * @param isIgnoreCase whether case is ignored or not
+   * @return normalization result as {@link Result} object
+   * @throws NormalizationException thrown when normalization failed, mostly by some validation issues.
+   */
   public static Result normalizeByNFKC(String input, boolean isIgnoreCase) throws NormalizationException {
-    String norm = isIgnoreCase ? LinguisticsCase.toLowerCase(input) : input;
-    norm = accentDrop(norm);
-    norm = java.text.Normalizer.normalize(norm, java.text.Normalizer.Form.NFKC);
-    Result result = new Result(norm);
+    String[] table = isIgnoreCase ? replacementsIgnoreCase : replacements;
+    Buffer buffer = buffers.get();
+    try {
+      boolean changed = false;
+      int ri = 0;
+      while (ri < input.length()) {
+        char c = input.charAt(ri);
+        int next = ri + 1;
+        if (next < input.length() && Character.isSurrogatePair(c, input.charAt(next))) {
+          ++next;
+        }
+        int end = next;
+        while (end < input.length()) {
+          int cp = input.codePointAt(end);
+          if (!isExtending(cp)) {
+            break;
+          }
+          end += Character.charCount(cp);
+        }
+
+        // fast path: a character which is not combined with its neighbours
+        if (end == ri + 1) {
+          String replacement = table[c];
+          if (replacement == null) {
+            buffer.append(c, ri);
+          } else {
+            buffer.ensureCapacity(buffer.length + replacement.length());
+            for (int i = 0; i < replacement.length(); ++i) {
+              buffer.append(replacement.charAt(i), ri);
+            }
+            changed = true;
+          }
+          ri = end;
+          continue;
+        }
+
+        if (end - ri > MAX_SUB_LENGTH) {
+          throw new NormalizationException(
+              String.format("exceed original length during validation: \"%s\"", input));
+        }
+
+        String sub = input.substring(ri, end);
+        String subNorm = normalize(sub, isIgnoreCase);
+        boolean same = sub.equals(subNorm);
+        buffer.ensureCapacity(buffer.length + subNorm.length());
+        if (same || end == next) {
+          for (int i = 0; i < subNorm.length(); ++i) {
+            // save norm=>orig correspondence
+            buffer.append(subNorm.charAt(i), same ? ri + i : ri);
+          }
+        } else {
+          align(input, ri, end, subNorm, isIgnoreCase, buffer);
+        }
+        changed |= !same;
+        ri = end;
+      }
 
-    // check gaps between raw and norm input by site-by-side check
-    int ri = 0, ni = 0;
-    while (ri < input.length() && ni < norm.length()) {
-      int rc = Character.codePointAt(input, ri);
-      int nc = Character.codePointAt(norm, ni);
+      String norm = changed ? new String(buffer.chars, 0, buffer.length) : input;
+      // guard
+      buffer.indexes[buffer.length] = input.length();
+      return new Result(norm, Arrays.copyOf(buffer.indexes, buffer.length + 1));
+    } finally {
+      buffer.release();
+    }
+  }
 
-      if (rc == nc) {
-        result.origIndexes[ni] = ri;
+  /**
+   * Map normalized characters of a character with combining marks to original ones.
+   *
+   * <p>Marks which are not composed with the preceding character keep their own indexes.
+   */
+  private static void align(String input, int begin, int end, String norm, boolean isIgnoreCase, Buffer buffer) {
+    int ri = begin, ni = 0;
+    while (ri < end && ni < norm.length()) {
+      if (Character.codePointAt(input, ri) == Character.codePointAt(norm, ni)) {
+        buffer.append(norm.charAt(ni), ri);
         ++ri;
         ++ni;
         continue;
       }
 
+      // find the shortest original characters which correspond to normalized ones
+      String subNorm = null;
       int rl = 0;
-      String subNorm;
-      do {
-        // increment length
+      while (ri + rl < end) {
         ++rl;
-
-        // exceed input
-        if (ri + rl > input.length() || rl > MAX_SUB_LENGTH) {
-          throw new NormalizationException(
-              String.format("exceed original length during validation: \"%s\" => \"%s\"", input, norm));
-        }
-
-        // normalize sub string
-        subNorm = input.substring(ri, ri + rl);
-        subNorm = isIgnoreCase ? LinguisticsCase.toLowerCase(subNorm) : subNorm;
-        subNorm = accentDrop(subNorm);
-        subNorm = java.text.Normalizer.normalize(subNorm, java.text.Normalizer.Form.NFKC);
-
-        // exceed norm
-        if (ni + subNorm.length() > norm.length()) {
-          throw new NormalizationException(
-              String.format("exceed normalied length during validation: \"%s\" => \"%s\"", input, norm));
-        }
-      } while (!subNorm.equals(norm.substring(ni, ni + subNorm.length())));
-
-      if (subNorm.equals(norm.substring(ni, ni + subNorm.length()))) {
-        // save norm=>orig correspondence
-        for (int i = 0; i < subNorm.length(); ++i) {
-          result.origIndexes[ni + i] = ri;
+        String candidate = normalize(input.substring(ri, ri + rl), isIgnoreCase);
+        if (norm.startsWith(candidate, ni)) {
+          subNorm = candidate;
+          break;
         }
-        ri += rl;
-        ni += subNorm.length();
       }
+      if (subNorm == null) {
+        break;
+      }
+      for (int i = 0; i < subNorm.length(); ++i) {
+        buffer.append(subNorm.charAt(i), ri);
+      }
+      ri += rl;
+      ni += subNorm.length();
     }
 
-    if (ri != input.length() || ni != norm.length()) {
-      throw new NormalizationException(
-          String.format("characters remain or exceed after termination [%d:%d]: \"%s\" => \"%s\"", input.length() - ri,
-                        norm.length() - ni, input, norm));
+    // rest of characters are composed, map them to the head
+    for (; ni < norm.length(); ++ni) {
+      buffer.append(norm.charAt(ni), ri < end ? ri : begin);
     }
+  }
+
+  private static String normalize(String input, boolean isIgnoreCase) {
+    String norm = isIgnoreCase ? LinguisticsCase.toLowerCase(input) : input;
+    norm = accentDrop(norm);
+    return Normalizer.normalize(norm, Normalizer.Form.NFKC);
+  }
 
-    // guard
-    result.origIndexes[ni] = ri;
+  /**
+   * Whether given code point is combined with the preceding character.
+   */
+  private static boolean isExtending(int codePoint) {
+    switch (Character.getType(codePoint)) {
+      case Character.NON_SPACING_MARK:
+      case Character.COMBINING_SPACING_MARK:
+      case Character.ENCLOSING_MARK:
+        return true;
+      default:
+        // HALFWIDTH KATAKANA VOICED/SEMI-VOICED SOUND MARK and Hangul medial/final jamo
+        return codePoint == '\uFF9E' || codePoint == '\uFF9F' || (codePoint >= '\u1160' && codePoint <= '\u11FF');
+    }
+  }
 
-    return result;
+  private static boolean isCombiningDiacriticalMark(char c) {
+    // same as \p{InCombiningDiacriticalMarks}
+    return c >= '\u0300' && c <= '\u036F';
   }
 }
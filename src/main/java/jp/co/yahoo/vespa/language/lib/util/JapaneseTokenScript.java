@@ -8,12 +8,18 @@ package jp.co.yahoo.vespa.language.lib.util;
 import com.yahoo.language.process.TokenScript;
 
 import java.lang.Character.UnicodeBlock;
+import java.lang.Character.UnicodeScript;
 
 /**
  * TokenScript converter for Japanese character.
  */
 public class JapaneseTokenScript {
 
+  private static final TokenScript[] scripts = TokenScript.values();
+
+  // precomputed scripts of BMP
+  private static final CodePointTable table = new CodePointTable(c -> scriptOf(c).ordinal());
+
   /**
    * Check and return corresponding TokenScript of given UTF-8 codePoint.
    *
@@ -21,17 +27,34 @@ public class JapaneseTokenScript {
    * @return {@link TokenScript} of given codePoint
    */
   public static TokenScript valueOf(int codePoint) {
+    if (Character.isBmpCodePoint(codePoint)) {
+      return scripts[table.get((char) codePoint)];
+    }
+    return scriptOf(codePoint);
+  }
+
+  private static TokenScript scriptOf(int codePoint) {
     UnicodeBlock block = UnicodeBlock.of(codePoint);
 
     if (block == UnicodeBlock.HIRAGANA) {
       return TokenScript.HIRAGANA;
-    } else if (block == UnicodeBlock.KATAKANA) {
+    } else if (block == UnicodeBlock.KATAKANA || block == UnicodeBlock.KATAKANA_PHONETIC_EXTENSIONS) {
       return TokenScript.KATAKANA;
     } else if (block == UnicodeBlock.BASIC_LATIN) {
       return TokenScript.ASCII;
+    } else if (block == UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS) {
+      if (codePoint >= '\uFF01' && codePoint <= '\uFF5E') {
+        // FULLWIDTH forms of ASCII
+        return TokenScript.ASCII;
+      } else if (codePoint >= '\uFF65' && codePoint <= '\uFF9F') {
+        // HALFWIDTH KATAKANA
+        return TokenScript.KATAKANA;
+      }
+    } else if (UnicodeScript.of(codePoint) == UnicodeScript.HAN) {
+      // Kanji, including CJK extensions and compatibility ideographs
+      return TokenScript.HAN;
     }
 
-    // XXX: what script should we return with Kanji ?
     return TokenScript.UNKNOWN;
   }
 }
@@ -12,6 +12,11 @@ import com.yahoo.language.process.TokenType;
  */
 public class JapaneseTokenType {
 
+  private static final TokenType[] types = TokenType.values();
+
+  // precomputed types of BMP
+  private static final CodePointTable table = new CodePointTable(c -> typeOf(c).ordinal());
+
   /**
    * Check and return corresponding TokenType of given UTF-8 codePoint.
    *
@@ -20,6 +25,13 @@ public class JapaneseTokenType {
    * @see com.yahoo.language.simple.SimpleTokenType
    */
   public static TokenType valueOf(int codePoint) {
+    if (Character.isBmpCodePoint(codePoint)) {
+      return types[table.get((char) codePoint)];
+    }
+    return typeOf(codePoint);
+  }
+
+  private static TokenType typeOf(int codePoint) {
     switch (Character.getType(codePoint)) {
       case Character.NON_SPACING_MARK:
         // "combining grave accent"
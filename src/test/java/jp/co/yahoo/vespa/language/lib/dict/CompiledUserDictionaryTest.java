@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.dict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.atilika.kuromoji.dict.UserDictionary;
+import com.atilika.kuromoji.dict.UserDictionary.UserDictionaryMatch;
+
+public class CompiledUserDictionaryTest {
+
+    private static final String CSV = "# comment\n"
+                                      + "東京タワー,東京タワー,トウキョウタワー,カスタム名詞\n"
+                                      + "東京スカイツリー,東京スカイツリー,トウキョウスカイツリー,カスタム名詞\n"
+                                      + "すもももも,すも もも も,スモ モモ モ,カスタム名詞\n"
+                                      + "東京,東京,トーキョー,地名\n"
+                                      + "東京,東京,トウキョウ,地名 # overwritten\n";
+
+    private static UserDictionary kuromoji(String csv) throws Exception {
+        return new UserDictionary(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), 9, 7, 0);
+    }
+
+    private static UserDictionary compiled(String csv) throws Exception {
+        UserDictionaryCompiler compiler = new UserDictionaryCompiler().read(new StringReader(csv));
+        return CompiledUserDictionary.of(Collections.singletonList(compiler.compile()));
+    }
+
+    private static void assertSameMatches(UserDictionary expected, UserDictionary actual, String text) {
+        List<UserDictionaryMatch> expectedMatches = expected.findUserDictionaryMatches(text);
+        List<UserDictionaryMatch> actualMatches = actual.findUserDictionaryMatches(text);
+        assertEquals(text, expectedMatches.size(), actualMatches.size());
+        for (int i = 0; i < expectedMatches.size(); ++i) {
+            UserDictionaryMatch e = expectedMatches.get(i);
+            UserDictionaryMatch a = actualMatches.get(i);
+            assertEquals(text, e.getWordId(), a.getWordId());
+            assertEquals(text, e.getMatchStartIndex(), a.getMatchStartIndex());
+            assertEquals(text, e.getMatchLength(), a.getMatchLength());
+            assertEquals(text, expected.getAllFeatures(e.getWordId()), actual.getAllFeatures(a.getWordId()));
+            for (int field = 0; field < 9; ++field) {
+                assertEquals(text, expected.getFeature(e.getWordId(), field), actual.getFeature(a.getWordId(), field));
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsKuromoji() throws Exception {
+        UserDictionary expected = kuromoji(CSV);
+        UserDictionary actual = compiled(CSV);
+        for (String text : new String[]{"東京タワーに行く", "東京スカイツリーと東京タワー", "すもももももももものうち",
+                                        "東京タワ", "東京", "京都", ""}) {
+            assertSameMatches(expected, actual, text);
+        }
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        Random random = new Random(0);
+        String alphabet = "あいうアイ東京";
+        StringBuilder csv = new StringBuilder();
+        for (int i = 0; i < 200; ++i) {
+            String surface = randomString(random, alphabet, 1 + random.nextInt(4));
+            csv.append(String.join(",", surface, surface, "ヨミ" + i, "品詞" + (i % 3))).append("\n");
+        }
+        UserDictionary expected = kuromoji(csv.toString());
+        UserDictionary actual = compiled(csv.toString());
+        for (int i = 0; i < 500; ++i) {
+            assertSameMatches(expected, actual, randomString(random, alphabet, random.nextInt(20)));
+        }
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return builder.toString();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testReadOnly() throws Exception {
+        compiled(CSV).read(new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void testOverlay() throws Exception {
+        UserDictionaryCompiler base = new UserDictionaryCompiler().read(new StringReader(CSV));
+        UserDictionaryCompiler overlay = new UserDictionaryCompiler().addSpecialToken("東京").addSpecialToken("c++");
+        List<java.nio.ByteBuffer> buffers = new ArrayList<>();
+        buffers.add(base.compile());
+        buffers.add(overlay.compile());
+        UserDictionary actual = CompiledUserDictionary.of(buffers);
+
+        UserDictionary expected = kuromoji(CSV + "東京,東京,東京,SpecialToken\nc++,c++,c++,SpecialToken\n");
+        for (String text : new String[]{"東京タワーに行く", "東京に行く", "c++とjava"}) {
+            assertSameMatches(expected, actual, text);
+        }
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        File csv = File.createTempFile("user_dict", ".csv");
+        File bin = File.createTempFile("user_dict", ".bin");
+        csv.deleteOnExit();
+        bin.deleteOnExit();
+        Files.write(csv.toPath(), CSV.getBytes(StandardCharsets.UTF_8));
+
+        UserDictionaryCompiler.main(new String[]{csv.getPath(), bin.getPath()});
+        Path path = bin.toPath();
+        assertTrue(CompiledUserDictionary.isCompiled(path));
+        assertFalse(CompiledUserDictionary.isCompiled(csv.toPath()));
+
+        UserDictionary actual = CompiledUserDictionary.of(Collections.singletonList(CompiledUserDictionary.map(path)));
+        assertSameMatches(kuromoji(CSV), actual, "東京スカイツリーと東京タワー");
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.dict;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.atilika.kuromoji.TokenizerBase;
+import com.atilika.kuromoji.dict.ConnectionCosts;
+import com.atilika.kuromoji.dict.TokenInfoDictionary;
+import com.atilika.kuromoji.ipadic.Token;
+import com.atilika.kuromoji.ipadic.Tokenizer;
+import com.atilika.kuromoji.trie.DoubleArrayTrie;
+import com.atilika.kuromoji.util.ResourceResolver;
+import com.atilika.kuromoji.util.SimpleResourceResolver;
+
+import jp.co.yahoo.vespa.language.lib.kuromoji.KuromojiDictionaries;
+
+public class MappedSystemDictionaryTest {
+
+    private static final String TEXT = "東京都に住んでいる。ソフトウェアエンジニアです、よろしくお願いします。"
+                                       + "すもももももももものうち。iPhone 15 Pro Maxのケース、手帳型で2,980円！";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSameAsKuromoji() throws Exception {
+        ResourceResolver resolver = new SimpleResourceResolver(Tokenizer.class);
+        DoubleArrayTrie expectedTrie = DoubleArrayTrie.newInstance(resolver);
+        TokenInfoDictionary expectedDictionary = TokenInfoDictionary.newInstance(resolver);
+        ConnectionCosts expectedCosts = ConnectionCosts.newInstance(resolver);
+
+        MappedSystemDictionary mapped = MappedSystemDictionary.open(folder.getRoot().toPath());
+        DoubleArrayTrie trie = mapped.getDoubleArrayTrie();
+        TokenInfoDictionary dictionary = mapped.getTokenInfoDictionary();
+
+        int found = 0;
+        for (int start = 0; start < TEXT.length(); ++start) {
+            for (int end = start + 1; end <= TEXT.length(); ++end) {
+                String key = TEXT.substring(start, end);
+                int id = expectedTrie.lookup(key, 0, 0);
+                assertEquals(key, id, trie.lookup(key, 0, 0));
+                if (id <= 0) {
+                    continue;
+                }
+                ++found;
+                int[] wordIds = expectedDictionary.lookupWordIds(id);
+                assertArrayEquals(key, wordIds, dictionary.lookupWordIds(id));
+                for (int wordId : wordIds) {
+                    assertEquals(key, expectedDictionary.getLeftId(wordId), dictionary.getLeftId(wordId));
+                    assertEquals(key, expectedDictionary.getRightId(wordId), dictionary.getRightId(wordId));
+                    assertEquals(key, expectedDictionary.getWordCost(wordId), dictionary.getWordCost(wordId));
+                    assertEquals(key, expectedDictionary.getAllFeatures(wordId), dictionary.getAllFeatures(wordId));
+                    for (int field = 0; field < 9; ++field) {
+                        assertEquals(key, expectedDictionary.getFeature(wordId, field),
+                                     dictionary.getFeature(wordId, field));
+                    }
+                    assertEquals(key, expectedDictionary.getFeature(wordId, 0, 6, 7),
+                                 dictionary.getFeature(wordId, 0, 6, 7));
+                }
+            }
+        }
+        assertTrue(found > 0);
+
+        Random random = new Random(0);
+        ConnectionCosts costs = mapped.getConnectionCosts();
+        for (int i = 0; i < 10000; ++i) {
+            int forwardId = random.nextInt(1316);
+            int backwardId = random.nextInt(1316);
+            assertEquals(expectedCosts.get(forwardId, backwardId), costs.get(forwardId, backwardId));
+        }
+    }
+
+    @Test
+    public void testTokenize() throws Exception {
+        MappedSystemDictionary mapped = MappedSystemDictionary.open(folder.getRoot().toPath());
+        List<Token> expected = new Tokenizer().tokenize(TEXT);
+        List<Token> actual = KuromojiDictionaries.load(false, null, mapped)
+                .newTokenizer(TokenizerBase.Mode.SEARCH).tokenize(TEXT);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i).getSurface(), actual.get(i).getSurface());
+            assertEquals(expected.get(i).getPosition(), actual.get(i).getPosition());
+            assertEquals(expected.get(i).getAllFeatures(), actual.get(i).getAllFeatures());
+        }
+    }
+
+    @Test
+    public void testExtractOnce() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("ipadic");
+        MappedSystemDictionary.extract(directory);
+        Path trie = directory.resolve(DoubleArrayTrie.DOUBLE_ARRAY_TRIE_FILENAME);
+        long modified = Files.getLastModifiedTime(trie).toMillis();
+        MappedSystemDictionary.extract(directory);
+        assertEquals(modified, Files.getLastModifiedTime(trie).toMillis());
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(6, files.count());
+        }
+    }
+
+    @Test
+    public void testReplaceModifiedFile() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("ipadic");
+        MappedSystemDictionary.extract(directory);
+        Path costs = directory.resolve(ConnectionCosts.CONNECTION_COSTS_FILENAME);
+        byte[] expected = Files.readAllBytes(costs);
+        byte[] modified = expected.clone();
+        modified[modified.length - 1] ^= 1;
+        Files.write(costs, modified);
+
+        ConnectionCosts mapped = MappedSystemDictionary.open(directory).getConnectionCosts();
+        assertArrayEquals(expected, Files.readAllBytes(costs));
+        ConnectionCosts expectedCosts = ConnectionCosts.newInstance(new SimpleResourceResolver(Tokenizer.class));
+        assertEquals(expectedCosts.get(1315, 1315), mapped.get(1315, 1315));
+    }
+
+    @Test
+    public void testOwnerOnlyDirectory() throws Exception {
+        Path directory = folder.getRoot().toPath().resolve("ipadic");
+        Assume.assumeTrue(directory.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        MappedSystemDictionary.extract(directory);
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory);
+        assertFalse(permissions.contains(PosixFilePermission.GROUP_WRITE));
+        assertFalse(permissions.contains(PosixFilePermission.OTHERS_WRITE));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.dict;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import jp.co.yahoo.vespa.language.lib.dict.SpecialTokenMatcher.Match;
+
+public class SpecialTokenMatcherTest {
+
+    private static SpecialTokenMatcher matcher(String... tokens) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (String token : tokens) {
+            map.put(token, "");
+        }
+        return SpecialTokenMatcher.of(map);
+    }
+
+    private static List<String> matches(SpecialTokenMatcher matcher, String text) {
+        List<String> result = new ArrayList<>();
+        for (Match match : matcher.match(text, 0, text.length())) {
+            assertEquals(match.getToken(), text.substring(match.getStart(), match.getEnd()));
+            result.add(match.getStart() + ":" + match.getToken());
+        }
+        return result;
+    }
+
+    @Test
+    public void testMatch() {
+        SpecialTokenMatcher matcher = matcher("he", "she", "his", "hers", "c++", "c", "c#");
+        assertEquals(7, matcher.size());
+        assertEquals(List.of("1:she"), matches(matcher, "ushers"));
+        assertEquals(List.of("0:his", "4:hers"), matches(matcher, "his hers"));
+        assertEquals(List.of("0:c++", "4:c", "6:c#"), matches(matcher, "c++ c c#"));
+        assertEquals(List.of("0:c++", "3:c++"), matches(matcher, "c++c++"));
+        assertEquals(Collections.emptyList(), matches(matcher, "xyz"));
+        assertEquals(Collections.emptyList(), matches(matcher(), "he"));
+        assertEquals(Collections.emptyList(), matches(matcher(""), "he"));
+    }
+
+    @Test
+    public void testRange() {
+        SpecialTokenMatcher matcher = matcher("abc", "bc");
+        List<Match> matches = matcher.match("xabcx", 2, 5);
+        assertEquals(1, matches.size());
+        assertEquals(2, matches.get(0).getStart());
+        assertEquals("bc", matches.get(0).getToken());
+    }
+
+    @Test
+    public void testReplacement() {
+        Map<String, String> map = new LinkedHashMap<>();
+        map.put("c++", "cplusplus");
+        map.put("c", "");
+        SpecialTokenMatcher matcher = SpecialTokenMatcher.of(map);
+        assertEquals("cplusplus", matcher.getReplacement("c++"));
+        assertEquals("", matcher.getReplacement("c"));
+        assertNull(matcher.getReplacement("c+"));
+        assertNull(matcher.getReplacement("c+++"));
+        assertEquals("cplusplus", matcher.match("c++", 0, 3).get(0).getReplacement());
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(0);
+        for (int n = 0; n < 100; ++n) {
+            List<String> tokens = new ArrayList<>();
+            for (int i = 0, size = 1 + random.nextInt(20); i < size; ++i) {
+                tokens.add(randomString(random, 1 + random.nextInt(4)));
+            }
+            SpecialTokenMatcher matcher = matcher(tokens.toArray(new String[0]));
+            String text = randomString(random, 200);
+
+            // leftmost, then longest
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < text.length(); ) {
+                String longest = null;
+                for (String token : tokens) {
+                    if (text.startsWith(token, i) && (longest == null || longest.length() < token.length())) {
+                        longest = token;
+                    }
+                }
+                if (longest == null) {
+                    ++i;
+                } else {
+                    expected.add(i + ":" + longest);
+                    i += longest.length();
+                }
+            }
+            assertEquals(tokens.toString(), expected, matches(matcher, text));
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            builder.append("abcあい".charAt(random.nextInt(5)));
+        }
+        return builder.toString();
+    }
+}
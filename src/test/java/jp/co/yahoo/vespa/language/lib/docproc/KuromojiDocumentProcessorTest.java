@@ -0,0 +1,218 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.docproc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.yahoo.docproc.DocumentProcessor;
+import com.yahoo.docproc.Processing;
+import com.yahoo.document.DataType;
+import com.yahoo.document.Document;
+import com.yahoo.document.DocumentPut;
+import com.yahoo.document.DocumentType;
+import com.yahoo.document.annotation.Annotation;
+import com.yahoo.document.annotation.AnnotationTypes;
+import com.yahoo.document.annotation.Span;
+import com.yahoo.document.annotation.SpanTree;
+import com.yahoo.document.annotation.SpanTrees;
+import com.yahoo.document.datatypes.Array;
+import com.yahoo.document.datatypes.StringFieldValue;
+import com.yahoo.language.Language;
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.language.lib.kuromoji.KuromojiDocprocConfig;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+import jp.co.yahoo.vespa.language.lib.kuromoji.KuromojiLinguistics;
+
+public class KuromojiDocumentProcessorTest {
+
+    private static final DocumentType TYPE = new DocumentType("review");
+    private static KuromojiLinguistics linguistics;
+
+    static {
+        TYPE.addField("title", DataType.STRING);
+        TYPE.addField("body", DataType.STRING);
+        TYPE.addField("categories", DataType.getArray(DataType.STRING));
+        TYPE.addField("english", DataType.STRING);
+        TYPE.addField("rating", DataType.INT);
+        TYPE.addField("lang", DataType.STRING);
+    }
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        linguistics = new KuromojiLinguistics(new KuromojiConfig(new KuromojiConfig.Builder().batch(
+                new KuromojiConfig.Batch.Builder().parallelism(2))),
+                                              new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        linguistics.deconstruct();
+    }
+
+    @Test
+    public void testProcess() {
+        Document document = newDocument("id:test:review::1");
+        SpanTree annotated = new SpanTree(SpanTrees.LINGUISTICS);
+        annotated.spanList().span(0, 2).annotate(new Annotation(AnnotationTypes.TERM));
+        ((StringFieldValue) document.getFieldValue("body")).setSpanTree(annotated);
+
+        Processing processing = Processing.of(new DocumentPut(document));
+        processing.addDocumentOperation(new DocumentPut(newDocument("id:test:review::2")));
+        DocumentProcessor processor = new KuromojiDocumentProcessor(
+                linguistics, new KuromojiDocprocConfig(new KuromojiDocprocConfig.Builder()
+                                                               .fields(Arrays.asList("title", "body", "categories",
+                                                                                     "english", "rating"))));
+        assertSame(DocumentProcessor.Progress.DONE, processor.process(processing));
+
+        StringFieldValue body = (StringFieldValue) document.getFieldValue("body");
+        assertSame(annotated, body.getSpanTree(SpanTrees.LINGUISTICS));
+        assertNull(((StringFieldValue) document.getFieldValue("english")).getSpanTree(SpanTrees.LINGUISTICS));
+        for (int i = 0; i < 2; ++i) {
+            Document processed = ((DocumentPut) processing.getDocumentOperations().get(i)).getDocument();
+            assertTerms((StringFieldValue) processed.getFieldValue("title"));
+            for (Object category : (Array<?>) processed.getFieldValue("categories")) {
+                assertTerms((StringFieldValue) category);
+            }
+        }
+    }
+
+    @Test
+    public void testConfig() {
+        Document document = newDocument("id:test:review::1");
+        DocumentProcessor processor = new KuromojiDocumentProcessor(
+                linguistics, new KuromojiDocprocConfig(new KuromojiDocprocConfig.Builder()
+                                                               .fields("title").fields("english").language("ja")));
+        processor.process(Processing.of(new DocumentPut(document)));
+
+        assertTerms((StringFieldValue) document.getFieldValue("title"));
+        assertNotNull(((StringFieldValue) document.getFieldValue("english")).getSpanTree(SpanTrees.LINGUISTICS));
+        assertNull(((StringFieldValue) document.getFieldValue("body")).getSpanTree(SpanTrees.LINGUISTICS));
+        for (Object category : (Array<?>) document.getFieldValue("categories")) {
+            assertNull(((StringFieldValue) category).getSpanTree(SpanTrees.LINGUISTICS));
+        }
+    }
+
+    @Test
+    public void testNoFields() {
+        Document document = newDocument("id:test:review::1");
+        DocumentProcessor processor = new KuromojiDocumentProcessor(
+                linguistics, new KuromojiDocprocConfig(new KuromojiDocprocConfig.Builder()));
+        assertSame(DocumentProcessor.Progress.DONE, processor.process(Processing.of(new DocumentPut(document))));
+
+        assertNull(((StringFieldValue) document.getFieldValue("title")).getSpanTree(SpanTrees.LINGUISTICS));
+        assertNull(((StringFieldValue) document.getFieldValue("body")).getSpanTree(SpanTrees.LINGUISTICS));
+    }
+
+    // the language of the document is the same as set_language of indexing, which overrides detection
+    @Test
+    public void testLanguageField() {
+        Document japanese = newDocument("id:test:review::1");
+        japanese.setFieldValue("lang", new StringFieldValue("ja"));
+        Document english = newDocument("id:test:review::2");
+        english.setFieldValue("lang", new StringFieldValue("en"));
+        Document detected = newDocument("id:test:review::3");
+        Processing processing = Processing.of(new DocumentPut(japanese));
+        processing.addDocumentOperation(new DocumentPut(english));
+        processing.addDocumentOperation(new DocumentPut(detected));
+        DocumentProcessor processor = new KuromojiDocumentProcessor(
+                linguistics, new KuromojiDocprocConfig(new KuromojiDocprocConfig.Builder()
+                                                               .fields("title").fields("english")
+                                                               .language_field("lang")));
+        processor.process(processing);
+
+        assertTerms((StringFieldValue) japanese.getFieldValue("title"));
+        assertNotNull(((StringFieldValue) japanese.getFieldValue("english")).getSpanTree(SpanTrees.LINGUISTICS));
+        assertNull(((StringFieldValue) english.getFieldValue("title")).getSpanTree(SpanTrees.LINGUISTICS));
+        assertNull(((StringFieldValue) english.getFieldValue("english")).getSpanTree(SpanTrees.LINGUISTICS));
+        assertTerms((StringFieldValue) detected.getFieldValue("title"));
+        assertNull(((StringFieldValue) detected.getFieldValue("english")).getSpanTree(SpanTrees.LINGUISTICS));
+    }
+
+    // indexing annotates only components of a token which has them, so compounds and parts are siblings, and parts
+    // have the span of the compound so that they are at its position
+    @Test
+    public void testCompound() throws Exception {
+        KuromojiLinguistics compoundLinguistics = new KuromojiLinguistics(
+                new KuromojiConfig(new KuromojiConfig.Builder().mode("compound")),
+                new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+        try {
+            Document document = newDocument("id:test:review::1");
+            document.setFieldValue("title", new StringFieldValue("関西国際空港に行きました"));
+            DocumentProcessor processor = new KuromojiDocumentProcessor(
+                    compoundLinguistics, new KuromojiDocprocConfig(new KuromojiDocprocConfig.Builder()
+                                                                           .fields("title")));
+            processor.process(Processing.of(new DocumentPut(document)));
+
+            StringFieldValue title = (StringFieldValue) document.getFieldValue("title");
+            List<String> terms = terms(title);
+            assertEquals(Arrays.asList("0:関西国際空港", "0:関西", "0:国際", "0:空港", "6:に", "7:行く"),
+                         terms.subList(0, 6));
+            for (Annotation annotation : title.getSpanTree(SpanTrees.LINGUISTICS)) {
+                Span span = (Span) annotation.getSpanNode();
+                if (span.getFrom() == 0) {
+                    assertEquals(6, span.getLength());
+                }
+            }
+        } finally {
+            compoundLinguistics.deconstruct();
+        }
+    }
+
+    private static Document newDocument(String id) {
+        Document document = new Document(TYPE, id);
+        document.setFieldValue("title", new StringFieldValue("東京タワーに行きました"));
+        document.setFieldValue("body", new StringFieldValue("夜景がとても綺麗でした"));
+        Array<StringFieldValue> categories = new Array<>(DataType.getArray(DataType.STRING));
+        categories.add(new StringFieldValue("観光スポット"));
+        categories.add(new StringFieldValue("東京の展望台"));
+        document.setFieldValue("categories", categories);
+        document.setFieldValue("english", new StringFieldValue("This is an English review."));
+        return document;
+    }
+
+    // terms of the span tree are the same as tokenizing the value on the calling thread
+    private static void assertTerms(StringFieldValue value) {
+        List<String> actual = terms(value);
+
+        List<String> expected = new ArrayList<>();
+        for (Token token : linguistics.getTokenizer().tokenize(value.getString(), Language.JAPANESE, StemMode.BEST,
+                                                               true)) {
+            if (token.isIndexable()) {
+                expected.add(token.getOffset() + ":" + token.getTokenString());
+            }
+        }
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+    }
+
+    private static List<String> terms(StringFieldValue value) {
+        SpanTree tree = value.getSpanTree(SpanTrees.LINGUISTICS);
+        assertNotNull(value.getString(), tree);
+        List<String> terms = new ArrayList<>();
+        for (Annotation annotation : tree) {
+            Span span = (Span) annotation.getSpanNode();
+            terms.add(span.getFrom() + ":" + (annotation.getFieldValue() != null
+                                              ? annotation.getFieldValue().toString()
+                                              : span.getText(value.getString())));
+        }
+        return terms;
+    }
+}
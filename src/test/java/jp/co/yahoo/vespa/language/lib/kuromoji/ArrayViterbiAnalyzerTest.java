@@ -0,0 +1,193 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.atilika.kuromoji.ipadic.Token;
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+import jp.co.yahoo.vespa.language.lib.data.KuromojiTokenizeTestData;
+import jp.co.yahoo.vespa.language.lib.data.KuromojiTokenizeTestData.InputArgs;
+
+public class ArrayViterbiAnalyzerTest {
+
+    private static final String CHARS = "あいうえおかきくけこがぎぐすもものうちにでをはアイウエオカキクケコソフトウェア"
+                                        + "東京都庁関西国際空港日本経済新聞社住行見"
+                                        + "abcXYZ019 .,-!?　。、・（）ｱｲｳ１２３ＡＢＣ\t";
+    private static final String[] WORDS = {"東京タワー", "東京スカイツリー", "すもももも", "もももも", "ソフトウェア"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTestData() throws Exception {
+        SimpleLinguistics simpleLinguistics = new SimpleLinguistics();
+        File[] files = new File(getClass().getClassLoader().getResource(KuromojiTokenizeTestData.TESTDATA_DIR)
+                                    .getPath()).listFiles();
+        assertTrue(files.length > 0);
+        for (File file : files) {
+            KuromojiTokenizeTestData testData = KuromojiTokenizeTestData.loadTestData(
+                    KuromojiTokenizeTestData.TESTDATA_DIR + "/" + file.getName());
+            KuromojiContext context = new KuromojiContext(
+                    new KuromojiConfig(new KuromojiConfig.Builder(testData.getKuromojiConfig()).engine("array")),
+                    testData.getSpecialtokensConfig());
+            KuromojiTokenizer tokenizer = new KuromojiTokenizer(context,
+                                                                simpleLinguistics.getNormalizer(),
+                                                                simpleLinguistics.getTransformer(),
+                                                                simpleLinguistics.getTokenizer());
+            InputArgs inputArgs = testData.getInitArgs();
+            List<com.yahoo.language.process.Token> tokens = new ArrayList<>();
+            try {
+                tokenizer.tokenize(inputArgs.input, inputArgs.language, inputArgs.stemMode, inputArgs.removeAccents)
+                        .forEach(tokens::add);
+            } finally {
+                tokenizer.deconstruct();
+            }
+
+            List<KuromojiToken> expectTokens = testData.getExpectTokens();
+            assertEquals(file.getName(), expectTokens.size(), tokens.size());
+            for (int i = 0; i < tokens.size(); ++i) {
+                KuromojiToken expectToken = expectTokens.get(i);
+                com.yahoo.language.process.Token token = tokens.get(i);
+                assertEquals(file.getName(), expectToken.getOrig(), token.getOrig());
+                assertEquals(file.getName(), expectToken.getTokenString(), token.getTokenString());
+                assertEquals(file.getName(), expectToken.getType(), token.getType());
+                assertEquals(file.getName(), expectToken.getScript(), token.getScript());
+                assertEquals(file.getName(), expectToken.isSpecialToken(), token.isSpecialToken());
+                assertEquals(file.getName(), expectToken.getOffset(), token.getOffset());
+            }
+        }
+    }
+
+    @Test
+    public void testSameAsKuromoji() throws Exception {
+        List<String> inputs = new ArrayList<>(new KuromojiContext(
+                new KuromojiConfig(new KuromojiConfig.Builder()),
+                new SpecialtokensConfig(new SpecialtokensConfig.Builder())).loadWarmupCorpus());
+        inputs.addAll(Arrays.asList("", "。", "、、", "東京タワーと東京スカイツリー", "すもももももももものうち",
+                                    "ソフトウェアエンジニアリング・マネージャー"));
+        Random random = new Random(20181018);
+        for (int i = 0; i < 2000; ++i) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(24); j > 0; --j) {
+                if (random.nextInt(6) == 0) {
+                    sb.append(WORDS[random.nextInt(WORDS.length)]);
+                } else {
+                    sb.append(CHARS.charAt(random.nextInt(CHARS.length())));
+                }
+            }
+            inputs.add(sb.toString());
+        }
+
+        String userDict = getClass().getClassLoader().getResource("testUserDict.csv").getPath();
+        for (String mode : new String[]{"normal", "search"}) {
+            assertSameTokens(new KuromojiConfig.Builder().mode(mode), inputs);
+            assertSameTokens(new KuromojiConfig.Builder().mode(mode).nakaguro_split(true).user_dict(userDict), inputs);
+            assertSameTokens(new KuromojiConfig.Builder().mode(mode).kanji(new KuromojiConfig.Kanji.Builder()
+                                                                           .length_threshold(1).penalty(500)),
+                             inputs);
+        }
+        assertSameTokens(new KuromojiConfig.Builder().user_dict(userDict)
+                                 .system_dict(new KuromojiConfig.System_dict.Builder()
+                                                      .mmap(true).dir(folder.getRoot().getPath())),
+                         inputs);
+
+        assertSameCompoundTokens(new KuromojiConfig.Builder(), inputs);
+        assertSameCompoundTokens(new KuromojiConfig.Builder().nakaguro_split(true).user_dict(userDict), inputs);
+        assertSameCompoundTokens(new KuromojiConfig.Builder().kanji(new KuromojiConfig.Kanji.Builder()
+                                                                            .length_threshold(1).penalty(500)),
+                                 inputs);
+    }
+
+    // one lattice gives the tokens of normal mode, and the tokens of search mode where they are decomposed
+    private static void assertSameCompoundTokens(KuromojiConfig.Builder builder, List<String> inputs)
+            throws Exception {
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(new SpecialtokensConfig.Builder());
+        KuromojiContext normalContext = new KuromojiContext(new KuromojiConfig(builder.mode("normal")),
+                                                            specialTokens);
+        KuromojiDictionaries.SharedTokenizer normal = normalContext.createTokenizer();
+        KuromojiContext searchContext = new KuromojiContext(new KuromojiConfig(builder.mode("search")),
+                                                            specialTokens);
+        KuromojiDictionaries.SharedTokenizer search = searchContext.createTokenizer();
+        KuromojiContext compoundContext = new KuromojiContext(new KuromojiConfig(builder.mode("compound")
+                                                                                        .engine("array")),
+                                                              specialTokens);
+        assertTrue(compoundContext.isSinglePassCompound());
+        SentenceAnalyzer analyzer = compoundContext.createAnalyzer();
+
+        for (String input : inputs) {
+            List<Token> decomposition = new ArrayList<>();
+            List<Token> tokens = analyzer.analyze(input, decomposition);
+            assertEquals(input, describe(normal.tokenize(input)), describe(tokens));
+            assertEquals(input, describe(normal.tokenize(input)), describe(analyzer.analyze(input)));
+
+            // search mode of the parts split on ideographic full stops and commas which have tokens to decompose
+            List<Token> expected = new ArrayList<>();
+            int begin = 0;
+            for (int end = 1; end <= input.length(); ++end) {
+                if (end < input.length() && input.charAt(end - 1) != '\u3002' && input.charAt(end - 1) != '\u3001') {
+                    continue;
+                }
+                boolean decomposable = false;
+                for (Token token : tokens) {
+                    decomposable |= token.getPosition() >= begin && token.getPosition() < end
+                                    && compoundContext.isDecomposable(token.getSurface());
+                }
+                if (decomposable) {
+                    for (Token token : search.tokenize(input)) {
+                        if (token.getPosition() >= begin && token.getPosition() < end) {
+                            expected.add(token);
+                        }
+                    }
+                }
+                begin = end;
+            }
+            assertEquals(input, describe(expected), describe(decomposition));
+        }
+        normalContext.deconstruct();
+        searchContext.deconstruct();
+        compoundContext.deconstruct();
+    }
+
+    private static void assertSameTokens(KuromojiConfig.Builder builder, List<String> inputs) throws Exception {
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(new SpecialtokensConfig.Builder());
+        KuromojiContext context = new KuromojiContext(new KuromojiConfig(builder), specialTokens);
+        KuromojiDictionaries.SharedTokenizer expected = context.createTokenizer();
+        KuromojiContext arrayContext = new KuromojiContext(new KuromojiConfig(builder.engine("array")),
+                                                           specialTokens);
+        SentenceAnalyzer analyzer = arrayContext.createAnalyzer();
+        assertTrue(analyzer instanceof ArrayViterbiAnalyzer);
+
+        for (String input : inputs) {
+            assertEquals(input, describe(expected.tokenize(input)), describe(analyzer.analyze(input)));
+        }
+        context.deconstruct();
+        arrayContext.deconstruct();
+    }
+
+    private static List<String> describe(List<Token> tokens) {
+        List<String> descriptions = new ArrayList<>();
+        for (Token token : tokens) {
+            descriptions.add(token.getSurface() + "@" + token.getPosition() + " " + token.isKnown() + " "
+                             + token.isUser() + " " + token.getAllFeatures());
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+public class DictionaryRegistryTest {
+
+    @Test
+    public void testShare() throws Exception {
+        DictionaryRegistry<String, Object> registry = new DictionaryRegistry<>();
+        AtomicInteger loads = new AtomicInteger();
+        DictionaryRegistry.Loader<Object> loader = () -> {
+            loads.incrementAndGet();
+            return new Object();
+        };
+
+        DictionaryRegistry.Lease<String, Object> first = registry.acquire("a", loader);
+        DictionaryRegistry.Lease<String, Object> second = registry.acquire("a", loader);
+        DictionaryRegistry.Lease<String, Object> other = registry.acquire("b", loader);
+        assertSame(first.get(), second.get());
+        assertNotSame(first.get(), other.get());
+        assertEquals(2, loads.get());
+        assertEquals(2, registry.references("a"));
+
+        first.close();
+        first.close();
+        assertEquals(1, registry.references("a"));
+        assertEquals(2, registry.size());
+        second.close();
+        other.close();
+        assertEquals(0, registry.size());
+
+        // loaded again after released
+        DictionaryRegistry.Lease<String, Object> third = registry.acquire("a", loader);
+        assertNotSame(second.get(), third.get());
+        assertEquals(3, loads.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadFailure() throws Exception {
+        DictionaryRegistry<String, Object> registry = new DictionaryRegistry<>();
+        try {
+            registry.acquire("a", () -> {
+                throw new IOException("broken");
+            });
+        } finally {
+            assertEquals(0, registry.size());
+        }
+    }
+
+    @Test
+    public void testContexts() throws Exception {
+        File csv = File.createTempFile("user_dict", ".csv");
+        csv.deleteOnExit();
+        Files.write(csv.toPath(), Collections.singletonList("東京タワー,東京タワー,トウキョウタワー,カスタム名詞"),
+                    StandardCharsets.UTF_8);
+        KuromojiConfig config = new KuromojiConfig(new KuromojiConfig.Builder()
+                                                   .user_dict(csv.getPath())
+                                                   .nakaguro_split(true));
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(new SpecialtokensConfig.Builder());
+
+        int count = KuromojiContext.getSharedDictionaryCount();
+        KuromojiContext first = new KuromojiContext(config, specialTokens);
+        first.getDictionaries();
+        KuromojiContext second = new KuromojiContext(config, specialTokens);
+        second.getDictionaries();
+        assertEquals(count + 2, KuromojiContext.getSharedDictionaryCount());
+
+        KuromojiContext reloaded = first.reload();
+        first.deconstruct();
+        second.deconstruct();
+        assertEquals(count + 2, KuromojiContext.getSharedDictionaryCount());
+        reloaded.deconstruct();
+        assertEquals(count, KuromojiContext.getSharedDictionaryCount());
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.atilika.kuromoji.ipadic.Token;
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+public class FeatureColumnsTest {
+
+    private static final SpecialtokensConfig SPECIAL_TOKENS = new SpecialtokensConfig(
+            new SpecialtokensConfig.Builder());
+
+    @Test
+    public void testSameFeatures() throws Exception {
+        String userDict = getClass().getClassLoader().getResource("testUserDict.csv").getPath();
+        KuromojiContext context = new KuromojiContext(
+                new KuromojiConfig(new KuromojiConfig.Builder().user_dict(userDict)), SPECIAL_TOKENS);
+        KuromojiContext columnContext = new KuromojiContext(
+                new KuromojiConfig(new KuromojiConfig.Builder().user_dict(userDict).feature_columns(true)),
+                SPECIAL_TOKENS);
+        assertFalse(context.getDictionaries().hasFeatureColumns());
+        assertTrue(columnContext.getDictionaries().hasFeatureColumns());
+
+        List<String> inputs = new ArrayList<>(context.loadWarmupCorpus());
+        inputs.add("東京スカイツリーの最寄り駅はとうきょうスカイツリー駅です");
+        inputs.add("すもももももももものうち");
+        inputs.add("ABC１２３はＸＹＺのアイウです");
+
+        SentenceAnalyzer arrayAnalyzer = new ArrayViterbiAnalyzer(columnContext.getDictionaries(),
+                                                                  com.atilika.kuromoji.TokenizerBase.Mode.SEARCH,
+                                                                  new int[]{2, 3000, 7, 1700});
+        int columnTokens = 0;
+        for (String input : inputs) {
+            List<Token> expected = context.createTokenizer().tokenize(input);
+            for (SentenceAnalyzer analyzer : new SentenceAnalyzer[]{columnContext.createTokenizer()::tokenize,
+                                                                    arrayAnalyzer}) {
+                List<Token> tokens = analyzer.analyze(input);
+                assertEquals(input, expected.size(), tokens.size());
+                for (int i = 0; i < tokens.size(); ++i) {
+                    Token e = expected.get(i);
+                    Token t = tokens.get(i);
+                    assertEquals(input, e.getSurface(), t.getSurface());
+                    assertEquals(input, e.getBaseForm(), t.getBaseForm());
+                    assertEquals(input, e.getPartOfSpeechLevel1(), t.getPartOfSpeechLevel1());
+                    assertEquals(input, e.getPartOfSpeechLevel2(), t.getPartOfSpeechLevel2());
+                    assertEquals(input, e.getPartOfSpeechLevel3(), t.getPartOfSpeechLevel3());
+                    assertEquals(input, e.getPartOfSpeechLevel4(), t.getPartOfSpeechLevel4());
+                    assertEquals(input, e.getAllFeatures(), t.getAllFeatures());
+                    assertEquals(Token.class, e.getClass());
+                    if (t.getClass() != Token.class) {
+                        ++columnTokens;
+                    }
+                }
+            }
+        }
+        assertNotEquals(0, columnTokens);
+        context.deconstruct();
+        columnContext.deconstruct();
+    }
+
+    @Test
+    public void testSharedValues() throws Exception {
+        KuromojiContext context = new KuromojiContext(
+                new KuromojiConfig(new KuromojiConfig.Builder().feature_columns(true)), SPECIAL_TOKENS);
+        List<Token> first = context.createTokenizer().tokenize("走った");
+        List<Token> second = context.createTokenizer().tokenize("走って");
+        assertEquals("走る", first.get(0).getBaseForm());
+        assertSame(first.get(0).getBaseForm(), second.get(0).getBaseForm());
+        assertSame(first.get(0).getPartOfSpeechLevel1(), second.get(0).getPartOfSpeechLevel1());
+        context.deconstruct();
+    }
+}
@@ -3,6 +3,8 @@ package jp.co.yahoo.vespa.language.lib.kuromoji;
 import com.yahoo.language.lib.kuromoji.KuromojiConfig;
 import com.yahoo.language.process.GramSplitter;
 import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
@@ -10,17 +12,19 @@ import java.io.IOException;
 import static org.junit.Assert.assertEquals;
 
 public class GramSplitterTest {
-  private static final GramSplitter gramSplitter;
-
-  static {
-    GramSplitter splitter = null;
-    try {
-      splitter = new KuromojiLinguistics(new KuromojiConfig(new KuromojiConfig.Builder()),
-                                         new SpecialtokensConfig(new SpecialtokensConfig.Builder())).getGramSplitter();
-    } catch (IOException e) {
-    } finally {
-      gramSplitter = splitter;
-    }
+  private static KuromojiLinguistics linguistics;
+  private static GramSplitter gramSplitter;
+
+  @BeforeClass
+  public static void setUp() throws IOException {
+    linguistics = new KuromojiLinguistics(new KuromojiConfig(new KuromojiConfig.Builder()),
+                                          new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+    gramSplitter = linguistics.getGramSplitter();
+  }
+
+  @AfterClass
+  public static void tearDown() {
+    linguistics.deconstruct();
   }
 
   @Test
@@ -21,6 +21,34 @@ public class KuromojiCharacterClassesTest {
     assertFalse(characterClasses.isLetter('©'));;
   }
 
+  @Test
+  public void testSupplementaryChars() {
+    KuromojiCharacterClasses characterClasses = new KuromojiCharacterClasses();
+    // squared letters are normalized by NFKC
+    assertTrue(characterClasses.isLetter(0x1F130));
+    assertTrue(characterClasses.isLetter(0x1F200));
+    assertTrue(characterClasses.isLetter("\uD842\uDFB7".codePointAt(0)));
+    // is noise
+    assertFalse(characterClasses.isLetter(0x1F600));
+    assertFalse(characterClasses.isLetterOrDigit(0x1F600));
+    assertFalse(characterClasses.isLetter(Character.MAX_CODE_POINT + 1));
+  }
+
+  @Test
+  public void testDigits() {
+    KuromojiCharacterClasses characterClasses = new KuromojiCharacterClasses();
+    assertTrue(characterClasses.isDigit('1'));
+    assertTrue(characterClasses.isDigit('\uFF11'));
+    assertFalse(characterClasses.isDigit('\u2460'));
+    // latin digit is not letter, but other decimal digits are
+    assertFalse(characterClasses.isLetter('1'));
+    assertTrue(characterClasses.isLetter('\uFF11'));
+    assertFalse(characterClasses.isLetter('\u2460'));
+    assertTrue(characterClasses.isLetterOrDigit('1'));
+    assertFalse(characterClasses.isLetterOrDigit('\u2460'));
+    assertFalse(characterClasses.isLetterOrDigit('-'));
+  }
+
   @Test
   public void testQuotes() {
     KuromojiCharacterClasses characterClasses = new KuromojiCharacterClasses();
@@ -9,9 +9,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+import org.junit.After;
 import org.junit.Test;
 
 import com.yahoo.language.Language;
@@ -39,6 +42,25 @@ public class KuromojiLinguisticsTest {
     private static final KuromojiConfig DEFAULT_KUROMOJI_CONFIG = new KuromojiConfig(new KuromojiConfig.Builder());
     private static final SpecialtokensConfig DEFAULT_STOKEN_CONFIG = new SpecialtokensConfig(new SpecialtokensConfig.Builder());
 
+    // created by each test, deconstructed after it
+    private final List<KuromojiLinguistics> created = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (KuromojiLinguistics linguistics : created) {
+            linguistics.deconstruct();
+        }
+        created.clear();
+        assertEquals(0, KuromojiContext.getSharedDictionaryCount());
+    }
+
+    private KuromojiLinguistics createLinguistics() {
+        KuromojiLinguistics linguistics = (KuromojiLinguistics) KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG,
+                                                                                           DEFAULT_STOKEN_CONFIG).get();
+        created.add(linguistics);
+        return linguistics;
+    }
+
     @Test
     public void testFallback() throws Exception {
         Optional<Linguistics> nullOptional = KuromojiLinguistics.create(null, null);
@@ -47,7 +69,7 @@ public class KuromojiLinguisticsTest {
     
     @Test
     public void testStemmer() throws Exception {
-        Linguistics linguistics = KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG, DEFAULT_STOKEN_CONFIG).get();
+        Linguistics linguistics = createLinguistics();
         
         Stemmer stemmer = linguistics.getStemmer();
         String input = "お寿司が食べたい。";
@@ -63,7 +85,7 @@ public class KuromojiLinguisticsTest {
     
     @Test
     public void testTokenizer() throws Exception {
-        Linguistics linguistics = KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG, DEFAULT_STOKEN_CONFIG).get();
+        Linguistics linguistics = createLinguistics();
         
         Tokenizer tokenizer = linguistics.getTokenizer();
         String input = "お寿司が食べたい。";
@@ -79,7 +101,7 @@ public class KuromojiLinguisticsTest {
 
     @Test
     public void testSegmenter() throws Exception {
-        Linguistics linguistics = KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG, DEFAULT_STOKEN_CONFIG).get();
+        Linguistics linguistics = createLinguistics();
         
         Segmenter segmenter = linguistics.getSegmenter();
         String input = "お寿司が食べたい。";
@@ -92,9 +114,58 @@ public class KuromojiLinguisticsTest {
         }
     }
     
+    // parts of a compound are alternatives at its position, so a query has them as alternatives of one term
+    @Test
+    public void testCompoundQuery() throws Exception {
+        KuromojiLinguistics linguistics = new KuromojiLinguistics(
+                new KuromojiConfig(new KuromojiConfig.Builder().mode("compound")), DEFAULT_STOKEN_CONFIG);
+        try {
+            assertEquals(Arrays.asList("関西国際空港", "に", "行く"),
+                         linguistics.getSegmenter().segment("関西国際空港に行く", Language.JAPANESE));
+
+            List<StemList> stems = linguistics.getStemmer().stem("関西国際空港", StemMode.BEST, Language.JAPANESE);
+            assertEquals(1, stems.size());
+            assertEquals(Arrays.asList("関西国際空港", "関西", "国際", "空港"), stems.get(0));
+        } finally {
+            linguistics.deconstruct();
+        }
+    }
+
+    @Test
+    public void testBatchTokenize() throws Exception {
+        KuromojiLinguistics linguistics = createLinguistics();
+
+        List<TokenizeRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 20; ++i) {
+            requests.add(new TokenizeRequest("お寿司が食べたい。" + i, Language.JAPANESE, StemMode.ALL, true));
+            requests.add(new TokenizeRequest("Sushi " + i, Language.ENGLISH, StemMode.NONE, false));
+        }
+        requests.add(new TokenizeRequest("", Language.JAPANESE, StemMode.ALL, true));
+
+        try {
+            TokenizeBatchResult result = linguistics.tokenize(requests);
+            assertEquals(requests.size(), result.getTokens().size());
+
+            long tokenCount = 0;
+            for (int i = 0; i < requests.size(); ++i) {
+                TokenizeRequest request = requests.get(i);
+                List<Token> expecteds = new ArrayList<>();
+                linguistics.getTokenizer().tokenize(request.getInput(), request.getLanguage(),
+                                                    request.getStemMode(), request.isRemoveAccents())
+                           .forEach(expecteds::add);
+                assertEquals(expecteds, result.getTokens().get(i));
+                tokenCount += expecteds.size();
+            }
+            assertEquals(tokenCount, result.getTokenCount());
+            assertTrue(result.getTokensPerSecond() > 0);
+        } finally {
+            linguistics.deconstruct();
+        }
+    }
+
     @Test
     public void testNormalizer() throws Exception {
-        Linguistics linguistics = KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG, DEFAULT_STOKEN_CONFIG).get();
+        Linguistics linguistics = createLinguistics();
         
         Normalizer normalizer = linguistics.getNormalizer();
         String input = "ｷﾞﾛｯﾎﾟﾝでﾙｰﾋﾞｰ";
@@ -106,7 +177,7 @@ public class KuromojiLinguisticsTest {
     
     @Test
     public void testTransformer() throws Exception {
-        Linguistics linguistics = KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG, DEFAULT_STOKEN_CONFIG).get();
+        Linguistics linguistics = createLinguistics();
         
         Transformer transformer = linguistics.getTransformer();
         String input = "お寿司が食べたい。";
@@ -118,7 +189,7 @@ public class KuromojiLinguisticsTest {
     
     @Test
     public void testDetector() throws Exception {
-        Linguistics linguistics = KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG, DEFAULT_STOKEN_CONFIG).get();
+        Linguistics linguistics = createLinguistics();
         
         Detector detector = linguistics.getDetector();
         
@@ -135,7 +206,7 @@ public class KuromojiLinguisticsTest {
     
     @Test
     public void testGramSplitter() throws Exception {
-        Linguistics linguistics = KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG, DEFAULT_STOKEN_CONFIG).get();
+        Linguistics linguistics = createLinguistics();
         
         GramSplitter gramSplitter = linguistics.getGramSplitter();
         
@@ -152,7 +223,7 @@ public class KuromojiLinguisticsTest {
     
     @Test
     public void testCharacterClasses() throws Exception {
-        Linguistics linguistics = KuromojiLinguistics.create(DEFAULT_KUROMOJI_CONFIG, DEFAULT_STOKEN_CONFIG).get();
+        Linguistics linguistics = createLinguistics();
         
         CharacterClasses characterClasses = linguistics.getCharacterClasses();
         
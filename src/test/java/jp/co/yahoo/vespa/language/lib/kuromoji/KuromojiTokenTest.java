@@ -0,0 +1,49 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.yahoo.language.process.TokenScript;
+import com.yahoo.language.process.TokenType;
+
+public class KuromojiTokenTest {
+
+    @Test
+    public void testRange() {
+        String input = "東京タワーに行く";
+        String norm = "東京たわーに行く";
+        KuromojiToken eager = new KuromojiToken.Builder("タワー").tokenString("たわー")
+                .type(TokenType.ALPHABETIC).script(TokenScript.KATAKANA).offset(2).build();
+        KuromojiToken lazy = new KuromojiToken.Builder(input, 2, 5).tokenString(norm, 2, 5)
+                .type(TokenType.ALPHABETIC).script(TokenScript.KATAKANA).offset(2).build();
+
+        assertEquals(eager, lazy);
+        assertEquals(eager.hashCode(), lazy.hashCode());
+        assertEquals("タワー", lazy.getOrig());
+        assertSame(lazy.getOrig(), lazy.getOrig());
+        assertEquals(1, lazy.getNumStems());
+        assertEquals("たわー", lazy.getStem(0));
+        assertSame(lazy.getTokenString(), lazy.getTokenString());
+    }
+
+    @Test
+    public void testComponents() {
+        KuromojiToken first = new KuromojiToken.Builder("a").build();
+        KuromojiToken second = new KuromojiToken.Builder("b").build();
+        assertEquals(0, first.getNumComponents());
+        assertEquals(0, first.getNumStems());
+
+        KuromojiToken compound = new KuromojiToken.Builder("ab").component(first).component(second).build();
+        assertEquals(2, compound.getNumComponents());
+        assertSame(second, compound.getComponent(1));
+        assertTrue(first.getNumComponents() == 0 && second.getNumComponents() == 0);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+public class KuromojiTokenizerPoolTest {
+
+    private static final String INPUT = "東京都に住んでいる。ソフトウェアエンジニアです、よろしくお願いします。";
+
+    private static KuromojiContext createContext(String mode, int poolSize) {
+        KuromojiConfig config = new KuromojiConfig(new KuromojiConfig.Builder()
+                                                   .instance(new KuromojiConfig.Instance.Builder()
+                                                             .mode(mode)
+                                                             .pool_size(poolSize)));
+        return new KuromojiContext(config, new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+    }
+
+    // created by each test, deconstructed after it
+    private final List<KuromojiTokenizer> tokenizers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (KuromojiTokenizer tokenizer : tokenizers) {
+            tokenizer.deconstruct();
+        }
+        tokenizers.clear();
+        assertEquals(0, KuromojiContext.getSharedDictionaryCount());
+    }
+
+    private KuromojiTokenizer createTokenizer(KuromojiContext context) throws Exception {
+        SimpleLinguistics simpleLinguistics = new SimpleLinguistics();
+        KuromojiTokenizer tokenizer = new KuromojiTokenizer(context,
+                                                            simpleLinguistics.getNormalizer(),
+                                                            simpleLinguistics.getTransformer(),
+                                                            simpleLinguistics.getTokenizer());
+        tokenizers.add(tokenizer);
+        return tokenizer;
+    }
+
+    private static List<Token> tokenize(KuromojiTokenizer tokenizer) {
+        List<Token> tokens = new ArrayList<>();
+        tokenizer.tokenize(INPUT, Language.JAPANESE, StemMode.ALL, true).forEach(tokens::add);
+        return tokens;
+    }
+
+    @Test
+    public void testSharedDictionaries() throws Exception {
+        KuromojiContext context = createContext("pool", 2);
+        KuromojiTokenizerPool pool = KuromojiTokenizerPool.create(context);
+        try {
+            SentenceAnalyzer first = pool.acquire();
+            SentenceAnalyzer second = pool.acquire();
+            assertNotSame(first, second);
+            assertSame(context.getDictionaries(), context.getDictionaries());
+            pool.release(first);
+            assertSame(first, pool.acquire());
+        } finally {
+            pool.close();
+            context.deconstruct();
+        }
+    }
+
+    @Test
+    public void testSameTokens() throws Exception {
+        List<Token> expected = tokenize(createTokenizer(createContext("shared", 0)));
+        for (String mode : new String[]{"thread", "pool", "unknown"}) {
+            assertEquals(mode, expected, tokenize(createTokenizer(createContext(mode, 0))));
+        }
+    }
+
+    @Test
+    public void testConcurrentTokenize() throws Exception {
+        List<Token> expected = tokenize(createTokenizer(createContext("shared", 0)));
+        for (String mode : new String[]{"thread", "pool"}) {
+            KuromojiTokenizer tokenizer = createTokenizer(createContext(mode, 2));
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<List<Token>>> futures = new ArrayList<>();
+                for (int i = 0; i < 32; ++i) {
+                    futures.add(executor.submit(() -> tokenize(tokenizer)));
+                }
+                for (Future<List<Token>> future : futures) {
+                    assertEquals(mode, expected, future.get());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testReloadReleasesThreadAnalyzers() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(createContext("thread", 0));
+        try {
+            List<Token> expected = tokenize(tokenizer);
+            WeakReference<KuromojiDictionaries> previous = new WeakReference<>(
+                    tokenizer.getContext().getDictionaries());
+            tokenizer.reload();
+            // the analyzer of the previous generation is dropped by the next call of this thread
+            assertEquals(expected, tokenize(tokenizer));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (previous.get() != null && System.currentTimeMillis() < deadline) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            assertNull(previous.get());
+        } finally {
+            tokenizer.deconstruct();
+        }
+    }
+}
@@ -6,14 +6,30 @@
 package jp.co.yahoo.vespa.language.lib.kuromoji;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import com.yahoo.language.Language;
 import com.yahoo.language.lib.kuromoji.KuromojiConfig;
 import com.yahoo.language.process.StemMode;
 import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+import org.junit.After;
 import org.junit.Test;
 
 import com.yahoo.language.Linguistics;
@@ -22,6 +38,7 @@ import com.yahoo.language.process.Tokenizer;
 import com.yahoo.language.simple.SimpleLinguistics;
 
 import jp.co.yahoo.vespa.language.lib.data.KuromojiTokenizeTestData;
+import jp.co.yahoo.vespa.language.lib.dict.UserDictionaryCompiler;
 import jp.co.yahoo.vespa.language.lib.data.KuromojiTokenizeTestData.InputArgs;
 
 /*
@@ -30,7 +47,20 @@ import jp.co.yahoo.vespa.language.lib.data.KuromojiTokenizeTestData.InputArgs;
 public class KuromojiTokenizerTest {
 
     public static Linguistics simpleLinguistics = new SimpleLinguistics();
-    
+
+    // created by each test, deconstructed after it
+    private final List<KuromojiTokenizer> tokenizers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (KuromojiTokenizer tokenizer : tokenizers) {
+            tokenizer.deconstruct();
+        }
+        tokenizers.clear();
+        // every dictionary is released by the tokenizer or the context which acquired it
+        assertEquals(0, KuromojiContext.getSharedDictionaryCount());
+    }
+
     @Test
     public void testDefaultTokenize() throws Exception {
         KuromojiTokenizeTestData testData = KuromojiTokenizeTestData.loadTestData();
@@ -109,15 +139,547 @@ public class KuromojiTokenizerTest {
         doTest(testData);
     }
 
+    @Test
+    public void testStreaming() throws Exception {
+        String input = "東京都に住んでいる。ソフトウェア、エンジニアです。ＡＢＣ　ｶﾞｷﾞ　㍻";
+        KuromojiTokenizer tokenizer = createTokenizer(false);
+        KuromojiTokenizer streamingTokenizer = createTokenizer(true);
+
+        for (StemMode stemMode : new StemMode[]{StemMode.ALL, StemMode.NONE}) {
+            List<Token> expected = new ArrayList<>();
+            tokenizer.tokenize(input, Language.JAPANESE, stemMode, true).forEach(expected::add);
+            List<Token> actual = new ArrayList<>();
+            streamingTokenizer.tokenize(input, Language.JAPANESE, stemMode, true).forEach(actual::add);
+            assertEquals(expected, actual);
+        }
+
+        // tokens are produced while iterating
+        Iterator<Token> tokens = streamingTokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true).iterator();
+        assertEquals("東京", tokens.next().getTokenString());
+        assertTrue(tokens.hasNext());
+        assertTrue(tokens.hasNext());
+        assertEquals("都", tokens.next().getTokenString());
+    }
+
+    @Test
+    public void testChunking() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            builder.append("東京都に住んでいる。ソフトウェア、エンジニアです！本当？\nＡＢＣ  ｶﾞｷﾞ㍻");
+        }
+        String input = builder.toString();
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder());
+        KuromojiTokenizer chunkingTokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                              .chunk(new KuromojiConfig.Chunk.Builder().max_length(64)));
+
+        List<Token> expected = new ArrayList<>();
+        tokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true).forEach(expected::add);
+        List<Token> actual = new ArrayList<>();
+        chunkingTokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true).forEach(actual::add);
+        assertEquals(expected, actual);
+        chunkingTokenizer.deconstruct();
+    }
+
+    @Test
+    public void testChunkingWithoutBoundary() throws Exception {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 50; ++i) {
+            builder.append("東京都に住んでいるｶﾞｷﾞ㍻\uD842\uDFB7e\u0301");
+        }
+        String input = builder.toString();
+        KuromojiTokenizer chunkingTokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                              .chunk(new KuromojiConfig.Chunk.Builder().max_length(7)));
+
+        int offset = 0;
+        for (Token token : chunkingTokenizer.tokenize(input, Language.JAPANESE, StemMode.NONE, false)) {
+            assertEquals(offset, token.getOffset());
+            assertEquals(token.getOrig(), input.substring(offset, offset + token.getOrig().length()));
+            offset += token.getOrig().length();
+        }
+        assertEquals(input.length(), offset);
+        chunkingTokenizer.deconstruct();
+    }
+
+    @Test
+    public void testCompiledUserDict() throws Exception {
+        String csv = new File(getClass().getClassLoader().getResource("testUserDict.csv").getPath()).getPath();
+        File bin = File.createTempFile("user_dict", ".bin");
+        bin.deleteOnExit();
+        UserDictionaryCompiler.main(new String[]{csv, bin.getPath()});
+
+        // Kuromoji's own user dictionary parsed from the same CSV
+        com.atilika.kuromoji.ipadic.Tokenizer kuromoji = new com.atilika.kuromoji.ipadic.Tokenizer.Builder()
+                .mode(com.atilika.kuromoji.TokenizerBase.Mode.SEARCH).userDictionary(csv).build();
+        String input = "東京スカイツリーと東京タワーで、すもももももももものうち";
+        List<String> expected = describe(kuromoji.tokenize(input));
+        assertTrue(expected.get(0).startsWith("東京スカイツリー@0 true"));
+
+        for (String userDict : new String[]{"testUserDict.csv", bin.getPath()}) {
+            KuromojiContext context = new KuromojiContext(
+                    new KuromojiConfig(new KuromojiConfig.Builder().user_dict(userDict)),
+                    new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+            try {
+                assertEquals(userDict, expected, describe(context.createTokenizer().tokenize(input)));
+            } finally {
+                context.deconstruct();
+            }
+        }
+
+        KuromojiTokenizer compiledTokenizer = createTokenizer(new KuromojiConfig.Builder().user_dict(bin.getPath()));
+        List<Token> actual = new ArrayList<>();
+        compiledTokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true).forEach(actual::add);
+        assertEquals("東京スカイツリー", actual.get(0).getTokenString());
+    }
+
+    private static List<String> describe(List<com.atilika.kuromoji.ipadic.Token> tokens) {
+        List<String> descriptions = new ArrayList<>();
+        for (com.atilika.kuromoji.ipadic.Token token : tokens) {
+            descriptions.add(token.getSurface() + "@" + token.getPosition() + " " + token.isUser() + " "
+                             + token.getAllFeatures());
+        }
+        return descriptions;
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        File csv = File.createTempFile("user_dict", ".csv");
+        csv.deleteOnExit();
+        Files.write(csv.toPath(), Collections.singletonList("# empty"), StandardCharsets.UTF_8);
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder().user_dict(csv.getPath()));
+        assertEquals(Arrays.asList("東京", "タワー"), tokenStrings(tokenizer, "東京タワー"));
+
+        Files.write(csv.toPath(), Collections.singletonList("東京タワー,東京タワー,トウキョウタワー,カスタム名詞"),
+                    StandardCharsets.UTF_8);
+        KuromojiContext previous = tokenizer.getContext();
+        tokenizer.reload();
+        assertEquals(Collections.singletonList("東京タワー"), tokenStrings(tokenizer, "東京タワー"));
+        assertTrue(previous != tokenizer.getContext());
+
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(
+            new SpecialtokensConfig.Builder().tokenlist(
+                new SpecialtokensConfig.Tokenlist.Builder().name("default").tokens(
+                    new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("c++"))));
+        tokenizer.reload(specialTokens);
+        assertTrue(tokenizer.getContext().isSpecialToken("c++"));
+        assertEquals(Arrays.asList("東京タワー", "c++"), tokenStrings(tokenizer, "東京タワーc++"));
+    }
+
+    @Test
+    public void testConcurrentReload() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder());
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(
+            new SpecialtokensConfig.Builder().tokenlist(
+                new SpecialtokensConfig.Tokenlist.Builder().name("default").tokens(
+                    new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("c++"))));
+        Thread reloader = new Thread(() -> {
+            for (int i = 0; i < 20; ++i) {
+                try {
+                    tokenizer.reload();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+        reloader.start();
+        tokenizer.reload(specialTokens);
+        reloader.join();
+        // reloads after the new special tokens start from the context which has them
+        assertTrue(tokenizer.getContext().isSpecialToken("c++"));
+        tokenizer.deconstruct();
+    }
+
+    @Test
+    public void testReloadAfterDeconstruct() throws Exception {
+        File csv = File.createTempFile("user_dict", ".csv");
+        csv.deleteOnExit();
+        Files.write(csv.toPath(), Collections.singletonList("東京タワー,東京タワー,トウキョウタワー," + csv.getName()),
+                    StandardCharsets.UTF_8);
+        int count = KuromojiContext.getSharedDictionaryCount();
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                          .user_dict(csv.getPath())
+                                                          .reload(new KuromojiConfig.Reload.Builder().interval(1)));
+        tokenizer.deconstruct();
+        assertEquals(count, KuromojiContext.getSharedDictionaryCount());
+        try {
+            tokenizer.reload();
+            fail();
+        } catch (IllegalStateException e) {
+            // the reloaded context is released instead of swapped in
+        }
+        assertEquals(count, KuromojiContext.getSharedDictionaryCount());
+        tokenizer.deconstruct();
+    }
+
+    @Test
+    public void testReloadModified() throws Exception {
+        File csv = File.createTempFile("user_dict", ".csv");
+        csv.deleteOnExit();
+        Files.write(csv.toPath(), Collections.singletonList("# empty"), StandardCharsets.UTF_8);
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                          .user_dict(csv.getPath())
+                                                          .reload(new KuromojiConfig.Reload.Builder().interval(1)));
+        try {
+            assertFalse(tokenizer.getContext().isUserDictModified());
+            Files.write(csv.toPath(), Collections.singletonList("東京タワー,東京タワー,トウキョウタワー,カスタム名詞"),
+                        StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(csv.toPath(), FileTime.fromMillis(System.currentTimeMillis() + 60000));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (tokenStrings(tokenizer, "東京タワー").size() > 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertEquals(Collections.singletonList("東京タワー"), tokenStrings(tokenizer, "東京タワー"));
+        } finally {
+            tokenizer.deconstruct();
+        }
+    }
+
+    @Test
+    public void testSpecialTokenReplace() throws Exception {
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(
+            new SpecialtokensConfig.Builder().tokenlist(
+                new SpecialtokensConfig.Tokenlist.Builder().name("default")
+                    .tokens(new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("C++").replace("cpp"))
+                    .tokens(new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("c#"))));
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder(), specialTokens);
+
+        List<Token> tokens = new ArrayList<>();
+        tokenizer.tokenize("C++とC#の入門", Language.JAPANESE, StemMode.ALL, true).forEach(tokens::add);
+        assertEquals(5, tokens.size());
+        assertEquals("C++", tokens.get(0).getOrig());
+        assertEquals("cpp", tokens.get(0).getTokenString());
+        assertTrue(tokens.get(0).isSpecialToken());
+        assertEquals("と", tokens.get(1).getTokenString());
+        assertFalse(tokens.get(1).isSpecialToken());
+        assertEquals("C#", tokens.get(2).getOrig());
+        assertEquals("c#", tokens.get(2).getTokenString());
+        assertEquals(4, tokens.get(2).getOffset());
+        assertTrue(tokens.get(2).isSpecialToken());
+        assertEquals(Arrays.asList("の", "入門"),
+                     Arrays.asList(tokens.get(3).getTokenString(), tokens.get(4).getTokenString()));
+    }
+
+    @Test
+    public void testAsciiFastPath() throws Exception {
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(
+            new SpecialtokensConfig.Builder().tokenlist(
+                new SpecialtokensConfig.Tokenlist.Builder().name("default")
+                    .tokens(new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("C++").replace("cpp"))
+                    .tokens(new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("c#"))));
+        String[] words = {"iPhone", "SKU-1234", "http://example.com/a?b=c", "C++", "c#", "e.g.", " ", "\t", "\r\n"};
+        Random random = new Random(0);
+        for (boolean ignoreCase : new boolean[]{true, false}) {
+            KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder().ignore_case(ignoreCase),
+                                                          specialTokens);
+            KuromojiTokenizer kuromojiTokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                                      .ignore_case(ignoreCase)
+                                                                      .ascii_fast_path(false), specialTokens);
+            for (int n = 0; n < 1000; ++n) {
+                StringBuilder builder = new StringBuilder();
+                for (int i = 0, len = 1 + random.nextInt(20); i < len; ++i) {
+                    if (random.nextBoolean()) {
+                        builder.append(words[random.nextInt(words.length)]);
+                    } else {
+                        builder.append((char) random.nextInt(0x80));
+                    }
+                }
+                String input = builder.toString();
+                List<Token> expected = new ArrayList<>();
+                kuromojiTokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true).forEach(expected::add);
+                List<Token> actual = new ArrayList<>();
+                tokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true).forEach(actual::add);
+                assertEquals(input, expected, actual);
+                for (int i = 0; i < expected.size(); ++i) {
+                    assertEquals(input, expected.get(i).getOffset(), actual.get(i).getOffset());
+                    assertEquals(input, expected.get(i).isSpecialToken(), actual.get(i).isSpecialToken());
+                }
+            }
+            assertEquals(1000, tokenizer.getMetrics().getAsciiCalls());
+            assertEquals(0, kuromojiTokenizer.getMetrics().getAsciiCalls());
+        }
+
+        File csv = File.createTempFile("user_dict", ".csv");
+        csv.deleteOnExit();
+        Files.write(csv.toPath(), Collections.singletonList("iphone15,iphone 15,アイフォン ジュウゴ,カスタム名詞"),
+                    StandardCharsets.UTF_8);
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder().user_dict(csv.getPath()));
+        assertEquals(Arrays.asList("iphone", "15"), tokenStrings(tokenizer, "iPhone15"));
+        assertEquals(Arrays.asList("iphone", " ", "pro"), tokenStrings(tokenizer, "iPhone Pro"));
+        assertEquals(1, tokenizer.getMetrics().getAsciiCalls());
+        assertFalse(createTokenizer(new KuromojiConfig.Builder().mode("extended")).getContext().isAsciiFastPath());
+    }
+
+    @Test
+    public void testScriptSplit() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder());
+        KuromojiTokenizer splitTokenizer = createTokenizer(new KuromojiConfig.Builder().script_split(true));
+        for (String input : new String[]{"iPhone 15 Pro Max 256GB ケース 手帳型",
+                                         "ＵＳＢ－Ｃケーブル2mを東京都で買った。iOS17対応",
+                                         "東京タワーc++とC#の入門"}) {
+            List<Token> expected = new ArrayList<>();
+            tokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true).forEach(expected::add);
+            List<Token> actual = new ArrayList<>();
+            splitTokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true).forEach(actual::add);
+            assertEquals(input, expected, actual);
+            for (int i = 0; i < expected.size(); ++i) {
+                assertEquals(input, expected.get(i).getOffset(), actual.get(i).getOffset());
+            }
+        }
+
+        String[] words = {"iPhone", "256GB", "ＡＢＣ", "ß", " ", "!", "ケース", "東京都", "にいる", "。", "、"};
+        Random random = new Random(0);
+        for (int n = 0; n < 1000; ++n) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0, len = 1 + random.nextInt(10); i < len; ++i) {
+                builder.append(words[random.nextInt(words.length)]);
+            }
+            String input = builder.toString();
+            int offset = 0;
+            for (Token token : splitTokenizer.tokenize(input, Language.JAPANESE, StemMode.NONE, false)) {
+                assertEquals(input, offset, token.getOffset());
+                offset += token.getOrig().length();
+            }
+            assertEquals(input, input.length(), offset);
+        }
+        assertFalse(createTokenizer(new KuromojiConfig.Builder().script_split(true).mode("extended"))
+                        .getContext().isScriptSplit());
+    }
+
+    @Test
+    public void testScriptSplitWithSpecialTokens() throws Exception {
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(
+            new SpecialtokensConfig.Builder().tokenlist(
+                new SpecialtokensConfig.Tokenlist.Builder().name("default")
+                    .tokens(new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("C++").replace("cpp"))
+                    .tokens(new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("c#"))));
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder().script_split(true), specialTokens);
+
+        // special tokens are kept in ASCII runs split off from Kuromoji
+        assertEquals(Arrays.asList("0:東京:東京", "2:タワー:タワー", "5:c++:cpp:special", "8:と:と", "9:C#:c#:special",
+                                   "11:の:の", "12:入門:入門"),
+                     describeTokens(tokenizer.tokenize("東京タワーc++とC#の入門", Language.JAPANESE,
+                                                       StemMode.ALL, true)));
+        assertEquals(Arrays.asList("0:iPhone:iphone", "6:c#:c#:special", "8:ケース:ケース"),
+                     describeTokens(tokenizer.tokenize("iPhonec#ケース", Language.JAPANESE, StemMode.ALL, true)));
+        tokenizer.deconstruct();
+    }
+
+    @Test
+    public void testModeCombinations() throws Exception {
+        SpecialtokensConfig specialTokens = new SpecialtokensConfig(
+            new SpecialtokensConfig.Builder().tokenlist(
+                new SpecialtokensConfig.Tokenlist.Builder().name("default")
+                    .tokens(new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("C++").replace("cpp"))
+                    .tokens(new SpecialtokensConfig.Tokenlist.Tokens.Builder().token("c#"))));
+        String[] words = {"iPhone 15", "256GB", "C++", "c#", "ＡＢＣ", "ｶﾞｷﾞ", "ケース", "東京都", "関西国際空港", "にいる"};
+        String[] breaks = {"。", "、"};
+        Random random = new Random(0);
+        List<String> inputs = new ArrayList<>();
+        for (int n = 0; n < 100; ++n) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0, len = 1 + random.nextInt(20); i < len; ++i) {
+                builder.append(words[random.nextInt(words.length)]);
+                if (i % 2 == 1) {
+                    // Kuromoji analyzes text after these independently, so chunks ending there give the same tokens
+                    builder.append(breaks[random.nextInt(breaks.length)]);
+                }
+            }
+            inputs.add(builder.toString());
+        }
+
+        for (boolean scriptSplit : new boolean[]{false, true}) {
+            for (String mode : new String[]{"search", "compound"}) {
+                KuromojiTokenizer tokenizer = createTokenizer(
+                    new KuromojiConfig.Builder().script_split(scriptSplit).mode(mode), specialTokens);
+                List<KuromojiTokenizer> combinations = Arrays.asList(
+                    createTokenizer(new KuromojiConfig.Builder().script_split(scriptSplit).mode(mode)
+                                        .streaming(true), specialTokens),
+                    createTokenizer(new KuromojiConfig.Builder().script_split(scriptSplit).mode(mode)
+                                        .chunk(new KuromojiConfig.Chunk.Builder().max_length(16)), specialTokens),
+                    createTokenizer(new KuromojiConfig.Builder().script_split(scriptSplit).mode(mode)
+                                        .streaming(true)
+                                        .chunk(new KuromojiConfig.Chunk.Builder().max_length(16)), specialTokens));
+                for (String input : inputs) {
+                    List<String> expected = describeTokens(tokenizer.tokenize(input, Language.JAPANESE,
+                                                                              StemMode.ALL, true));
+                    for (KuromojiTokenizer combination : combinations) {
+                        assertEquals(scriptSplit + " " + mode + " " + input, expected,
+                                     describeTokens(combination.tokenize(input, Language.JAPANESE,
+                                                                         StemMode.ALL, true)));
+                    }
+                }
+                tokenizer.deconstruct();
+                combinations.forEach(KuromojiTokenizer::deconstruct);
+            }
+        }
+    }
+
+    private static List<String> describeTokens(Iterable<Token> tokens) {
+        List<String> descriptions = new ArrayList<>();
+        for (Token token : tokens) {
+            descriptions.add(token.getOffset() + ":" + token.getOrig() + ":" + token.getTokenString()
+                             + (token.isSpecialToken() ? ":special" : ""));
+        }
+        return descriptions;
+    }
+
+    @Test
+    public void testWarmUp() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                      .cache(new KuromojiConfig.Cache.Builder().enabled(true)));
+        List<String> corpus = tokenizer.getContext().loadWarmupCorpus();
+        assertTrue(corpus.size() > 0);
+        assertEquals(0, tokenizer.warmUp(corpus, 0));
+
+        TokenizeCache cache = tokenizer.getCache().get();
+        assertTrue(tokenizer.warmUp(corpus, 60000) >= 3);
+        assertEquals(0, tokenizer.getMetrics().getCalls());
+        // every pass tokenized instead of hitting the cache
+        assertSame(cache, tokenizer.getCache().get());
+        assertEquals(0, cache.size());
+
+        KuromojiTokenizer lazyTokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                          .load(new KuromojiConfig.Load.Builder().mode("lazy")));
+        assertEquals(0, lazyTokenizer.warmUp(corpus, 60000));
+        assertFalse(lazyTokenizer.isLoaded());
+
+        File file = File.createTempFile("warmup", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.asList("東京都に住んでいる。", "", "iPhone ケース"), StandardCharsets.UTF_8);
+        KuromojiContext context = createTokenizer(new KuromojiConfig.Builder()
+                                                  .warmup(new KuromojiConfig.Warmup.Builder().corpus(file.getPath())))
+            .getContext();
+        assertEquals(Arrays.asList("東京都に住んでいる。", "iPhone ケース"), context.loadWarmupCorpus());
+    }
+
+    @Test
+    public void testLazyLoad() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                      .load(new KuromojiConfig.Load.Builder().mode("lazy")));
+        assertFalse(tokenizer.isLoaded());
+        tokenizer.tokenize("東京タワー", Language.ENGLISH, StemMode.ALL, true).forEach(token -> { });
+        tokenizer.tokenize("iPhone 15", Language.JAPANESE, StemMode.ALL, true).forEach(token -> { });
+        assertFalse(tokenizer.isLoaded());
+        assertEquals(tokenStrings(createTokenizer(new KuromojiConfig.Builder()), "東京タワー"),
+                     tokenStrings(tokenizer, "東京タワー"));
+        assertTrue(tokenizer.isLoaded());
+
+        KuromojiTokenizer backgroundTokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                                .load(new KuromojiConfig.Load.Builder()
+                                                                      .mode("background")));
+        long deadline = System.currentTimeMillis() + 60000;
+        while (!backgroundTokenizer.isLoaded() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(backgroundTokenizer.isLoaded());
+        assertEquals(Arrays.asList("東京", "タワー"), tokenStrings(backgroundTokenizer, "東京タワー"));
+    }
+
+    @Test
+    public void testLazyReload() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                      .load(new KuromojiConfig.Load.Builder().mode("lazy")));
+        tokenizer.reload();
+        // reloading does not load the system dictionary which nobody has used yet
+        assertFalse(tokenizer.getContext().isSystemDictLoaded());
+        assertFalse(tokenizer.isLoaded());
+        assertEquals(Arrays.asList("東京", "タワー"), tokenStrings(tokenizer, "東京タワー"));
+        assertTrue(tokenizer.isLoaded());
+
+        tokenizer.reload();
+        assertTrue(tokenizer.getContext().isSystemDictLoaded());
+        assertTrue(tokenizer.isLoaded());
+        tokenizer.deconstruct();
+    }
+
+    @Test
+    public void testIntern() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder()
+                                                      .intern(new KuromojiConfig.Intern.Builder().enabled(true)));
+        List<Token> first = new ArrayList<>();
+        tokenizer.tokenize("猫の手も借りたい", Language.JAPANESE, StemMode.ALL, true).forEach(first::add);
+        List<Token> second = new ArrayList<>();
+        tokenizer.tokenize("犬の手も借りたい", Language.JAPANESE, StemMode.ALL, true).forEach(second::add);
+        assertEquals("の", first.get(1).getTokenString());
+        assertSame(first.get(1).getTokenString(), second.get(1).getTokenString());
+        assertEquals(tokenStrings(createTokenizer(new KuromojiConfig.Builder()), "猫の手も借りたい"),
+                     tokenStrings(tokenizer, "猫の手も借りたい"));
+
+        StringPool pool = new StringPool(100);
+        assertEquals(128, pool.capacity());
+        String s = new String("する");
+        assertSame(s, pool.intern(s));
+        assertSame(s, pool.intern(new String("する")));
+        String longString = "東京特許許可局長今日急遽休暇許可拒否";
+        assertSame(longString, pool.intern(longString));
+        assertNotSame(longString, pool.intern(new String(longString)));
+    }
+
+    @Test
+    public void testCompound() throws Exception {
+        for (String engine : new String[]{"kuromoji", "array"}) {
+            KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder().mode("compound")
+                                                                  .engine(engine));
+            List<Token> tokens = new ArrayList<>();
+            tokenizer.tokenize("関西国際空港に行く。関西国際空港", Language.JAPANESE, StemMode.ALL, true)
+                    .forEach(tokens::add);
+            List<String> descriptions = new ArrayList<>();
+            for (Token token : tokens) {
+                assertEquals(0, token.getNumComponents());
+                descriptions.add(token.getOffset() + ":" + token.getOrig() + ":" + token.getTokenString());
+            }
+            // compounds are followed by their parts, which have the offset and orig of the compound so that they
+            // are indexed at its position
+            assertEquals(engine, Arrays.asList("0:関西国際空港:関西国際空港", "0:関西国際空港:関西",
+                                               "0:関西国際空港:国際", "0:関西国際空港:空港", "6:に:に", "7:行く:行く",
+                                               "9:。:。", "10:関西国際空港:関西国際空港", "10:関西国際空港:関西",
+                                               "10:関西国際空港:国際", "10:関西国際空港:空港"),
+                         descriptions);
+            assertTrue(tokens.get(0).isIndexable());
+
+            // parts are the tokens of search mode
+            assertEquals(Arrays.asList("関西", "国際", "空港"),
+                         tokenStrings(createTokenizer(new KuromojiConfig.Builder()), "関西国際空港"));
+            assertEquals(Arrays.asList("に", "行く"), tokenStrings(tokenizer, "に行く"));
+            tokenizer.deconstruct();
+        }
+    }
+
+    private static List<String> tokenStrings(KuromojiTokenizer tokenizer, String input) {
+        List<String> tokens = new ArrayList<>();
+        for (Token token : tokenizer.tokenize(input, Language.JAPANESE, StemMode.ALL, true)) {
+            tokens.add(token.getTokenString());
+        }
+        return tokens;
+    }
+
+    private KuromojiTokenizer createTokenizer(boolean streaming) throws Exception {
+        return createTokenizer(new KuromojiConfig.Builder().streaming(streaming));
+    }
+
+    private KuromojiTokenizer createTokenizer(KuromojiConfig.Builder builder) throws Exception {
+        return createTokenizer(builder, new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+    }
+
+    private KuromojiTokenizer createTokenizer(KuromojiConfig.Builder builder, SpecialtokensConfig specialTokens)
+            throws Exception {
+        return createTokenizer(new KuromojiContext(new KuromojiConfig(builder), specialTokens));
+    }
+
+    private KuromojiTokenizer createTokenizer(KuromojiContext context) throws IOException {
+        KuromojiTokenizer tokenizer = new KuromojiTokenizer(context,
+                                                            simpleLinguistics.getNormalizer(),
+                                                            simpleLinguistics.getTransformer(),
+                                                            simpleLinguistics.getTokenizer());
+        tokenizers.add(tokenizer);
+        return tokenizer;
+    }
+
     private void doTest(KuromojiTokenizeTestData testData) throws Exception {
         InputArgs inputArgs = testData.getInitArgs();
         List<KuromojiToken> expectTokens = testData.getExpectTokens();
         KuromojiContext context = new KuromojiContext(testData.getKuromojiConfig(),
                                                       testData.getSpecialtokensConfig());
-        Tokenizer tokenizer = new KuromojiTokenizer(context,
-                                                    simpleLinguistics.getNormalizer(),
-                                                    simpleLinguistics.getTransformer(),
-                                                    simpleLinguistics.getTokenizer());
+        Tokenizer tokenizer = createTokenizer(context);
         
         Iterable<Token> tokens = tokenizer.tokenize(inputArgs.input,
                                                     inputArgs.language,
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Test;
+
+import com.yahoo.language.Language;
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+public class TokenizeCacheTest {
+
+    private static TokenizeRequest request(String input) {
+        return new TokenizeRequest(input, Language.JAPANESE, StemMode.ALL, true);
+    }
+
+    private static Function<TokenizeRequest, List<Token>> counting(AtomicInteger calls) {
+        return request -> {
+            calls.incrementAndGet();
+            List<Token> tokens = new ArrayList<>();
+            tokens.add(new KuromojiToken.Builder(request.getInput()).tokenString(request.getInput()).build());
+            return tokens;
+        };
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        TokenizeCache cache = new TokenizeCache(10);
+        AtomicInteger calls = new AtomicInteger();
+
+        List<Token> first = cache.get(request("東京"), counting(calls));
+        List<Token> second = cache.get(request("東京"), counting(calls));
+        cache.get(new TokenizeRequest("東京", Language.JAPANESE, StemMode.NONE, true), counting(calls));
+
+        assertSame(first, second);
+        assertEquals(2, calls.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getEvictionCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        TokenizeCache cache = new TokenizeCache(10);
+        cache.get(request("東京"), counting(new AtomicInteger())).clear();
+    }
+
+    @Test
+    public void testDetachedTokens() throws Exception {
+        TokenizeCache cache = new TokenizeCache(10);
+        WeakReference<String> source = new WeakReference<>(cacheLazyToken(cache));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (source.get() != null && System.currentTimeMillis() < deadline) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        // cached tokens keep their own substrings only
+        assertNull(source.get());
+        Token token = cache.get(request("東京"), counting(new AtomicInteger())).get(0);
+        assertEquals("東京", token.getOrig());
+        assertEquals("とうきょう", token.getTokenString());
+    }
+
+    private static String cacheLazyToken(TokenizeCache cache) {
+        String input = new String("東京タワー");
+        String norm = new String("とうきょうタワー");
+        cache.get(request("東京"), key -> Collections.singletonList(
+            new KuromojiToken.Builder(input, 0, 2).tokenString(norm, 0, 5).build()));
+        return norm;
+    }
+
+    @Test
+    public void testFrequentEntrySurvives() {
+        TokenizeCache cache = new TokenizeCache(4);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 0; i < 20; ++i) {
+            cache.get(request("hot"), counting(calls));
+            cache.get(request("cold" + i), counting(calls));
+        }
+
+        assertEquals(4, cache.size());
+        assertEquals(17, cache.getEvictionCount());
+        calls.set(0);
+        cache.get(request("hot"), counting(calls));
+        cache.get(request("cold0"), counting(calls));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testConcurrentPut() throws Exception {
+        TokenizeCache cache = new TokenizeCache(64);
+        AtomicInteger calls = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; ++t) {
+            int seed = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 2000; ++i) {
+                    String input = (i % 4 == 0 ? "hot" : "cold" + seed + "_") + i % 100;
+                    assertEquals(input, cache.get(request(input), counting(calls)).get(0).getTokenString());
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(64, cache.size());
+        assertEquals(calls.get(), cache.getMissCount());
+        // concurrent misses of the same input keep the first result only
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.getEvictionCount() <= calls.get() - 64);
+    }
+
+    @Test
+    public void testClear() {
+        TokenizeCache cache = new TokenizeCache(2);
+        AtomicInteger calls = new AtomicInteger();
+        cache.get(request("a"), counting(calls));
+        cache.get(request("b"), counting(calls));
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.get(request("a"), counting(calls));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testTokenizerWithCache() throws Exception {
+        SimpleLinguistics simpleLinguistics = new SimpleLinguistics();
+        KuromojiConfig config = new KuromojiConfig(new KuromojiConfig.Builder()
+                                                   .cache(new KuromojiConfig.Cache.Builder().enabled(true).size(10)));
+        KuromojiContext context = new KuromojiContext(config, new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+        KuromojiTokenizer tokenizer = new KuromojiTokenizer(context,
+                                                            simpleLinguistics.getNormalizer(),
+                                                            simpleLinguistics.getTransformer(),
+                                                            simpleLinguistics.getTokenizer());
+        try {
+            TokenizeCache cache = tokenizer.getCache().get();
+
+            Iterable<Token> first = tokenizer.tokenize("お寿司が食べたい。", Language.JAPANESE, StemMode.ALL, true);
+            Iterable<Token> second = tokenizer.tokenize("お寿司が食べたい。", Language.JAPANESE, StemMode.ALL, true);
+            assertSame(first, second);
+            assertEquals(1, cache.getHitCount());
+
+            // fallback and long inputs are not cached
+            tokenizer.tokenize("sushi", Language.ENGLISH, StemMode.ALL, true);
+            StringBuilder longInput = new StringBuilder();
+            for (int i = 0; i < 100; ++i) {
+                longInput.append("お寿司が食べたい。");
+            }
+            tokenizer.tokenize(longInput.toString(), Language.JAPANESE, StemMode.ALL, true);
+            assertEquals(1, cache.size());
+            assertEquals(1, cache.getMissCount());
+        } finally {
+            tokenizer.deconstruct();
+        }
+    }
+
+    @Test
+    public void testCacheDisabled() throws Exception {
+        SimpleLinguistics simpleLinguistics = new SimpleLinguistics();
+        KuromojiContext context = new KuromojiContext(new KuromojiConfig(new KuromojiConfig.Builder()),
+                                                      new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+        KuromojiTokenizer tokenizer = new KuromojiTokenizer(context,
+                                                            simpleLinguistics.getNormalizer(),
+                                                            simpleLinguistics.getTransformer(),
+                                                            simpleLinguistics.getTokenizer());
+        try {
+            assertFalse(tokenizer.getCache().isPresent());
+            assertTrue(context.getCacheSize() > 0);
+        } finally {
+            tokenizer.deconstruct();
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018 Yahoo Japan Corporation.
+ * Licensed under the terms of the Apache 2.0 license.
+ * See LICENSE in the project root.
+ */
+package jp.co.yahoo.vespa.language.lib.kuromoji;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.yahoo.jdisc.Metric;
+import com.yahoo.language.Language;
+import com.yahoo.language.lib.kuromoji.KuromojiConfig;
+import com.yahoo.language.process.StemMode;
+import com.yahoo.language.process.Token;
+import com.yahoo.language.simple.SimpleLinguistics;
+import com.yahoo.vespa.configdefinition.SpecialtokensConfig;
+
+public class TokenizeMetricsTest {
+
+    private static final String INPUT = "東京都に住んでいる。";
+
+    // created by each test, deconstructed after it
+    private final List<KuromojiTokenizer> tokenizers = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (KuromojiTokenizer tokenizer : tokenizers) {
+            tokenizer.deconstruct();
+        }
+        tokenizers.clear();
+        assertEquals(0, KuromojiContext.getSharedDictionaryCount());
+    }
+
+    private KuromojiTokenizer createTokenizer(KuromojiConfig.Builder builder) throws Exception {
+        KuromojiContext context = new KuromojiContext(new KuromojiConfig(builder),
+                                                      new SpecialtokensConfig(new SpecialtokensConfig.Builder()));
+        SimpleLinguistics simpleLinguistics = new SimpleLinguistics();
+        KuromojiTokenizer tokenizer = new KuromojiTokenizer(context,
+                                                            simpleLinguistics.getNormalizer(),
+                                                            simpleLinguistics.getTransformer(),
+                                                            simpleLinguistics.getTokenizer());
+        tokenizers.add(tokenizer);
+        return tokenizer;
+    }
+
+    private static int count(Iterable<Token> tokens) {
+        int count = 0;
+        for (Token token : tokens) {
+            ++count;
+        }
+        return count;
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder());
+        TokenizeMetrics metrics = tokenizer.getMetrics();
+
+        int tokens = count(tokenizer.tokenize(INPUT, Language.JAPANESE, StemMode.ALL, true));
+        count(tokenizer.tokenize("", Language.JAPANESE, StemMode.ALL, true));
+        tokens += count(tokenizer.tokenize("hello world", Language.ENGLISH, StemMode.ALL, true));
+
+        assertEquals(3, metrics.getCalls());
+        assertEquals(INPUT.length() + "hello world".length(), metrics.getInputChars());
+        assertEquals(tokens, metrics.getTokens());
+        assertEquals(1, metrics.getFallbacks(Language.ENGLISH));
+        assertEquals(0, metrics.getFallbacks(Language.JAPANESE));
+        assertEquals(0, metrics.getNormalizeFallbacks());
+    }
+
+    @Test
+    public void testStreamingTokens() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder().streaming(true));
+        TokenizeMetrics metrics = tokenizer.getMetrics();
+
+        Iterable<Token> iterable = tokenizer.tokenize(INPUT, Language.JAPANESE, StemMode.ALL, true);
+        assertEquals(1, metrics.getCalls());
+        assertEquals(0, metrics.getTokens());
+        assertEquals(count(iterable), metrics.getTokens());
+    }
+
+    @Test
+    public void testStreamingLatency() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder().streaming(true));
+        TokenizeMetrics metrics = tokenizer.getMetrics();
+
+        // iterations stopped before the end are not timed
+        tokenizer.tokenize(INPUT, Language.JAPANESE, StemMode.ALL, true).iterator().next();
+        RecordingMetric metric = new RecordingMetric();
+        metrics.publish(metric);
+        assertEquals(1L, metric.values.get("kuromoji.tokenize.calls"));
+        assertFalse(metric.values.containsKey("kuromoji.tokenize.latency.p99"));
+        assertFalse(metric.values.containsKey("kuromoji.tokenize.streaming.latency.p99"));
+
+        Iterable<Token> iterable = tokenizer.tokenize(INPUT, Language.JAPANESE, StemMode.ALL, true);
+        count(iterable);
+        count(iterable);
+        metric.values.clear();
+        metrics.publish(metric);
+        assertFalse(metric.values.containsKey("kuromoji.tokenize.latency.p99"));
+        assertTrue(metric.values.containsKey("kuromoji.tokenize.streaming.latency.p99"));
+        tokenizer.deconstruct();
+    }
+
+    @Test
+    public void testPublish() throws Exception {
+        KuromojiTokenizer tokenizer = createTokenizer(new KuromojiConfig.Builder());
+        TokenizeMetrics metrics = tokenizer.getMetrics();
+        count(tokenizer.tokenize(INPUT, Language.JAPANESE, StemMode.ALL, true));
+        count(tokenizer.tokenize("hello", Language.ENGLISH, StemMode.ALL, true));
+
+        RecordingMetric metric = new RecordingMetric();
+        metrics.publish(metric);
+        assertEquals(2L, metric.values.get("kuromoji.tokenize.calls"));
+        assertEquals((long) INPUT.length() + 5, metric.values.get("kuromoji.tokenize.input_chars"));
+        assertEquals(1L, metric.values.get("kuromoji.tokenize.fallback{language=en}"));
+        assertEquals(0L, metric.values.get("kuromoji.normalize.fallback"));
+        assertTrue(metric.values.containsKey("kuromoji.tokenize.latency.p99"));
+        assertTrue(metric.values.containsKey("kuromoji.normalize.latency.max"));
+
+        // counters are reset by publish
+        assertEquals(0, metrics.getCalls());
+        assertEquals(0, metrics.getFallbacks(Language.ENGLISH));
+        metric.values.clear();
+        metrics.publish(metric);
+        assertEquals(0L, metric.values.get("kuromoji.tokenize.calls"));
+        assertFalse(metric.values.containsKey("kuromoji.tokenize.latency.p99"));
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i * 10));
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshotAndReset();
+        assertEquals(100, snapshot.getCount());
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), snapshot.getMax());
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(500), snapshot.getPercentile(50));
+        assertWithin(TimeUnit.MICROSECONDS.toNanos(990), snapshot.getPercentile(99));
+        assertEquals(snapshot.getMax(), snapshot.getPercentile(100));
+
+        assertEquals(0, histogram.snapshotAndReset().getCount());
+        histogram.record(0);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.snapshotAndReset().getPercentile(100));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(expected + " <= " + actual, expected <= actual);
+        assertTrue(actual + " <= 1.25 * " + expected, actual <= expected * 1.25);
+    }
+
+    private static class RecordingMetric implements Metric {
+        final Map<String, Number> values = new HashMap<>();
+
+        @Override
+        public void set(String key, Number val, Context ctx) {
+            values.put(key + (ctx != null ? ctx : ""), val);
+        }
+
+        @Override
+        public void add(String key, Number val, Context ctx) {
+            values.merge(key + (ctx != null ? ctx : ""), val, (a, b) -> a.longValue() + b.longValue());
+        }
+
+        @Override
+        public Context createContext(Map<String, ?> properties) {
+            return new Context() {
+                @Override
+                public String toString() {
+                    return properties.toString();
+                }
+            };
+        }
+    }
+}
@@ -7,8 +7,12 @@ package jp.co.yahoo.vespa.language.lib.util;
 
 import static org.junit.Assert.assertEquals;
 
+import java.text.Normalizer;
+
 import org.junit.Test;
 
+import com.yahoo.language.LinguisticsCase;
+
 import jp.co.yahoo.vespa.language.lib.util.JapaneseNormalizer.Result;
 
 public class JapaneseNormalizerTest {
@@ -69,6 +73,34 @@ public class JapaneseNormalizerTest {
         }
     }
 
+    @Test
+    public void testIgnoreCase() throws Exception {
+        String input = "ＡｂＣ ｶﾟﾌﾞ";
+        
+        Result result = JapaneseNormalizer.normalizeByNFKC(input, true);
+        assertEquals("abc \u30AB\u309A\u30D6", result.norm);
+        assertEquals(8, result.origIndexes.length);
+        
+        int[] expectedIndexes = new int[]{0,1,2,3,4,5,6,8};
+        for (int i=0; i<8; ++i) {
+            assertEquals(expectedIndexes[i], result.origIndexes[i]);
+        }
+    }
+    
+    @Test
+    public void testCombiningMark() throws Exception {
+        String input = "Cafe\u0301 ok";
+        
+        Result result = JapaneseNormalizer.normalizeByNFKC(input, true);
+        assertEquals("cafe ok", result.norm);
+        assertEquals(8, result.origIndexes.length);
+        
+        int[] expectedIndexes = new int[]{0,1,2,3,5,6,7,8};
+        for (int i=0; i<8; ++i) {
+            assertEquals(expectedIndexes[i], result.origIndexes[i]);
+        }
+    }
+
     @Test
     public void testLongInput() throws Exception {
         String input = "ｷﾞﾛｯﾎﾟﾝで＄１００のSHI-SU-！";
@@ -82,4 +114,23 @@ public class JapaneseNormalizerTest {
             assertEquals(expectedIndexes[i], result.origIndexes[i]);
         }
     }
+
+    @Test
+    public void testSingleCharacters() throws Exception {
+        // precomputed replacements are the same as normalizing each character
+        for (int c = 0; c <= Character.MAX_VALUE; ++c) {
+            String input = String.valueOf((char) c);
+            for (boolean ignoreCase : new boolean[]{false, true}) {
+                String expected = Normalizer.normalize(
+                        JapaneseNormalizer.accentDrop(ignoreCase ? LinguisticsCase.toLowerCase(input) : input),
+                        Normalizer.Form.NFKC);
+                Result result = JapaneseNormalizer.normalizeByNFKC(input, ignoreCase);
+                assertEquals(Integer.toHexString(c), expected, result.norm);
+                for (int i = 0; i < result.norm.length(); ++i) {
+                    assertEquals(0, result.origIndexes[i]);
+                }
+                assertEquals(1, result.origIndexes[result.norm.length()]);
+            }
+        }
+    }
 }
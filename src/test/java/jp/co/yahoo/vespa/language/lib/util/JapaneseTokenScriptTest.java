@@ -40,9 +40,33 @@ public class JapaneseTokenScriptTest {
     
     @Test
     public void testKanji() {
-        assertEquals(TokenScript.UNKNOWN, JapaneseTokenScript.valueOf(Character.codePointAt("夏", 0)));
-        assertEquals(TokenScript.UNKNOWN, JapaneseTokenScript.valueOf(Character.codePointAt("暑", 0)));
-        assertEquals(TokenScript.UNKNOWN, JapaneseTokenScript.valueOf(Character.codePointAt("麦", 0)));
-        assertEquals(TokenScript.UNKNOWN, JapaneseTokenScript.valueOf(Character.codePointAt("酒", 0)));
+        assertEquals(TokenScript.HAN, JapaneseTokenScript.valueOf(Character.codePointAt("夏", 0)));
+        assertEquals(TokenScript.HAN, JapaneseTokenScript.valueOf(Character.codePointAt("暑", 0)));
+        assertEquals(TokenScript.HAN, JapaneseTokenScript.valueOf(Character.codePointAt("麦", 0)));
+        assertEquals(TokenScript.HAN, JapaneseTokenScript.valueOf(Character.codePointAt("酒", 0)));
+        assertEquals(TokenScript.HAN, JapaneseTokenScript.valueOf(Character.codePointAt("𠮷", 0)));
+        assertEquals(TokenScript.HAN, JapaneseTokenScript.valueOf(Character.codePointAt("\uF929", 0)));
+    }
+    
+    @Test
+    public void testHalfWidth() {
+        assertEquals(TokenScript.KATAKANA, JapaneseTokenScript.valueOf(Character.codePointAt("ｶ", 0)));
+        assertEquals(TokenScript.KATAKANA, JapaneseTokenScript.valueOf(Character.codePointAt("ｦ", 0)));
+        assertEquals(TokenScript.KATAKANA, JapaneseTokenScript.valueOf(Character.codePointAt("ﾞ", 0)));
+    }
+    
+    @Test
+    public void testFullWidth() {
+        assertEquals(TokenScript.ASCII, JapaneseTokenScript.valueOf(Character.codePointAt("Ａ", 0)));
+        assertEquals(TokenScript.ASCII, JapaneseTokenScript.valueOf(Character.codePointAt("ｚ", 0)));
+        assertEquals(TokenScript.ASCII, JapaneseTokenScript.valueOf(Character.codePointAt("９", 0)));
+        assertEquals(TokenScript.ASCII, JapaneseTokenScript.valueOf(Character.codePointAt("！", 0)));
+    }
+    
+    @Test
+    public void testOthers() {
+        assertEquals(TokenScript.UNKNOWN, JapaneseTokenScript.valueOf(Character.codePointAt("。", 0)));
+        assertEquals(TokenScript.UNKNOWN, JapaneseTokenScript.valueOf(Character.codePointAt("æ", 0)));
+        assertEquals(TokenScript.UNKNOWN, JapaneseTokenScript.valueOf(Character.codePointAt("𐌀", 0)));
     }
 }